@@ -0,0 +1,24 @@
+package org.brown.nanogridplus.capture;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 실행 출력을 받는 즉시 로그로 전달하는 sink (디버깅용, agent.capture.logStreaming=true)
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "agent.capture.logStreaming", havingValue = "true")
+public class LoggingOutputSink implements OutputSink {
+
+    @Override
+    public void onOutput(String requestId, Stream stream, byte[] data, int offset, int length) {
+        if (log.isInfoEnabled()) {
+            log.info("[{}] requestId={} {}", stream, requestId,
+                    new String(data, offset, length, StandardCharsets.UTF_8).stripTrailing());
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package org.brown.nanogridplus.capture;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * exec 한 번의 stdout/stderr 수집
+ *
+ * 프레임 바이트를 그대로 풀에서 빌린 버퍼에 복사하고(프레임마다 String을 만들지 않음)
+ * 스트림별로 앞부분(headBytes)과 뒷부분(tailBytes, 링 버퍼)만 보존한다.
+ * UTF-8 디코딩은 text() 호출 시 한 번만 하며, 중간이 버려졌으면 버린 바이트 수를 표시한다.
+ *
+ * 사용 후 반드시 close하여 버퍼를 풀에 반환해야 한다.
+ */
+@Slf4j
+public final class OutputCapture implements AutoCloseable {
+
+    private final String requestId;
+    private final OutputCaptureFactory factory;
+    private final List<OutputSink> sinks;
+    private final Map<OutputSink.Stream, StreamBuffer> streams = new EnumMap<>(OutputSink.Stream.class);
+    private boolean closed;
+
+    OutputCapture(String requestId, OutputCaptureFactory factory, List<OutputSink> sinks) {
+        this.requestId = requestId;
+        this.factory = factory;
+        this.sinks = new ArrayList<>(sinks);
+        for (OutputSink.Stream stream : OutputSink.Stream.values()) {
+            streams.put(stream, new StreamBuffer());
+        }
+    }
+
+    /**
+     * 출력 일부 추가 (보존 한도를 넘는 중간 부분은 버리고 개수만 센다)
+     */
+    public synchronized void append(OutputSink.Stream stream, byte[] data, int offset, int length) {
+        if (closed || length <= 0) {
+            return;
+        }
+        streams.get(stream).append(data, offset, length);
+
+        for (int i = sinks.size() - 1; i >= 0; i--) {
+            OutputSink sink = sinks.get(i);
+            try {
+                sink.onOutput(requestId, stream, data, offset, length);
+            } catch (Exception e) {
+                // 실패한 sink는 이번 실행에서 제외 (수집은 계속)
+                log.warn("Output sink {} failed for requestId={}, detaching", sink.getClass().getSimpleName(), requestId, e);
+                sinks.remove(i);
+            }
+        }
+    }
+
+    /**
+     * 보존된 출력 (UTF-8, 결과는 캐시)
+     */
+    public synchronized String text(OutputSink.Stream stream) {
+        return streams.get(stream).text();
+    }
+
+    /**
+     * 보존 한도를 넘어 버려진 바이트 수
+     */
+    public synchronized long truncatedBytes(OutputSink.Stream stream) {
+        return streams.get(stream).truncatedBytes();
+    }
+
+    public synchronized long totalBytes(OutputSink.Stream stream) {
+        return streams.get(stream).total;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        for (OutputSink sink : sinks) {
+            try {
+                sink.onComplete(requestId);
+            } catch (Exception e) {
+                log.warn("Output sink {} failed on completion for requestId={}", sink.getClass().getSimpleName(), requestId, e);
+            }
+        }
+
+        long truncated = 0;
+        for (StreamBuffer buffer : streams.values()) {
+            truncated += buffer.truncatedBytes();
+            // 반환 전에 텍스트를 만들어 두어 close 후에도 조회 가능
+            buffer.text();
+            buffer.release();
+        }
+        factory.recordTruncated(truncated);
+    }
+
+    /**
+     * 스트림 하나의 head + tail(링 버퍼) 보존
+     */
+    private final class StreamBuffer {
+
+        private byte[] head;
+        private int headLength;
+        private byte[] tail;
+        private int tailPosition;
+        private long tailWritten;
+        private long total;
+        private String text;
+
+        private void append(byte[] data, int offset, int length) {
+            total += length;
+            text = null;
+
+            int headCapacity = factory.headBytes();
+            if (headLength < headCapacity) {
+                if (head == null) {
+                    head = factory.acquireHead();
+                }
+                int n = Math.min(length, headCapacity - headLength);
+                System.arraycopy(data, offset, head, headLength, n);
+                headLength += n;
+                offset += n;
+                length -= n;
+            }
+            if (length == 0) {
+                return;
+            }
+
+            int tailCapacity = factory.tailBytes();
+            if (tailCapacity <= 0) {
+                tailWritten += length;
+                return;
+            }
+            if (tail == null) {
+                tail = factory.acquireTail();
+            }
+            tailWritten += length;
+            if (length >= tailCapacity) {
+                // 링 버퍼보다 크면 마지막 tailCapacity 바이트만 남김
+                System.arraycopy(data, offset + length - tailCapacity, tail, 0, tailCapacity);
+                tailPosition = 0;
+                return;
+            }
+            int first = Math.min(length, tailCapacity - tailPosition);
+            System.arraycopy(data, offset, tail, tailPosition, first);
+            System.arraycopy(data, offset + first, tail, 0, length - first);
+            tailPosition = (tailPosition + length) % tailCapacity;
+        }
+
+        private int tailKept() {
+            return (int) Math.min(tailWritten, factory.tailBytes());
+        }
+
+        private long truncatedBytes() {
+            return total - headLength - tailKept();
+        }
+
+        private String text() {
+            if (text != null) {
+                return text;
+            }
+            long truncated = truncatedBytes();
+            byte[] marker = truncated > 0
+                    ? ("\n... [truncated " + truncated + " bytes] ...\n").getBytes(StandardCharsets.UTF_8)
+                    : new byte[0];
+
+            int tailKept = tailKept();
+            byte[] out = new byte[headLength + marker.length + tailKept];
+            if (head != null) {
+                System.arraycopy(head, 0, out, 0, headLength);
+            }
+            System.arraycopy(marker, 0, out, headLength, marker.length);
+            if (tailKept > 0) {
+                int start = headLength + marker.length;
+                if (tailWritten <= tail.length) {
+                    System.arraycopy(tail, 0, out, start, tailKept);
+                } else {
+                    // 링 버퍼: tailPosition부터가 가장 오래된 바이트
+                    int first = tail.length - tailPosition;
+                    System.arraycopy(tail, tailPosition, out, start, first);
+                    System.arraycopy(tail, 0, out, start + first, tailPosition);
+                }
+            }
+            text = new String(out, StandardCharsets.UTF_8);
+            return text;
+        }
+
+        private void release() {
+            if (head != null) {
+                factory.releaseHead(head);
+                head = null;
+            }
+            if (tail != null) {
+                factory.releaseTail(tail);
+                tail = null;
+            }
+        }
+    }
+}
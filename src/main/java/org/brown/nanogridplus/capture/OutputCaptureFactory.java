@@ -0,0 +1,125 @@
+package org.brown.nanogridplus.capture;
+
+import lombok.extern.slf4j.Slf4j;
+import org.brown.nanogridplus.config.AgentProperties;
+import org.brown.nanogridplus.metrics.StatsProvider;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * OutputCapture 생성 + head/tail 버퍼 풀
+ *
+ * 버퍼는 처음 출력이 들어올 때 빌리고 close 시 반환한다. (출력이 없는 스트림은 버퍼를 쓰지 않음)
+ * 풀에 poolSize개까지 보관하고, 모자라면 새로 할당한다.
+ * 등록된 OutputSink 빈은 모든 캡처에 연결된다.
+ */
+@Slf4j
+@Component
+public class OutputCaptureFactory implements StatsProvider {
+
+    private final AgentProperties.CaptureConfig captureConfig;
+    private final List<OutputSink> sinks;
+    private final BlockingQueue<byte[]> headPool;
+    private final BlockingQueue<byte[]> tailPool;
+
+    // 통계
+    private final AtomicLong captures = new AtomicLong();
+    private final AtomicLong allocatedBuffers = new AtomicLong();
+    private final AtomicLong reusedBuffers = new AtomicLong();
+    private final AtomicLong truncatedCaptures = new AtomicLong();
+    private final AtomicLong truncatedBytes = new AtomicLong();
+
+    public OutputCaptureFactory(AgentProperties agentProperties, ObjectProvider<OutputSink> sinkProvider) {
+        this.captureConfig = agentProperties.getCapture();
+        this.sinks = sinkProvider.orderedStream().toList();
+        int poolSize = Math.max(1, captureConfig.getPoolSize());
+        this.headPool = new ArrayBlockingQueue<>(poolSize);
+        this.tailPool = new ArrayBlockingQueue<>(poolSize);
+        log.info("Output capture: headBytes={}, tailBytes={}, poolSize={}, sinks={}",
+                captureConfig.getHeadBytes(), captureConfig.getTailBytes(), poolSize,
+                sinks.stream().map(sink -> sink.getClass().getSimpleName()).toList());
+    }
+
+    /**
+     * exec 한 번의 출력 수집 시작 (사용 후 close)
+     */
+    public OutputCapture open(String requestId) {
+        captures.incrementAndGet();
+        return new OutputCapture(requestId, this, sinks);
+    }
+
+    int headBytes() {
+        return Math.max(0, captureConfig.getHeadBytes());
+    }
+
+    int tailBytes() {
+        return Math.max(0, captureConfig.getTailBytes());
+    }
+
+    byte[] acquireHead() {
+        return acquire(headPool, headBytes());
+    }
+
+    byte[] acquireTail() {
+        return acquire(tailPool, tailBytes());
+    }
+
+    void releaseHead(byte[] buffer) {
+        release(headPool, buffer, headBytes());
+    }
+
+    void releaseTail(byte[] buffer) {
+        release(tailPool, buffer, tailBytes());
+    }
+
+    void recordTruncated(long bytes) {
+        if (bytes > 0) {
+            truncatedCaptures.incrementAndGet();
+            truncatedBytes.addAndGet(bytes);
+        }
+    }
+
+    private byte[] acquire(BlockingQueue<byte[]> pool, int size) {
+        byte[] buffer = pool.poll();
+        if (buffer != null && buffer.length == size) {
+            reusedBuffers.incrementAndGet();
+            return buffer;
+        }
+        allocatedBuffers.incrementAndGet();
+        return new byte[size];
+    }
+
+    private void release(BlockingQueue<byte[]> pool, byte[] buffer, int size) {
+        // 설정이 바뀐 뒤의 다른 크기 버퍼는 버림, 풀이 가득 차면 GC에 맡김
+        if (buffer.length == size) {
+            pool.offer(buffer);
+        }
+    }
+
+    @Override
+    public String statsName() {
+        return "outputCapture";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("captures", captures.get());
+        stats.put("headBytes", headBytes());
+        stats.put("tailBytes", tailBytes());
+        stats.put("pooledBuffers", headPool.size() + tailPool.size());
+        stats.put("allocatedBuffers", allocatedBuffers.get());
+        stats.put("reusedBuffers", reusedBuffers.get());
+        stats.put("truncatedCaptures", truncatedCaptures.get());
+        stats.put("truncatedBytes", truncatedBytes.get());
+        stats.put("sinks", sinks.size());
+        return stats;
+    }
+}
@@ -0,0 +1,25 @@
+package org.brown.nanogridplus.capture;
+
+/**
+ * 실행 출력 스트리밍 수신자
+ *
+ * 빈으로 등록하면 모든 exec 출력이 받는 즉시 전달된다. (OutputCapture의 보존 한도와 무관)
+ * 전달된 배열은 호출이 끝나면 재사용될 수 있으므로 보관하려면 복사해야 한다.
+ */
+public interface OutputSink {
+
+    enum Stream {
+        STDOUT, STDERR
+    }
+
+    /**
+     * 출력 일부 수신 (exec 콜백 스레드에서 호출되므로 오래 블로킹하지 않아야 함)
+     */
+    void onOutput(String requestId, Stream stream, byte[] data, int offset, int length);
+
+    /**
+     * 출력 종료
+     */
+    default void onComplete(String requestId) {
+    }
+}
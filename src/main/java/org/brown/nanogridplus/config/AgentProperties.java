@@ -4,6 +4,13 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 /**
  * Agent 통합 설정 프로퍼티
  * 
@@ -20,8 +27,21 @@ public class AgentProperties {
     private DockerConfig docker = new DockerConfig();
     private WarmPoolConfig warmPool = new WarmPoolConfig();
     private PollingConfig polling = new PollingConfig();
+    private DispatcherConfig dispatcher = new DispatcherConfig();
+    private AdmissionConfig admission = new AdmissionConfig();
+    private PipelineConfig pipeline = new PipelineConfig();
+    private DedupConfig dedup = new DedupConfig();
+    private FunctionQuotaConfig functionQuota = new FunctionQuotaConfig();
     private RedisConfig redis = new RedisConfig();
     private OutputConfig output = new OutputConfig();  // Output Binding 설정 추가
+    private CodeCacheConfig codeCache = new CodeCacheConfig();
+    private ExtractConfig extract = new ExtractConfig();
+    private PrefetchConfig prefetch = new PrefetchConfig();
+    private WorkspaceConfig workspace = new WorkspaceConfig();
+    private DependencyConfig dependencies = new DependencyConfig();
+    private CaptureConfig capture = new CaptureConfig();
+    private ForkServerConfig forkServer = new ForkServerConfig();
+    private BuildCacheConfig buildCache = new BuildCacheConfig();
     private String taskBaseDir = "/tmp/task";
 
     @Data
@@ -34,12 +54,80 @@ public class AgentProperties {
         private String queueUrl;
         private int waitTimeSeconds = 20;
         private int maxNumberOfMessages = 10;
+        private int visibilityTimeoutSeconds = 30;  // 수신 시 적용할 Visibility Timeout
+        private AckConfig ack = new AckConfig();
+        private HeartbeatConfig heartbeat = new HeartbeatConfig();
+        private RetryConfig retry = new RetryConfig();
+        private List<QueueConfig> queues = new ArrayList<>();  // 여러 큐 사용 시 설정 (비어 있으면 queueUrl 하나만 사용)
+
+        /**
+         * 실제로 수신할 큐 목록 (queues가 비어 있으면 queueUrl 하나)
+         *
+         * @throws IllegalStateException 같은 URL의 큐가 두 번 이상 설정된 경우
+         */
+        public List<QueueConfig> resolveQueues() {
+            if (queues != null && !queues.isEmpty()) {
+                Set<String> urls = new HashSet<>();
+                for (QueueConfig queue : queues) {
+                    if (!urls.add(queue.getUrl())) {
+                        throw new IllegalStateException("Duplicate queue url in agent.sqs.queues: " + queue.getUrl());
+                    }
+                }
+                return queues;
+            }
+            QueueConfig single = new QueueConfig();
+            single.setName("default");
+            single.setUrl(queueUrl);
+            return List.of(single);
+        }
+    }
+
+    @Data
+    public static class QueueConfig {
+        private String name;
+        private String url;
+        private int priority = 0;       // 클수록 먼저 실행 슬롯을 배정받음 (엄격한 우선순위)
+        private int weight = 1;         // 같은 우선순위 큐 사이의 배분 비율
+        private double minShare = 0.0;  // 낮은 우선순위라도 보장받는 최소 실행 비율 (0.0 ~ 1.0)
+    }
+
+    @Data
+    public static class AckConfig {
+        private boolean batchEnabled = true;  // false면 메시지마다 DeleteMessage 호출
+        private int maxBatchSize = 10;        // DeleteMessageBatch 한 번에 보낼 최대 개수 (SQS 최대 10)
+        private long lingerMillis = 20;       // 배치가 차지 않아도 전송하기까지 최대 대기 시간
+        private int maxRetries = 3;           // 항목별 실패 시 재시도 횟수
+    }
+
+    @Data
+    public static class RetryConfig {
+        private int initialBackoffSeconds = 1;   // 첫 재시도까지 대기 시간
+        private int maxBackoffSeconds = 300;     // 백오프 상한
+        private int maxReceiveCount = 5;         // 이 횟수 이상 실패하면 poison 메시지로 간주
+        private String deadLetterQueueUrl;       // 설정 시 poison 메시지를 직접 DLQ로 전송 (없으면 큐의 Redrive Policy 사용, 둘 다 없으면 시작 시 ERROR)
+    }
+
+    @Data
+    public static class HeartbeatConfig {
+        private boolean enabled = true;
+        private long intervalMillis = 5000;   // 실행 중 메시지 점검 주기
+        private int extensionSeconds = 30;    // 한 번 연장할 때 설정할 Visibility Timeout
+        private long graceMillis = 60000;     // timeoutMs 외에 코드 준비/결과 전송에 허용할 여유 시간
     }
 
     @Data
     public static class S3Config {
         private String codeBucket;
         private String userDataBucket;  // Output 파일 업로드용 버킷
+        private DownloadConfig download = new DownloadConfig();
+    }
+
+    @Data
+    public static class DownloadConfig {
+        private boolean rangedEnabled = true;                         // 큰 파일은 byte-range GET을 병렬로 요청
+        private long multipartThresholdBytes = 16L * 1024 * 1024;     // 첫 요청 범위, 이보다 큰 파일만 나누어 다운로드
+        private long partSizeBytes = 8L * 1024 * 1024;                // 나머지 구간의 part 크기
+        private int parallelism = 8;                                  // 동시에 요청할 part 수
     }
 
     @Data
@@ -49,6 +137,7 @@ public class AgentProperties {
         private String workDirRoot = "/workspace-root";
         private long defaultTimeoutMs = 10000;
         private String outputMountPath = "/output";  // 컨테이너 내부 output 경로
+        private String execUser = "";                // 사용자 코드 실행 계정 (uid:gid, 비우면 컨테이너 기본 사용자 root)
     }
 
     @Data
@@ -58,6 +147,87 @@ public class AgentProperties {
         private String s3Prefix = "outputs";     // S3 키 프리픽스
     }
 
+    @Data
+    public static class CodeCacheConfig {
+        private boolean enabled = true;
+        private String directory = "/tmp/nanogrid-cache/code";  // 코드 zip 캐시 디렉터리
+        private long maxBytes = 2L * 1024 * 1024 * 1024;       // 캐시 최대 크기 (초과 시 LRU 제거)
+        private int revalidateAfterSeconds = 30;               // 이 시간 동안은 S3 확인 없이 캐시 사용
+        private boolean shareExtractedTrees = true;            // 버전별로 한 번만 압축 해제 후 작업 디렉터리에 심볼릭 링크 (트리는 읽기 전용 마운트)
+    }
+
+    @Data
+    public static class WorkspaceConfig {
+        private boolean reaperEnabled = true;                  // 완료된 요청의 작업/output 디렉터리를 백그라운드에서 삭제
+        private long retainSeconds = 0;                        // 완료 후 삭제까지 보관 시간 (디버깅용)
+        private long quotaBytes = 20L * 1024 * 1024 * 1024;   // 작업 + output 디렉터리 전체 디스크 한도 (초과 시 오래된 것부터 삭제)
+        private long scanIntervalSeconds = 60;                 // 디스크 사용량 점검 주기
+        private long orphanTtlSeconds = 3600;                  // 실행 중이 아닌 디렉터리를 고아로 보고 삭제하는 기준
+        private TmpfsConfig tmpfs = new TmpfsConfig();
+    }
+
+    @Data
+    public static class TmpfsConfig {
+        private boolean enabled = false;                              // 작업 디렉터리를 메모리(tmpfs)에 생성
+        private String directory = "/dev/shm/nanogrid-task";          // 호스트의 tmpfs 경로
+        private String containerPath = "/workspace-mem";              // 컨테이너 내부 마운트 경로
+        private long maxBytes = 1024L * 1024 * 1024;                  // tmpfs 작업 디렉터리 전체 한도
+        private long reserveBytesPerRequest = 64L * 1024 * 1024;      // 크기를 재기 전 요청당 예약량
+        private long minAvailableMemoryBytes = 1024L * 1024 * 1024;   // MemAvailable이 이보다 적으면 디스크 사용
+    }
+
+    @Data
+    public static class CaptureConfig {
+        private int headBytes = 512 * 1024;      // 스트림별로 보존할 앞부분 크기
+        private int tailBytes = 512 * 1024;      // 스트림별로 보존할 뒷부분 크기 (중간은 버림)
+        private int poolSize = 16;               // 재사용할 버퍼 수 (head/tail 각각)
+        private boolean logStreaming = false;    // 출력을 받는 즉시 로그로 전달 (디버깅용 sink)
+    }
+
+    @Data
+    public static class ForkServerConfig {
+        private boolean enabled = false;                              // Python warm 컨테이너에 상주 fork server 실행 (docker exec 대신 Unix 소켓으로 호출)
+        private List<String> preloadModules = new ArrayList<>();      // fork server가 미리 import할 모듈 (이미지에 설치된 모듈)
+        private long startTimeoutMs = 5000;                           // fork server 소켓 생성 대기 시간 (초과 시 docker exec 사용)
+    }
+
+    @Data
+    public static class BuildCacheConfig {
+        private boolean enabled = true;                               // C++ 컴파일 결과를 소스/이미지/인자 해시별로 캐시 (hit 시 컴파일 생략)
+        private String directory = "/var/lib/nanogrid/build-cache";   // 호스트의 캐시 저장 경로 (재시작 후에도 유지)
+        private String containerPath = "/nanogrid-build-cache";       // C++ 컨테이너 내부 마운트 경로
+        private long maxBytes = 2L * 1024 * 1024 * 1024;              // 캐시 전체 크기 한도 (초과 시 LRU 제거)
+    }
+
+    @Data
+    public static class DependencyConfig {
+        private boolean enabled = true;                               // requirements.txt를 해시별로 한 번만 설치해 공유
+        private String directory = "/var/lib/nanogrid/deps";          // 호스트의 의존성 레이어 저장 경로 (재시작 후에도 유지)
+        private String containerPath = "/deps";                       // Python 컨테이너 내부 마운트 경로 (읽기 전용)
+        private long maxBytes = 5L * 1024 * 1024 * 1024;              // 레이어 전체 크기 한도 (초과 시 LRU 제거)
+        private long installTimeoutSeconds = 300;                     // pip install 제한 시간
+        private int installThreads = 2;                               // pip install 전용 스레드 수 (fetch 스레드는 설치를 기다리지 않음)
+    }
+
+    @Data
+    public static class PrefetchConfig {
+        private boolean enabled = true;                        // 대기 중인 메시지의 코드를 미리 캐시에 다운로드
+        private int threads = 1;                               // 낮은 우선순위 I/O 스레드 수
+        private int queueCapacity = 64;                        // 대기 중인 prefetch 요청 수 (초과 시 버림)
+        private long maxBytesPerSecond = 20L * 1024 * 1024;   // prefetch 다운로드 대역폭 제한 (0이면 제한 없음)
+    }
+
+    @Data
+    public static class ExtractConfig {
+        private boolean streaming = true;                          // 캐시 미사용 시 S3 스트림에서 바로 압축 해제 (임시 zip 파일 없음)
+        private long maxUncompressedBytes = 1024L * 1024 * 1024;   // 압축 해제 총 크기 제한 (zip bomb 방지)
+        private long maxEntryBytes = 512L * 1024 * 1024;           // 파일 하나의 최대 크기
+        private int maxEntries = 20000;                            // 최대 항목 수
+        private boolean parallelEnabled = true;                    // 디스크의 큰 zip은 항목별로 병렬 압축 해제
+        private long parallelMinArchiveBytes = 8L * 1024 * 1024;   // 이보다 작은 zip은 순차(스트리밍) 압축 해제
+        private int parallelism = 0;                               // 병렬 압축 해제 스레드 수 (0이면 CPU 코어 수)
+    }
+
     @Data
     public static class WarmPoolConfig {
         private boolean enabled = true;
@@ -69,6 +239,72 @@ public class AgentProperties {
     public static class PollingConfig {
         private boolean enabled = true;
         private long fixedDelayMillis = 1000;
+        private PollingMode mode = PollingMode.SCHEDULED;  // scheduled | continuous
+        private int receiverThreads = 2;     // continuous 모드의 Long Polling 스레드 수
+        private int prefetchCapacity = 20;   // 수신 후 실행 대기 중인 메시지 최대 개수
+    }
+
+    public enum PollingMode {
+        SCHEDULED,   // fixedDelayMillis 간격으로 한 번씩 수신
+        CONTINUOUS   // 전용 스레드가 쉬지 않고 Long Polling
+    }
+
+    @Data
+    public static class DispatcherConfig {
+        private int pythonConcurrency = 0;  // Python 동시 실행 수 (0이면 warmPool.pythonSize 사용)
+        private int cppConcurrency = 0;     // C++ 동시 실행 수 (0이면 warmPool.cppSize 사용)
+    }
+
+    @Data
+    public static class PipelineConfig {
+        private int fetchThreads = 4;          // 코드 준비(S3 다운로드/압축 해제) 단계 스레드 수
+        private int harvestThreads = 2;        // Output 파일 업로드 단계 스레드 수
+        private int publishThreads = 2;        // 결과 전송 + ACK 단계 스레드 수
+        private int stageQueueCapacity = 64;   // 단계별 대기 큐 크기 (가득 차면 이전 단계 스레드가 직접 실행)
+        private int fetchAheadPerRuntime = 0;  // 실행 슬롯 외에 미리 코드를 준비할 작업 수 (0이면 동시 실행 수와 동일)
+    }
+
+    @Data
+    public static class FunctionQuotaConfig {
+        private boolean enabled = true;
+        private int defaultMaxConcurrency = 0;        // 함수별 최대 동시 실행 수 (0이면 제한 없음)
+        private double defaultRatePerSecond = 0;      // 함수별 초당 실행 수 제한 (0이면 제한 없음)
+        private int defaultBurst = 0;                 // 토큰 버킷 크기 (0이면 ratePerSecond 올림, 최소 1)
+        private int defaultWeight = 1;                // 함수 사이 공정 배분 가중치 (Deficit Round Robin quantum)
+        private int maxBufferedPerFunction = 4;       // 함수 하나가 실행 대기 버퍼에 둘 수 있는 최대 메시지 수 (0이면 제한 없음)
+        private int overflowVisibilitySeconds = 5;    // 한도를 넘은 메시지를 큐로 돌려보낼 때의 Visibility
+        private Map<String, FunctionLimit> functions = new HashMap<>();  // functionId별 개별 설정
+    }
+
+    @Data
+    public static class FunctionLimit {
+        private Integer maxConcurrency;
+        private Double ratePerSecond;
+        private Integer burst;
+        private Integer weight;
+    }
+
+    @Data
+    public static class DedupConfig {
+        private boolean enabled = true;
+        private int localMaxEntries = 10000;          // 프로세스 내 LRU 최대 항목 수
+        private boolean redisEnabled = true;          // 여러 Agent 간 중복 방지 (Redis SET NX)
+        private String keyPrefix = "dedup:";
+        private int inProgressTtlSeconds = 0;         // 실행 중 표시 유지 시간 (0이면 heartbeat 연장 한도/Visibility Timeout으로 계산)
+        private int completedTtlSeconds = 3600;       // 완료 표시 유지 시간
+        private int suppressVisibilitySeconds = 30;   // 실행 중인 중복 메시지를 다시 보이게 할 때까지의 시간
+    }
+
+    @Data
+    public static class AdmissionConfig {
+        private boolean enabled = true;
+        private long hostMemoryMb = 0;             // 작업에 할당할 호스트 메모리 예산 (0이면 물리 메모리의 80%)
+        private int hostCpuMillicores = 0;         // 작업에 할당할 CPU 예산 (0이면 코어 수 * 1000)
+        private int defaultMemoryMb = 128;         // memoryMb가 없는 작업의 예약량
+        private int cpuMillicoresPerTask = 1000;   // 작업당 CPU 예약량
+        private long minAvailableMemoryMb = 256;   // 호스트 가용 메모리가 이보다 적으면 신규 작업 거부
+        private double maxCpuLoad = 0.95;          // 호스트 CPU 사용률이 이보다 높으면 신규 작업 거부
+        private int shedVisibilitySeconds = 5;     // 거부한 메시지를 다시 보이게 할 시간
     }
 
     @Data
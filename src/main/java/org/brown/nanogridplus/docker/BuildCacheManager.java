@@ -0,0 +1,324 @@
+package org.brown.nanogridplus.docker;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.model.AccessMode;
+import com.github.dockerjava.api.model.Bind;
+import com.github.dockerjava.api.model.Volume;
+import lombok.extern.slf4j.Slf4j;
+import org.brown.nanogridplus.config.AgentProperties;
+import org.brown.nanogridplus.metrics.StatsProvider;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * C++ 컴파일 결과 캐시 (소스 트리 + 컴파일러 이미지 + 컴파일 인자 해시 → 결과 파일)
+ *
+ * C++ 함수는 run.sh 안에서 매번 g++로 다시 컴파일하므로 같은 소스도 호출마다 수 초의 CPU를 쓴다.
+ * run.sh의 형식은 함수마다 다르므로 빌드/실행을 나누지 않고, 컴파일러 호출을 가로채는 wrapper(nanogrid-cc)로 캐시한다.
+ *
+ * - 캐시 디렉터리를 C++ warm 컨테이너에 마운트하고 run.sh 실행 시 PATH 앞에 bin 추가
+ *   (bin은 읽기 전용, wrapper가 기록하는 objects와 log만 쓰기 가능)
+ * - prepare(): 실행 전 작업 디렉터리 전체의 해시 계산 → wrapper에 환경 변수로 전달
+ * - wrapper: 키에 해당하는 결과가 있으면 g++를 실행하지 않고 결과 파일만 복사 (hit), 없으면 컴파일 후 저장 (miss)
+ * - finish(): 요청의 hit/miss 기록 집계, 새 항목이 생겼으면 maxBytes 초과분을 오래 사용하지 않은 것부터 제거
+ */
+@Slf4j
+@Component
+public class BuildCacheManager implements StatsProvider {
+
+    private static final String WRAPPER_NAME = "nanogrid-cc";
+    private static final String WRAPPER_RESOURCE = "/buildcache/" + WRAPPER_NAME;
+    private static final List<String> COMPILERS = List.of("g++", "gcc", "c++", "cc");
+    private static final int HASH_BUFFER_SIZE = 64 * 1024;
+
+    private final DockerClient dockerClient;
+    private final AgentProperties agentProperties;
+    private final AgentProperties.BuildCacheConfig buildCacheConfig;
+    private final Path cacheDir;
+    private final Path binDir;
+    private final Path objectsDir;
+    private final Path logDir;
+    private volatile String compilerId;
+
+    // 통계
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong totalHashMillis = new AtomicLong();
+    private final AtomicLong hashedRequests = new AtomicLong();
+    private volatile long cachedBytes;
+    private volatile int cachedEntries;
+
+    public BuildCacheManager(DockerClient dockerClient, AgentProperties agentProperties) {
+        this.dockerClient = dockerClient;
+        this.agentProperties = agentProperties;
+        this.buildCacheConfig = agentProperties.getBuildCache();
+        this.cacheDir = Paths.get(buildCacheConfig.getDirectory());
+        this.binDir = cacheDir.resolve("bin");
+        this.objectsDir = cacheDir.resolve("objects");
+        this.logDir = cacheDir.resolve("log");
+    }
+
+    /**
+     * 캐시 디렉터리와 wrapper 배치, 컴파일러 이미지 ID 확인
+     */
+    @PostConstruct
+    public void initialize() throws IOException {
+        if (!buildCacheConfig.isEnabled()) {
+            return;
+        }
+        Files.createDirectories(binDir);
+        Files.createDirectories(objectsDir);
+        Files.createDirectories(logDir);
+        // root가 아닌 실행 사용자(agent.docker.execUser)를 지정한 경우에만 wrapper가 결과와 로그를 기록할 수 있게 개방
+        String execUser = agentProperties.getDocker().getExecUser();
+        if (execUser != null && !execUser.isBlank()) {
+            Files.setPosixFilePermissions(objectsDir, PosixFilePermissions.fromString("rwxrwxrwx"));
+            Files.setPosixFilePermissions(logDir, PosixFilePermissions.fromString("rwxrwxrwx"));
+        }
+
+        Path wrapper = binDir.resolve(WRAPPER_NAME);
+        try (InputStream script = BuildCacheManager.class.getResourceAsStream(WRAPPER_RESOURCE)) {
+            if (script == null) {
+                throw new IllegalStateException("Build cache wrapper not found: " + WRAPPER_RESOURCE);
+            }
+            Files.copy(script, wrapper, StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.setPosixFilePermissions(wrapper, PosixFilePermissions.fromString("rwxr-xr-x"));
+        for (String compiler : COMPILERS) {
+            Path link = binDir.resolve(compiler);
+            Files.deleteIfExists(link);
+            Files.createSymbolicLink(link, Paths.get(WRAPPER_NAME));
+        }
+
+        // 이미지 태그가 다른 버전을 가리키게 되면 키가 달라지도록 이미지 ID 사용
+        String image = agentProperties.getDocker().getCppImage();
+        try {
+            compilerId = dockerClient.inspectImageCmd(image).exec().getId();
+        } catch (Exception e) {
+            log.warn("Failed to inspect C++ image {}, using image name as compiler id", image, e);
+            compilerId = image;
+        }
+
+        evictIfNeeded();
+        log.info("C++ build cache initialized: dir={}, entries={}, bytes={}, maxBytes={}",
+                cacheDir, cachedEntries, cachedBytes, buildCacheConfig.getMaxBytes());
+    }
+
+    public boolean isEnabled() {
+        return buildCacheConfig.isEnabled();
+    }
+
+    /**
+     * C++ warm 컨테이너에 추가할 마운트 (비활성화 시 빈 목록)
+     * wrapper를 사용자 코드가 바꾸지 못하도록 bin은 읽기 전용으로 마운트한다.
+     */
+    public List<Bind> containerBinds() {
+        if (!buildCacheConfig.isEnabled()) {
+            return List.of();
+        }
+        String containerPath = buildCacheConfig.getContainerPath();
+        return List.of(
+                new Bind(binDir.toString(), new Volume(containerPath + "/bin"), AccessMode.ro),
+                new Bind(objectsDir.toString(), new Volume(containerPath + "/objects")),
+                new Bind(logDir.toString(), new Volume(containerPath + "/log")));
+    }
+
+    /**
+     * run.sh 실행 커맨드 (캐시 사용 시 wrapper가 실제 컴파일러보다 먼저 실행되도록 PATH 변경)
+     */
+    public List<String> runCommand(String script) {
+        if (!buildCacheConfig.isEnabled()) {
+            return List.of("/bin/bash", script);
+        }
+        return List.of("/bin/bash", "-c", "PATH=\"$0/bin:$PATH\" exec /bin/bash \"$1\"",
+                buildCacheConfig.getContainerPath(), script);
+    }
+
+    /**
+     * 작업 디렉터리 해시 계산, wrapper에 전달할 환경 변수 반환 (실패 시 캐시 없이 실행)
+     */
+    public List<String> prepare(String requestId, Path workDir) {
+        if (!buildCacheConfig.isEnabled()) {
+            return List.of();
+        }
+        long start = System.currentTimeMillis();
+        try {
+            String sourceHash = treeHash(workDir);
+            totalHashMillis.addAndGet(System.currentTimeMillis() - start);
+            hashedRequests.incrementAndGet();
+
+            Files.deleteIfExists(logDir.resolve(requestId));
+            String containerPath = buildCacheConfig.getContainerPath();
+            return List.of(
+                    "NANOGRID_SOURCE_HASH=" + sourceHash,
+                    "NANOGRID_COMPILER_ID=" + compilerId,
+                    "NANOGRID_BUILD_LOG=" + containerPath + "/log/" + requestId
+            );
+        } catch (IOException e) {
+            log.warn("[SKIP][BUILD_CACHE] 소스 해시 계산 실패, 캐시 없이 실행: requestId={}", requestId, e);
+            return List.of();
+        }
+    }
+
+    /**
+     * 요청의 hit/miss 집계 및 기록 삭제, 새 항목이 생겼으면 한도 점검
+     */
+    public void finish(String requestId) {
+        if (!buildCacheConfig.isEnabled()) {
+            return;
+        }
+        Path buildLog = logDir.resolve(requestId);
+        if (!Files.exists(buildLog)) {
+            return;
+        }
+        try {
+            long requestHits = 0;
+            long requestMisses = 0;
+            for (String line : Files.readAllLines(buildLog)) {
+                if ("hit".equals(line)) {
+                    requestHits++;
+                } else if ("miss".equals(line)) {
+                    requestMisses++;
+                }
+            }
+            Files.deleteIfExists(buildLog);
+            hits.addAndGet(requestHits);
+            misses.addAndGet(requestMisses);
+            log.info("[BUILD_CACHE] requestId={}, hits={}, misses={}", requestId, requestHits, requestMisses);
+
+            if (requestMisses > 0) {
+                evictIfNeeded();
+            }
+        } catch (IOException e) {
+            log.warn("Failed to read build cache log: {}", buildLog, e);
+        }
+    }
+
+    /**
+     * 전체 크기가 maxBytes를 넘으면 마지막 사용(mtime, hit 시 갱신)이 오래된 항목부터 삭제
+     */
+    private synchronized void evictIfNeeded() {
+        try {
+            List<Entry> entries = new ArrayList<>();
+            long total = 0;
+            try (var paths = Files.list(objectsDir)) {
+                for (Path path : paths.toList()) {
+                    BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+                    if (!attrs.isRegularFile()) {
+                        continue;
+                    }
+                    entries.add(new Entry(path, attrs.size(), attrs.lastModifiedTime().toMillis()));
+                    total += attrs.size();
+                }
+            }
+
+            entries.sort(Comparator.comparingLong(Entry::lastUsedMillis));
+            int remaining = entries.size();
+            for (Entry entry : entries) {
+                if (total <= buildCacheConfig.getMaxBytes()) {
+                    break;
+                }
+                // wrapper가 쓰는 중인 임시 파일(.{key}.{pid})은 제외
+                if (entry.path.getFileName().toString().startsWith(".")) {
+                    continue;
+                }
+                Files.deleteIfExists(entry.path);
+                total -= entry.sizeBytes;
+                remaining--;
+                evictions.incrementAndGet();
+            }
+            cachedBytes = total;
+            cachedEntries = remaining;
+        } catch (IOException e) {
+            log.warn("Failed to evict build cache entries", e);
+        }
+    }
+
+    /**
+     * 작업 디렉터리 전체 해시 (상대 경로 순서대로 경로 + 내용)
+     */
+    private static String treeHash(Path workDir) throws IOException {
+        MessageDigest digest = sha256();
+        List<Path> files = new ArrayList<>();
+        Files.walkFileTree(workDir, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                // 공유 코드 트리를 가리키는 심볼릭 링크도 원본 파일로 포함
+                if (attrs.isRegularFile() || (attrs.isSymbolicLink() && Files.isRegularFile(file))) {
+                    files.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        files.sort(Comparator.comparing(file -> workDir.relativize(file).toString()));
+
+        byte[] buffer = new byte[HASH_BUFFER_SIZE];
+        for (Path file : files) {
+            digest.update(workDir.relativize(file).toString().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            try (InputStream in = Files.newInputStream(file)) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    digest.update(buffer, 0, read);
+                }
+            }
+            digest.update((byte) 0);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public String statsName() {
+        return "buildCache";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long lookups = hits.get() + misses.get();
+        long hashed = hashedRequests.get();
+        stats.put("enabled", buildCacheConfig.isEnabled());
+        stats.put("entries", cachedEntries);
+        stats.put("bytes", cachedBytes);
+        stats.put("maxBytes", buildCacheConfig.getMaxBytes());
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("hitRate", lookups == 0 ? 0.0 : (double) hits.get() / lookups);
+        stats.put("evictions", evictions.get());
+        stats.put("avgHashMillis", hashed == 0 ? 0 : totalHashMillis.get() / hashed);
+        return stats;
+    }
+
+    private record Entry(Path path, long sizeBytes, long lastUsedMillis) {
+    }
+}
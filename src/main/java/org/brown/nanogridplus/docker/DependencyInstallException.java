@@ -0,0 +1,33 @@
+package org.brown.nanogridplus.docker;
+
+import java.io.IOException;
+
+/**
+ * Python 의존성 레이어 설치(pip install) 실패
+ *
+ * permanent: 재시도해도 같은 결과인 실패 (없는 패키지, 잘못된 파일 참조 등)
+ */
+public class DependencyInstallException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final boolean permanent;
+
+    public DependencyInstallException(String message) {
+        this(message, false);
+    }
+
+    public DependencyInstallException(String message, boolean permanent) {
+        super(message);
+        this.permanent = permanent;
+    }
+
+    public DependencyInstallException(String message, Throwable cause) {
+        super(message, cause);
+        this.permanent = false;
+    }
+
+    public boolean isPermanent() {
+        return permanent;
+    }
+}
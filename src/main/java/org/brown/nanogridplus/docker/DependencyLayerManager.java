@@ -0,0 +1,609 @@
+package org.brown.nanogridplus.docker;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.async.ResultCallback;
+import com.github.dockerjava.api.command.InspectContainerResponse;
+import com.github.dockerjava.api.model.AccessMode;
+import com.github.dockerjava.api.model.Bind;
+import com.github.dockerjava.api.model.Frame;
+import com.github.dockerjava.api.model.HostConfig;
+import com.github.dockerjava.api.model.Volume;
+import lombok.extern.slf4j.Slf4j;
+import org.brown.nanogridplus.config.AgentProperties;
+import org.brown.nanogridplus.metrics.StatsProvider;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Python 의존성 레이어 관리 (requirements.txt 해시 → 설치된 패키지 디렉터리)
+ *
+ * 함수 zip에 wheel을 모두 넣거나 실행할 때마다 pip install을 하지 않도록
+ * 같은 requirements.txt(정규화한 내용 + Python 이미지 기준 해시)는 한 번만 설치하여 공유한다.
+ *
+ * - 설치: Python 이미지로 일회용 컨테이너를 띄워 pip install --target으로 임시 디렉터리에 설치 후 이름 변경
+ *         설치는 전용 스레드(installThreads)에서 진행하고 prepare()는 Future를 반환 (fetch 스레드가 pip를 기다리지 않음)
+ * - 입력: requirements.txt가 참조하는 파일(-r/-c, 로컬 wheel/디렉터리, --find-links)은 작업 디렉터리 구조 그대로
+ *         설치 컨테이너에 함께 복사하고 해시에도 포함. 작업 디렉터리 밖이나 없는 파일을 참조하면 재시도 불가 오류
+ * - 사용: 레이어 저장 경로 전체를 Python warm 컨테이너에 읽기 전용으로 마운트하고
+ *         exec 시 PYTHONPATH={containerPath}/{hash} 지정 (warm 컨테이너의 마운트는 생성 시 고정되므로)
+ * - 같은 레이어를 동시에 요청하면 설치는 한 번만 (나머지는 대기)
+ * - 전체 크기가 maxBytes를 넘으면 오래 사용하지 않은 레이어부터 제거 (실행 중인 요청이 쓰는 레이어 제외)
+ * - 설치된 레이어는 재시작 후에도 재사용
+ */
+@Slf4j
+@Component
+public class DependencyLayerManager implements StatsProvider {
+
+    public static final String REQUIREMENTS_FILE = "requirements.txt";
+
+    private static final Pattern LAYER_NAME = Pattern.compile("[0-9a-f]{64}");
+    private static final String INSTALL_MOUNT = "/layer";
+    private static final String INPUT_MOUNT = "/input";
+    private static final Set<String> FILE_OPTIONS = Set.of("-r", "--requirement", "-c", "--constraint");
+    private static final Set<String> PATH_OPTIONS = Set.of("-e", "--editable", "-f", "--find-links");
+    // 재시도해도 같은 결과인 pip 오류 (없는 패키지/버전, 잘못된 요구사항)
+    private static final List<String> PERMANENT_PIP_ERRORS = List.of(
+            "No matching distribution found",
+            "Could not find a version that satisfies",
+            "ResolutionImpossible",
+            "Invalid requirement",
+            "Could not open requirements file",
+            "is not a valid wheel filename",
+            "is not a supported wheel on this platform");
+    private static final long POLL_INTERVAL_MILLIS = 500;
+    private static final int LOG_TAIL_LINES = 20;
+
+    private final DockerClient dockerClient;
+    private final AgentProperties agentProperties;
+    private final AgentProperties.DependencyConfig dependencyConfig;
+    private final Path layersDir;
+    private final ExecutorService installExecutor;
+
+    // access-order LinkedHashMap = LRU 순서 (lock 보유 상태에서만 변경)
+    private final Map<String, Layer> layers = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+    // 요청 → 사용 중인 레이어
+    private final Map<String, Layer> assignments = new ConcurrentHashMap<>();
+
+    // 통계
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong installs = new AtomicLong();
+    private final AtomicLong installFailures = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong totalInstallMillis = new AtomicLong();
+
+    public DependencyLayerManager(DockerClient dockerClient, AgentProperties agentProperties) {
+        this.dockerClient = dockerClient;
+        this.agentProperties = agentProperties;
+        this.dependencyConfig = agentProperties.getDependencies();
+        this.layersDir = Paths.get(dependencyConfig.getDirectory());
+
+        AtomicInteger counter = new AtomicInteger();
+        this.installExecutor = Executors.newFixedThreadPool(Math.max(1, dependencyConfig.getInstallThreads()), runnable -> {
+            Thread thread = new Thread(runnable, "deps-install-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 이전 실행에서 설치한 레이어를 인덱스에 등록하고, 설치 도중 남은 임시 디렉터리는 삭제
+     */
+    @PostConstruct
+    public void initialize() throws IOException {
+        if (!dependencyConfig.isEnabled()) {
+            return;
+        }
+        Files.createDirectories(layersDir);
+        try (var paths = Files.list(layersDir)) {
+            for (Path path : paths.toList()) {
+                String name = path.getFileName().toString();
+                if (Files.isDirectory(path) && LAYER_NAME.matcher(name).matches()) {
+                    Layer layer = new Layer(name);
+                    layer.sizeBytes = directorySize(path);
+                    layer.installed = true;
+                    layers.put(name, layer);
+                    totalBytes += layer.sizeBytes;
+                } else {
+                    deleteQuietly(path);
+                }
+            }
+        }
+        log.info("Dependency layers initialized: dir={}, layers={}, bytes={}, maxBytes={}",
+                layersDir, layers.size(), totalBytes, dependencyConfig.getMaxBytes());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        installExecutor.shutdownNow();
+    }
+
+    public boolean isEnabled() {
+        return dependencyConfig.isEnabled();
+    }
+
+    /**
+     * 작업 디렉터리에 requirements.txt가 있으면 해당 레이어를 준비하고 요청에 연결
+     * 설치된 레이어면 완료된 Future, 없으면 설치 스레드에서 설치(이미 설치 중이면 그 설치를 공유)
+     *
+     * @return 레이어가 준비되면 완료되는 Future (설치 실패 시 DependencyInstallException으로 실패)
+     * @throws DependencyInstallException requirements.txt가 잘못된 파일을 참조하는 경우 (재시도 불가)
+     */
+    public CompletableFuture<Void> prepare(String requestId, Path workDir) throws IOException {
+        if (!dependencyConfig.isEnabled()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        Path requirements = workDir.resolve(REQUIREMENTS_FILE);
+        if (!Files.isRegularFile(requirements)) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        Map<String, Path> inputs = collectInputs(workDir);
+        String hash = lockfileHash(requirements, inputs);
+        Layer layer;
+        CompletableFuture<Void> installation;
+        synchronized (this) {
+            layer = layers.computeIfAbsent(hash, Layer::new);
+            layer.leases++;
+            if (layer.installed) {
+                installation = null;
+            } else {
+                if (layer.installation == null) {
+                    layer.installation = CompletableFuture.runAsync(() -> install(layer, inputs), installExecutor);
+                }
+                installation = layer.installation;
+            }
+        }
+
+        if (installation == null) {
+            hits.incrementAndGet();
+            assign(requestId, layer);
+            return CompletableFuture.completedFuture(null);
+        }
+        return installation.handle((ignored, error) -> {
+            if (error != null) {
+                releaseLayer(layer);
+                throw error instanceof CompletionException completion ? completion : new CompletionException(error);
+            }
+            assign(requestId, layer);
+            return null;
+        });
+    }
+
+    private void assign(String requestId, Layer layer) {
+        Layer previous = assignments.put(requestId, layer);
+        if (previous != null) {
+            releaseLayer(previous);
+        }
+    }
+
+    /**
+     * 요청에 연결된 레이어의 exec 환경 변수 (없으면 빈 목록)
+     */
+    public List<String> environment(String requestId) {
+        Layer layer = assignments.get(requestId);
+        if (layer == null) {
+            return List.of();
+        }
+        return List.of("PYTHONPATH=" + dependencyConfig.getContainerPath() + "/" + layer.hash);
+    }
+
+    /**
+     * 실행 종료: 레이어 사용 해제 (이후 LRU 제거 가능)
+     */
+    public void release(String requestId) {
+        Layer layer = assignments.remove(requestId);
+        if (layer != null) {
+            releaseLayer(layer);
+        }
+    }
+
+    /**
+     * Python warm 컨테이너에 추가할 읽기 전용 마운트 (비활성화 시 null)
+     */
+    public Bind containerBind() {
+        if (!dependencyConfig.isEnabled()) {
+            return null;
+        }
+        return new Bind(layersDir.toString(), new Volume(dependencyConfig.getContainerPath()),
+                AccessMode.ro);
+    }
+
+    /**
+     * 설치 스레드: 입력 파일 복사 → pip install → 레이어 디렉터리로 이름 변경
+     * 실패하면 설치 상태를 지워 다음 요청이 다시 시도할 수 있게 한다.
+     */
+    private void install(Layer layer, Map<String, Path> inputs) {
+        long started = System.nanoTime();
+        String suffix = UUID.randomUUID().toString().substring(0, 8);
+        Path staging = layersDir.resolve(layer.hash + "." + suffix + ".part");
+        Path input = layersDir.resolve(layer.hash + "." + suffix + ".input");
+        try {
+            Files.createDirectories(staging);
+            for (Map.Entry<String, Path> file : inputs.entrySet()) {
+                copyInput(file.getValue(), input.resolve(file.getKey()));
+            }
+            runInstall(layer.hash, staging, input);
+            Path target = layersDir.resolve(layer.hash);
+            Files.move(staging, target, StandardCopyOption.ATOMIC_MOVE);
+            layer.sizeBytes = directorySize(target);
+        } catch (IOException | RuntimeException e) {
+            installFailures.incrementAndGet();
+            deleteQuietly(staging);
+            synchronized (this) {
+                layer.installation = null;
+            }
+            throw new CompletionException(e instanceof DependencyInstallException
+                    ? e
+                    : new DependencyInstallException("Failed to install dependency layer " + layer.hash, e));
+        } finally {
+            deleteQuietly(input);
+        }
+
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        installs.incrementAndGet();
+        totalInstallMillis.addAndGet(elapsedMillis);
+        log.info("📦 [DEPS] 의존성 레이어 설치 완료: hash={}, {} bytes in {}ms",
+                layer.hash, layer.sizeBytes, elapsedMillis);
+
+        List<Path> toDelete = new ArrayList<>();
+        synchronized (this) {
+            layer.installed = true;
+            totalBytes += layer.sizeBytes;
+            evictIfNeeded(toDelete);
+        }
+        toDelete.forEach(DependencyLayerManager::deleteQuietly);
+    }
+
+    /**
+     * 일회용 컨테이너에서 pip install --target 실행 (제한 시간 초과 시 강제 종료)
+     * 입력 디렉터리(작업 디렉터리와 같은 구조)를 작업 디렉터리로 하여 상대 경로 참조가 그대로 동작하게 한다.
+     */
+    private void runInstall(String hash, Path staging, Path input) throws IOException {
+        HostConfig hostConfig = HostConfig.newHostConfig()
+                .withBinds(new Bind(staging.toString(), new Volume(INSTALL_MOUNT)),
+                        new Bind(input.toString(), new Volume(INPUT_MOUNT), AccessMode.ro));
+
+        String containerId = dockerClient.createContainerCmd(agentProperties.getDocker().getPythonImage())
+                .withName("nanogrid-deps-" + hash.substring(0, 12) + "-" + System.currentTimeMillis())
+                .withCmd("pip", "install", "--no-cache-dir", "--disable-pip-version-check", "--quiet",
+                        "--target", INSTALL_MOUNT, "-r", INPUT_MOUNT + "/" + REQUIREMENTS_FILE)
+                .withWorkingDir(INPUT_MOUNT)
+                .withHostConfig(hostConfig)
+                .exec()
+                .getId();
+
+        try {
+            dockerClient.startContainerCmd(containerId).exec();
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(dependencyConfig.getInstallTimeoutSeconds());
+            InspectContainerResponse.ContainerState state = dockerClient.inspectContainerCmd(containerId).exec().getState();
+            while (Boolean.TRUE.equals(state.getRunning())) {
+                if (System.nanoTime() > deadline) {
+                    throw new DependencyInstallException("pip install timed out after "
+                            + dependencyConfig.getInstallTimeoutSeconds() + "s for layer " + hash);
+                }
+                TimeUnit.MILLISECONDS.sleep(POLL_INTERVAL_MILLIS);
+                state = dockerClient.inspectContainerCmd(containerId).exec().getState();
+            }
+
+            Long exitCode = state.getExitCodeLong();
+            if (exitCode == null || exitCode != 0) {
+                String logs = tailLogs(containerId);
+                boolean permanent = PERMANENT_PIP_ERRORS.stream().anyMatch(logs::contains);
+                throw new DependencyInstallException("pip install failed (exit " + exitCode + ") for layer "
+                        + hash + ": " + logs, permanent);
+            }
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DependencyInstallException("Interrupted while installing dependency layer " + hash, e);
+        } finally {
+            try {
+                dockerClient.removeContainerCmd(containerId).withForce(true).exec();
+            } catch (Exception e) {
+                log.warn("Failed to remove dependency install container: {}", containerId, e);
+            }
+        }
+    }
+
+    private String tailLogs(String containerId) {
+        StringBuilder output = new StringBuilder();
+        try {
+            dockerClient.logContainerCmd(containerId)
+                    .withStdOut(true)
+                    .withStdErr(true)
+                    .withTail(LOG_TAIL_LINES)
+                    .exec(new ResultCallback.Adapter<Frame>() {
+                        @Override
+                        public void onNext(Frame frame) {
+                            output.append(new String(frame.getPayload(), StandardCharsets.UTF_8));
+                        }
+                    })
+                    .awaitCompletion(10, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            log.debug("Failed to read install logs: {}", containerId, e);
+        }
+        return output.toString().trim();
+    }
+
+    private void releaseLayer(Layer layer) {
+        List<Path> toDelete = new ArrayList<>();
+        synchronized (this) {
+            layer.leases--;
+            if (!layer.installed && layer.leases == 0) {
+                // 설치 실패 - 다음 요청이 다시 시도하도록 인덱스에서 제거
+                layers.remove(layer.hash, layer);
+            }
+            evictIfNeeded(toDelete);
+        }
+        toDelete.forEach(DependencyLayerManager::deleteQuietly);
+    }
+
+    /**
+     * maxBytes를 넘으면 오래 사용하지 않은 레이어부터 제거 (lock 보유 상태에서 호출)
+     */
+    private void evictIfNeeded(List<Path> toDelete) {
+        Iterator<Layer> iterator = layers.values().iterator();
+        while (totalBytes > dependencyConfig.getMaxBytes() && iterator.hasNext()) {
+            Layer layer = iterator.next();
+            if (layer.leases > 0 || !layer.installed) {
+                continue;
+            }
+            iterator.remove();
+            totalBytes -= layer.sizeBytes;
+            toDelete.add(layersDir.resolve(layer.hash));
+            evictions.incrementAndGet();
+            log.info("[DEPS] 의존성 레이어 제거 (LRU): hash={}, {} bytes", layer.hash, layer.sizeBytes);
+        }
+    }
+
+    /**
+     * 설치에 필요한 파일 (작업 디렉터리 기준 상대 경로 → 원본 경로, 경로순 정렬)
+     * requirements.txt에서 시작해 -r/-c로 포함한 파일을 따라가며 로컬 경로 참조를 모은다.
+     *
+     * @throws DependencyInstallException 작업 디렉터리 밖이나 없는 파일을 참조하는 경우 (재시도 불가)
+     */
+    private Map<String, Path> collectInputs(Path workDir) throws IOException {
+        Path root = workDir.toAbsolutePath().normalize();
+        Map<String, Path> inputs = new TreeMap<>();
+        List<Path> pending = new ArrayList<>(List.of(root.resolve(REQUIREMENTS_FILE)));
+        while (!pending.isEmpty()) {
+            Path file = pending.remove(pending.size() - 1);
+            String relative = root.relativize(file).toString();
+            if (inputs.putIfAbsent(relative, file) != null) {
+                continue;
+            }
+            for (String line : requirementLines(file)) {
+                String[] tokens = line.split("\\s+", 2);
+                String option = tokens[0];
+                String value = tokens.length > 1 ? tokens[1].trim() : "";
+                int equals = option.indexOf('=');
+                if (option.startsWith("--") && equals > 0) {
+                    value = option.substring(equals + 1);
+                    option = option.substring(0, equals);
+                }
+
+                if (FILE_OPTIONS.contains(option)) {
+                    // -r/-c 경로는 참조한 파일 위치 기준
+                    pending.add(localInput(root, file.getParent(), value, line));
+                } else if (PATH_OPTIONS.contains(option)) {
+                    if (isLocalPath(value)) {
+                        addLocalInput(inputs, root, localInput(root, root, value, line));
+                    }
+                } else if (!option.startsWith("-") && isLocalPath(option)) {
+                    // wheel/sdist/디렉터리 경로는 pip 실행 위치(작업 디렉터리) 기준
+                    addLocalInput(inputs, root, localInput(root, root, option, line));
+                }
+            }
+        }
+        return inputs;
+    }
+
+    private static boolean isLocalPath(String value) {
+        if (value.isEmpty() || value.contains("://") || value.startsWith("git+")) {
+            return false;
+        }
+        return value.startsWith(".") || value.startsWith("/") || value.startsWith("file:")
+                || value.endsWith(".whl") || value.endsWith(".tar.gz") || value.endsWith(".zip");
+    }
+
+    private static Path localInput(Path root, Path base, String value, String line) throws DependencyInstallException {
+        if (value.isEmpty() || value.startsWith("/") || value.startsWith("file:")) {
+            throw new DependencyInstallException("Unsupported requirement (absolute path): " + line, true);
+        }
+        Path path = base.resolve(value).normalize();
+        if (!path.startsWith(root)) {
+            throw new DependencyInstallException("Requirement refers outside the code bundle: " + line, true);
+        }
+        if (path.equals(root)) {
+            throw new DependencyInstallException("Installing the code bundle itself is not supported: " + line, true);
+        }
+        if (!Files.exists(path)) {
+            throw new DependencyInstallException("Requirement refers to a missing file: " + line, true);
+        }
+        return path;
+    }
+
+    private static void addLocalInput(Map<String, Path> inputs, Path root, Path path) {
+        inputs.putIfAbsent(root.relativize(path).toString(), path);
+    }
+
+    /**
+     * 주석/빈 줄을 제거한 requirements 파일 줄
+     */
+    private static List<String> requirementLines(Path file) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            throw new DependencyInstallException("Requirement file not found: " + file.getFileName(), true);
+        }
+        return Files.readAllLines(file, StandardCharsets.UTF_8).stream()
+                .map(line -> line.replaceFirst("#.*$", "").trim())
+                .filter(line -> !line.isEmpty())
+                .toList();
+    }
+
+    /**
+     * 레이어 해시 (requirements.txt의 정렬한 내용 + 참조 파일 내용 + Python 이미지)
+     */
+    private String lockfileHash(Path requirements, Map<String, Path> inputs) throws IOException {
+        List<String> lines = requirementLines(requirements).stream().sorted().toList();
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(agentProperties.getDocker().getPythonImage().getBytes(StandardCharsets.UTF_8));
+            for (String line : lines) {
+                digest.update((byte) '\n');
+                digest.update(line.getBytes(StandardCharsets.UTF_8));
+            }
+            for (Map.Entry<String, Path> input : inputs.entrySet()) {
+                if (input.getKey().equals(REQUIREMENTS_FILE)) {
+                    continue;
+                }
+                digestInput(digest, input.getKey(), input.getValue());
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static void digestInput(MessageDigest digest, String relative, Path path) throws IOException {
+        List<Path> files;
+        try (var paths = Files.walk(path)) {
+            files = paths.filter(Files::isRegularFile).sorted().toList();
+        }
+        byte[] buffer = new byte[64 * 1024];
+        for (Path file : files) {
+            digest.update((byte) 0);
+            digest.update((relative + "/" + path.relativize(file)).getBytes(StandardCharsets.UTF_8));
+            try (InputStream in = Files.newInputStream(file)) {
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    digest.update(buffer, 0, read);
+                }
+            }
+        }
+    }
+
+    /**
+     * 입력 파일 또는 디렉터리를 설치 입력 디렉터리로 복사
+     */
+    private static void copyInput(Path source, Path target) throws IOException {
+        try (var paths = Files.walk(source)) {
+            for (Path path : paths.toList()) {
+                Path destination = target.resolve(source.relativize(path).toString());
+                if (Files.isDirectory(path)) {
+                    Files.createDirectories(destination);
+                } else {
+                    Files.createDirectories(destination.getParent());
+                    Files.copy(path, destination, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        }
+    }
+
+    private static long directorySize(Path dir) throws IOException {
+        long[] bytes = {0};
+        Files.walkFileTree(dir, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                bytes[0] += attrs.size();
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return bytes[0];
+    }
+
+    /**
+     * 파일 또는 디렉터리(재귀) 삭제, 실패는 로그만 남김
+     */
+    private static void deleteQuietly(Path path) {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (var paths = Files.walk(path)) {
+            paths.sorted((p1, p2) -> -p1.compareTo(p2))  // 역순으로 정렬 (파일 먼저, 디렉터리 나중)
+                    .forEach(p -> {
+                        try {
+                            Files.delete(p);
+                        } catch (IOException e) {
+                            log.warn("Failed to delete dependency layer file: {}", p, e);
+                        }
+                    });
+        } catch (IOException e) {
+            log.warn("Failed to delete dependency layer: {}", path, e);
+        }
+    }
+
+    @Override
+    public String statsName() {
+        return "dependencyLayers";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", dependencyConfig.isEnabled());
+        synchronized (this) {
+            stats.put("layers", layers.size());
+            stats.put("bytes", totalBytes);
+        }
+        stats.put("maxBytes", dependencyConfig.getMaxBytes());
+        stats.put("activeRequests", assignments.size());
+        stats.put("hits", hits.get());
+        stats.put("installs", installs.get());
+        stats.put("installFailures", installFailures.get());
+        stats.put("evictions", evictions.get());
+        long installCount = installs.get();
+        stats.put("avgInstallMillis", installCount == 0 ? 0 : totalInstallMillis.get() / installCount);
+        return stats;
+    }
+
+    /**
+     * 의존성 레이어 하나 (설치 여부와 크기는 설치 완료 후 고정)
+     */
+    private static final class Layer {
+
+        private final String hash;
+        private volatile boolean installed;
+        private long sizeBytes;
+        private int leases;
+        // 진행 중인 설치 (실패하면 null로 되돌려 다음 요청이 다시 시도)
+        private CompletableFuture<Void> installation;
+
+        private Layer(String hash) {
+            this.hash = hash;
+        }
+    }
+}
@@ -2,22 +2,24 @@ package org.brown.nanogridplus.docker;
 
 import com.github.dockerjava.api.DockerClient;
 import com.github.dockerjava.api.command.ExecCreateCmdResponse;
-import com.github.dockerjava.core.command.ExecStartResultCallback;
+import com.github.dockerjava.api.async.ResultCallback;
+import com.github.dockerjava.api.model.Frame;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.brown.nanogridplus.capture.OutputCapture;
+import org.brown.nanogridplus.capture.OutputCaptureFactory;
+import org.brown.nanogridplus.capture.OutputSink;
 import org.brown.nanogridplus.config.AgentProperties;
 import org.brown.nanogridplus.metrics.AutoTunerService;
 import org.brown.nanogridplus.metrics.CloudWatchMetricsPublisher;
 import org.brown.nanogridplus.metrics.ResourceMonitor;
 import org.brown.nanogridplus.model.ExecutionResult;
 import org.brown.nanogridplus.model.TaskMessage;
-import org.brown.nanogridplus.s3.OutputFileUploader;
+import org.brown.nanogridplus.workspace.WorkspaceAllocator;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
@@ -29,6 +31,11 @@ import java.util.concurrent.TimeUnit;
  * - docker exec로 코드 실행
  * - Pause/Unpause로 Cold Start 제거
  * - Auto-Tuner 통합 (메모리 측정 + CloudWatch 전송 + 최적화 팁)
+ * - 작업별 제한 시간 (timeoutMs, 없으면 docker.defaultTimeoutMs): 초과 시 프로세스 트리 종료,
+ *   정리가 확인되지 않은 컨테이너는 풀에 반환하지 않고 폐기
+ * - Python fork server 사용 시 docker exec 대신 Unix 소켓으로 실행 (연결 실패 시 docker exec)
+ * - C++ 컴파일 결과 캐시 (소스 트리 해시를 wrapper에 전달, 실행 후 hit/miss 집계)
+ * - 같은 함수(functionId + 코드 버전)를 마지막으로 실행한 컨테이너 우선 사용
  */
 @Slf4j
 @Service
@@ -42,7 +49,14 @@ public class DockerEngineService implements DockerService {
     private final ResourceMonitor resourceMonitor;
     private final CloudWatchMetricsPublisher metricsPublisher;
     private final AutoTunerService autoTunerService;
-    private final OutputFileUploader outputFileUploader;
+    private final WorkspaceAllocator workspaceAllocator;
+    private final DependencyLayerManager dependencyLayerManager;
+    private final OutputCaptureFactory outputCaptureFactory;
+    private final ExecTerminator execTerminator;
+    private final ForkServerManager forkServerManager;
+    private final BuildCacheManager buildCacheManager;
+
+    private static final String PYTHON_ENTRY = "main.py";
 
     @Override
     public ExecutionResult runTask(TaskMessage taskMessage, Path workDir) {
@@ -55,30 +69,33 @@ public class DockerEngineService implements DockerService {
         // RuntimeType 결정
         WarmPoolManager.RuntimeType runtimeType = resolveRuntimeType(taskMessage);
         String containerId = null;
+        boolean reusable = true;
         long startTime = System.currentTimeMillis();
 
         try {
             // 1. Warm Pool에서 컨테이너 획득 (unpause 완료)
-            containerId = warmPoolManager.acquireContainer(runtimeType);
+            containerId = warmPoolManager.acquireContainer(runtimeType, affinityKey(taskMessage));
             log.info("Acquired container: {} from Warm Pool for request: {}", containerId, requestId);
 
-            // 2. Output 디렉터리 생성 (호스트 측)
-            String outputHostPath = createOutputDirectory(requestId);
-            log.debug("Created output directory: {}", outputHostPath);
-
-            // 3. 컨테이너 내부 작업 디렉터리 경로 설정
-            String containerWorkDir = agentProperties.getDocker().getWorkDirRoot() + "/" + requestId;
+            // 2. 컨테이너 내부 작업 디렉터리 경로 설정 (디스크 또는 tmpfs 마운트)
+            String containerWorkDir = workspaceAllocator.containerWorkDir(workDir);
             log.debug("Container work dir: {}", containerWorkDir);
 
-            // 4. 런타임별 실행 커맨드 구성
-            List<String> cmd = buildCommandForRuntime(taskMessage, containerWorkDir);
+            // 3. 런타임별 실행 커맨드 구성 (제한 시간 초과 시 종료할 수 있도록 PID 기록)
+            List<String> cmd = execTerminator.wrap(buildCommandForRuntime(taskMessage, containerWorkDir));
+            long timeoutMs = resolveTimeoutMs(taskMessage);
             log.info("Executing command in container {}: {}", containerId, cmd);
 
             // TODO: Auto-Tuner hook - 실행 전 메트릭 수집 시작
 
-            // 4. docker exec로 명령 실행
-            // 4. docker exec로 명령 실행
-            ExecResult execResult = executeInContainer(containerId, containerWorkDir, cmd);
+            // 4. 명령 실행 (fork server가 있으면 소켓으로, 없으면 docker exec)
+            List<String> env = runtimeType == WarmPoolManager.RuntimeType.CPP
+                    ? buildCacheManager.prepare(requestId, workDir)
+                    : dependencyLayerManager.environment(requestId);
+            ExecResult execResult = forkServerManager.isAvailable(containerId)
+                    ? invokeForkServer(requestId, containerId, containerWorkDir, cmd, env, timeoutMs)
+                    : executeInContainer(requestId, containerId, containerWorkDir, cmd, env, timeoutMs);
+            reusable = execResult.reusable;
 
             long endTime = System.currentTimeMillis();
             long durationMillis = endTime - startTime;
@@ -105,33 +122,31 @@ public class DockerEngineService implements DockerService {
             log.info("Container {} exec finished with exitCode: {} in {}ms",
                     containerId, execResult.exitCode, durationMillis);
 
-            // 6. Output Binding: 생성된 파일을 S3에 업로드
-            List<String> outputFiles = List.of();
-            try {
-                log.debug("Uploading output files for request: {}", requestId);
-                outputFiles = outputFileUploader.uploadOutputFiles(requestId, containerId);
-                if (!outputFiles.isEmpty()) {
-                    log.info("📦 [OUTPUT] Uploaded {} file(s) for requestId={}", outputFiles.size(), requestId);
-                }
-            } catch (Exception e) {
-                log.warn("Failed to upload output files for request: {}, continuing", requestId, e);
-            }
-
-            // 7. ExecutionResult 생성
+            // 6. ExecutionResult 생성 (Output 파일 업로드는 TaskPipeline의 harvest 단계에서 수행)
             return ExecutionResult.builder()
                     .requestId(requestId)
                     .functionId(functionId)
                     .exitCode(execResult.exitCode)
                     .stdout(execResult.stdout)
                     .stderr(execResult.stderr)
+                    .stdoutTruncatedBytes(execResult.stdoutTruncatedBytes)
+                    .stderrTruncatedBytes(execResult.stderrTruncatedBytes)
                     .durationMillis(durationMillis)
-                    .success(execResult.exitCode == 0)
+                    .success(execResult.exitCode == 0 && !execResult.timedOut)
+                    .timedOut(execResult.timedOut)
                     .peakMemoryBytes(peakMemoryBytes)
                     .optimizationTip(optimizationTip)
-                    .outputFiles(outputFiles)
+                    .outputFiles(List.of())
                     .build();
 
         } catch (Exception e) {
+            if (containerId == null) {
+                // 컨테이너 획득(unpause/생성) 실패는 사용자 코드 실패가 아닌 인프라 오류
+                // → 결과를 보내지 않고 호출자가 재시도하도록 예외 전파
+                throw new RuntimeException(String.format(
+                        "Failed to acquire container for requestId=%s, runtime=%s", requestId, runtime), e);
+            }
+
             long endTime = System.currentTimeMillis();
             long durationMillis = endTime - startTime;
 
@@ -156,11 +171,19 @@ public class DockerEngineService implements DockerService {
                     .build();
 
         } finally {
-            // 7. 컨테이너를 Warm Pool에 반환
+            if (runtimeType == WarmPoolManager.RuntimeType.CPP) {
+                buildCacheManager.finish(requestId);
+            }
+
+            // 7. 컨테이너를 Warm Pool에 반환 (정리되지 않았으면 폐기)
             if (containerId != null) {
                 try {
-                    warmPoolManager.releaseContainer(runtimeType, containerId);
-                    log.debug("Released container: {} back to Warm Pool", containerId);
+                    if (reusable) {
+                        warmPoolManager.releaseContainer(runtimeType, containerId);
+                        log.debug("Released container: {} back to Warm Pool", containerId);
+                    } else {
+                        warmPoolManager.discardContainer(runtimeType, containerId);
+                    }
                 } catch (Exception ex) {
                     log.error("Failed to release container: {}", containerId, ex);
                 }
@@ -172,16 +195,28 @@ public class DockerEngineService implements DockerService {
      * TaskMessage의 runtime을 WarmPoolManager.RuntimeType으로 변환
      */
     private WarmPoolManager.RuntimeType resolveRuntimeType(TaskMessage taskMessage) {
-        String runtime = taskMessage.getRuntime();
-        if (runtime == null) {
-            throw new IllegalArgumentException("Runtime is null");
+        return WarmPoolManager.RuntimeType.fromRuntime(taskMessage.getRuntime());
+    }
+
+    /**
+     * 컨테이너 affinity 기준: functionId + 코드 버전(s3Key), functionId가 없으면 선호 없음
+     */
+    private String affinityKey(TaskMessage taskMessage) {
+        if (taskMessage.getFunctionId() == null) {
+            return null;
         }
+        return taskMessage.getS3Key() != null
+                ? taskMessage.getFunctionId() + "@" + taskMessage.getS3Key()
+                : taskMessage.getFunctionId();
+    }
 
-        return switch (runtime.toLowerCase()) {
-            case "python" -> WarmPoolManager.RuntimeType.PYTHON;
-            case "cpp", "c++" -> WarmPoolManager.RuntimeType.CPP;
-            default -> throw new IllegalArgumentException("Unsupported runtime: " + runtime);
-        };
+    /**
+     * 작업 제한 시간: TaskMessage.timeoutMs, 없으면 docker.defaultTimeoutMs
+     */
+    private long resolveTimeoutMs(TaskMessage taskMessage) {
+        return taskMessage.getTimeoutMs() > 0
+                ? taskMessage.getTimeoutMs()
+                : agentProperties.getDocker().getDefaultTimeoutMs();
     }
 
     /**
@@ -191,21 +226,68 @@ public class DockerEngineService implements DockerService {
         String runtime = taskMessage.getRuntime().toLowerCase();
 
         return switch (runtime) {
-            case "python" -> List.of("python", "main.py");
-            case "cpp", "c++" -> List.of("/bin/bash", "run.sh");
-            default -> throw new IllegalArgumentException("Unsupported runtime: " + runtime);
+            case "python" -> List.of("python", PYTHON_ENTRY);
+            case "cpp", "c++" -> buildCacheManager.runCommand("run.sh");
+            default -> throw new UnsupportedRuntimeException("Unsupported runtime: " + runtime);
         };
     }
 
+    /**
+     * fork server로 실행 (연결하지 못하면 docker exec로 대신 실행)
+     */
+    private ExecResult invokeForkServer(String requestId, String containerId, String workDir,
+                                       List<String> cmd, List<String> env, long timeoutMs) {
+        try (OutputCapture capture = outputCaptureFactory.open(requestId)) {
+            ForkServerManager.Invocation invocation = forkServerManager.invoke(
+                    requestId, containerId, workDir, PYTHON_ENTRY, env, timeoutMs, capture);
+
+            if (invocation.timedOut()) {
+                // 제한 시간 초과: handler부터 프로세스 트리 종료 (fork server는 유지)
+                boolean clean = execTerminator.terminate(containerId);
+                log.warn("[TIMEOUT] 제한 시간 {}ms 초과로 실행 종료: requestId={}, container={}, clean={}",
+                        timeoutMs, requestId, containerId, clean);
+                String stderr = capture.text(OutputSink.Stream.STDERR)
+                        + "\nExecution timed out after " + timeoutMs + "ms";
+                return new ExecResult(-1, capture.text(OutputSink.Stream.STDOUT), stderr,
+                        capture.truncatedBytes(OutputSink.Stream.STDOUT),
+                        capture.truncatedBytes(OutputSink.Stream.STDERR), true, clean);
+            }
+
+            log.debug("Fork server invocation finished with exit code: {}", invocation.exitCode());
+            return new ExecResult(
+                    invocation.exitCode(),
+                    capture.text(OutputSink.Stream.STDOUT),
+                    capture.text(OutputSink.Stream.STDERR),
+                    capture.truncatedBytes(OutputSink.Stream.STDOUT),
+                    capture.truncatedBytes(OutputSink.Stream.STDERR),
+                    false,
+                    true
+            );
+
+        } catch (ForkServerUnavailableException e) {
+            log.warn("[SKIP][FORKSERVER] fork server 연결 실패, docker exec로 실행: container={}", containerId, e);
+        } catch (Exception e) {
+            log.error("Fork server invocation failed in container: {}", containerId, e);
+            return new ExecResult(-1, "", "Execution failed: " + e.getMessage(),
+                    execTerminator.terminate(containerId));
+        }
+        return executeInContainer(requestId, containerId, workDir, cmd, env, timeoutMs);
+    }
+
     /**
      * 컨테이너 내부에서 명령 실행 (docker exec)
      */
-    private ExecResult executeInContainer(String containerId, String workDir, List<String> cmd) {
-        try {
+    private ExecResult executeInContainer(String requestId, String containerId, String workDir,
+                                          List<String> cmd, List<String> env, long timeoutMs) {
+        boolean started = false;
+        ResultCallback.Adapter<Frame> callback = null;
+        try (OutputCapture capture = outputCaptureFactory.open(requestId)) {
             // Exec 생성
             ExecCreateCmdResponse execCreateResponse = dockerClient.execCreateCmd(containerId)
                     .withCmd(cmd.toArray(new String[0]))
+                    .withUser(execUser())
                     .withWorkingDir(workDir)
+                    .withEnv(env)
                     .withAttachStdout(true)
                     .withAttachStderr(true)
                     .exec();
@@ -213,75 +295,100 @@ public class DockerEngineService implements DockerService {
             String execId = execCreateResponse.getId();
             log.debug("Created exec: {} in container: {}", execId, containerId);
 
-            // Stdout/Stderr 수집용
-            StringBuilder stdoutBuilder = new StringBuilder();
-            StringBuilder stderrBuilder = new StringBuilder();
-
-            // Exec 실행 및 로그 수집
-            ExecStartResultCallback callback = new ExecStartResultCallback() {
+            // Exec 실행 및 출력 수집 (프레임 바이트를 그대로 버퍼에 복사, 디코딩은 마지막에 한 번)
+            callback = new ResultCallback.Adapter<>() {
                 @Override
-                public void onNext(com.github.dockerjava.api.model.Frame frame) {
-                    String log = new String(frame.getPayload()).trim();
-
+                public void onNext(Frame frame) {
+                    byte[] payload = frame.getPayload();
+                    if (payload == null) {
+                        return;
+                    }
                     switch (frame.getStreamType()) {
-                        case STDOUT, RAW -> stdoutBuilder.append(log).append("\n");
-                        case STDERR -> stderrBuilder.append(log).append("\n");
+                        case STDOUT, RAW -> capture.append(OutputSink.Stream.STDOUT, payload, 0, payload.length);
+                        case STDERR -> capture.append(OutputSink.Stream.STDERR, payload, 0, payload.length);
+                        default -> { }
                     }
                 }
             };
 
-            dockerClient.execStartCmd(execId)
-                    .exec(callback)
-                    .awaitCompletion(60, TimeUnit.SECONDS);
+            dockerClient.execStartCmd(execId).exec(callback);
+            started = true;
+            boolean completed = callback.awaitCompletion(timeoutMs, TimeUnit.MILLISECONDS);
+
+            if (!completed) {
+                // 제한 시간 초과: 프로세스 트리 종료 후 컨테이너 정리 확인
+                boolean clean = execTerminator.terminate(containerId);
+                callback.close();
+                log.warn("[TIMEOUT] 제한 시간 {}ms 초과로 실행 종료: requestId={}, container={}, clean={}",
+                        timeoutMs, requestId, containerId, clean);
+                String stderr = capture.text(OutputSink.Stream.STDERR)
+                        + "\nExecution timed out after " + timeoutMs + "ms";
+                return new ExecResult(-1, capture.text(OutputSink.Stream.STDOUT), stderr,
+                        capture.truncatedBytes(OutputSink.Stream.STDOUT),
+                        capture.truncatedBytes(OutputSink.Stream.STDERR), true, clean);
+            }
 
             // Exit code 가져오기
-            Integer exitCode = dockerClient.inspectExecCmd(execId).exec().getExitCodeLong().intValue();
+            Long exitCodeLong = dockerClient.inspectExecCmd(execId).exec().getExitCodeLong();
+            Integer exitCode = exitCodeLong != null ? exitCodeLong.intValue() : null;
 
             log.debug("Exec {} finished with exit code: {}", execId, exitCode);
 
+            long stdoutTruncated = capture.truncatedBytes(OutputSink.Stream.STDOUT);
+            long stderrTruncated = capture.truncatedBytes(OutputSink.Stream.STDERR);
+            if (stdoutTruncated > 0 || stderrTruncated > 0) {
+                log.info("[OUTPUT] 출력 한도 초과로 중간 생략: stdout={} bytes, stderr={} bytes",
+                        stdoutTruncated, stderrTruncated);
+            }
+
             return new ExecResult(
                     exitCode != null ? exitCode : -1,
-                    stdoutBuilder.toString(),
-                    stderrBuilder.toString()
+                    capture.text(OutputSink.Stream.STDOUT),
+                    capture.text(OutputSink.Stream.STDERR),
+                    stdoutTruncated,
+                    stderrTruncated,
+                    false,
+                    true
             );
 
         } catch (InterruptedException e) {
             log.error("Exec execution interrupted in container: {}", containerId, e);
             Thread.currentThread().interrupt();
-            return new ExecResult(-1, "", "Execution interrupted");
+            // 실행 중이던 프로세스가 남아 있을 수 있으므로 컨테이너는 재사용하지 않음
+            return new ExecResult(-1, "", "Execution interrupted", !started);
         } catch (Exception e) {
             log.error("Failed to execute in container: {}", containerId, e);
-            return new ExecResult(-1, "", "Execution failed: " + e.getMessage());
+            return new ExecResult(-1, "", "Execution failed: " + e.getMessage(),
+                    !started || execTerminator.terminate(containerId));
+        } finally {
+            if (callback != null) {
+                try {
+                    callback.close();
+                } catch (Exception e) {
+                    log.debug("Failed to close exec callback", e);
+                }
+            }
         }
     }
 
     /**
      * Exec 실행 결과를 담는 내부 레코드
      */
-    private record ExecResult(int exitCode, String stdout, String stderr) {
+    private record ExecResult(int exitCode, String stdout, String stderr,
+                              long stdoutTruncatedBytes, long stderrTruncatedBytes,
+                              boolean timedOut, boolean reusable) {
+
+        private ExecResult(int exitCode, String stdout, String stderr, boolean reusable) {
+            this(exitCode, stdout, stderr, 0, 0, false, reusable);
+        }
     }
 
     /**
-     * Output 디렉터리 생성 (호스트 측)
-     *
-     * @param requestId 요청 ID
-     * @return 생성된 디렉터리 절대 경로
+     * 사용자 코드 실행 계정 (비어 있으면 컨테이너 기본 사용자)
      */
-    private String createOutputDirectory(String requestId) {
-        try {
-            String outputBasePath = agentProperties.getOutput().getBaseDir();
-            Path outputDir = Paths.get(outputBasePath, requestId);
-
-            if (!Files.exists(outputDir)) {
-                Files.createDirectories(outputDir);
-                log.debug("Created output directory: {}", outputDir);
-            }
-
-            return outputDir.toAbsolutePath().toString();
-        } catch (Exception e) {
-            log.error("Failed to create output directory for requestId: {}", requestId, e);
-            throw new RuntimeException("Failed to create output directory", e);
-        }
+    private String execUser() {
+        String user = agentProperties.getDocker().getExecUser();
+        return user == null || user.isBlank() ? null : user;
     }
 }
 
@@ -9,14 +9,21 @@ import com.github.dockerjava.api.model.Volume;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.brown.nanogridplus.config.AgentProperties;
+import org.brown.nanogridplus.metrics.StatsProvider;
+import org.brown.nanogridplus.s3.CodeArtifactCache;
+import org.brown.nanogridplus.workspace.WorkspaceAllocator;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Docker Warm Pool Manager 구현
@@ -28,6 +35,8 @@ import java.util.concurrent.ConcurrentLinkedDeque;
  * - Python, C++ 런타임별 컨테이너 Pool 관리
  * - acquireContainer: Pool에서 꺼내서 Unpause
  * - releaseContainer: 작업 완료 후 Pause하고 Pool에 반환
+ * - 함수 affinity: 컨테이너마다 마지막으로 실행한 함수(functionId + 코드 버전)를 기억하고
+ *   같은 함수 요청에 우선 할당 → 없으면 미할당(generic) 컨테이너 → 없으면 가장 오래 쉰 컨테이너 재할당 (LRU)
  *
  * 향후 확장:
  * - Auto-Tuner 연동 (5단계)
@@ -37,13 +46,27 @@ import java.util.concurrent.ConcurrentLinkedDeque;
 @Service
 @RequiredArgsConstructor
 @ConditionalOnProperty(name = "agent.warmPool.enabled", havingValue = "true", matchIfMissing = true)
-public class DockerWarmPoolManager implements WarmPoolManager {
+public class DockerWarmPoolManager implements WarmPoolManager, StatsProvider {
 
     private final DockerClient dockerClient;
     private final AgentProperties agentProperties;
-
-    // 런타임별 컨테이너 ID Pool (동시성 안전)
-    private final Map<RuntimeType, ConcurrentLinkedDeque<String>> pool = new ConcurrentHashMap<>();
+    private final WorkspaceAllocator workspaceAllocator;
+    private final DependencyLayerManager dependencyLayerManager;
+    private final ForkServerManager forkServerManager;
+    private final BuildCacheManager buildCacheManager;
+    private final CodeArtifactCache codeArtifactCache;
+
+    // 런타임별 대기 중인 컨테이너 Pool
+    private final Map<RuntimeType, RuntimePool> pool = new ConcurrentHashMap<>();
+    // 실행 중인 컨테이너 → 할당된 함수 (반환 시 affinity로 기록)
+    private final Map<String, String> assignments = new ConcurrentHashMap<>();
+
+    // 통계
+    private final AtomicLong affinityRequests = new AtomicLong();
+    private final AtomicLong affinityHits = new AtomicLong();
+    private final AtomicLong genericAssignments = new AtomicLong();
+    private final AtomicLong reassignments = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
 
     /**
      * 애플리케이션 시작 시 Warm Pool 초기화
@@ -57,10 +80,10 @@ public class DockerWarmPoolManager implements WarmPoolManager {
         // Python Pool 초기화
         int pythonSize = agentProperties.getWarmPool().getPythonSize();
         log.info("Creating {} Python containers for Warm Pool", pythonSize);
-        ConcurrentLinkedDeque<String> pythonPool = new ConcurrentLinkedDeque<>();
+        RuntimePool pythonPool = new RuntimePool();
         for (int i = 0; i < pythonSize; i++) {
             String containerId = createAndPauseContainer(RuntimeType.PYTHON);
-            pythonPool.add(containerId);
+            pythonPool.offer(containerId, null);
             log.info("  [{}] Python container created: {}", i + 1, containerId);
         }
         pool.put(RuntimeType.PYTHON, pythonPool);
@@ -68,10 +91,10 @@ public class DockerWarmPoolManager implements WarmPoolManager {
         // C++ Pool 초기화
         int cppSize = agentProperties.getWarmPool().getCppSize();
         log.info("Creating {} C++ containers for Warm Pool", cppSize);
-        ConcurrentLinkedDeque<String> cppPool = new ConcurrentLinkedDeque<>();
+        RuntimePool cppPool = new RuntimePool();
         for (int i = 0; i < cppSize; i++) {
             String containerId = createAndPauseContainer(RuntimeType.CPP);
-            cppPool.add(containerId);
+            cppPool.offer(containerId, null);
             log.info("  [{}] C++ container created: {}", i + 1, containerId);
         }
         pool.put(RuntimeType.CPP, cppPool);
@@ -97,8 +120,34 @@ public class DockerWarmPoolManager implements WarmPoolManager {
         Volume volume = new Volume(containerPath);
         Bind bind = new Bind(hostPath, volume);
 
+        List<Bind> binds = new ArrayList<>();
+        binds.add(bind);
+
+        // tmpfs 작업 디렉터리: {tmpfs.directory} → {tmpfs.containerPath}
+        if (workspaceAllocator.isTmpfsEnabled()) {
+            AgentProperties.TmpfsConfig tmpfs = agentProperties.getWorkspace().getTmpfs();
+            binds.add(new Bind(tmpfs.getDirectory(), new Volume(tmpfs.getContainerPath())));
+        }
+
+        // 공유 코드 트리: 호스트와 같은 경로로 읽기 전용 마운트 (작업 디렉터리의 심볼릭 링크 대상)
+        Bind codeTreeBind = codeArtifactCache.containerBind();
+        if (codeTreeBind != null) {
+            binds.add(codeTreeBind);
+        }
+
+        // Python 의존성 레이어: 읽기 전용 마운트, exec 시 PYTHONPATH로 선택
+        Bind dependencyBind = runtimeType == RuntimeType.PYTHON ? dependencyLayerManager.containerBind() : null;
+        if (dependencyBind != null) {
+            binds.add(dependencyBind);
+        }
+
+        // C++ 컴파일 결과 캐시: bin(wrapper)은 읽기 전용, objects/log만 쓰기 가능
+        if (runtimeType == RuntimeType.CPP) {
+            binds.addAll(buildCacheManager.containerBinds());
+        }
+
         HostConfig hostConfig = HostConfig.newHostConfig()
-                .withBinds(bind);
+                .withBinds(binds);
 
         // 컨테이너 생성 (sleep으로 유지)
         CreateContainerResponse container = dockerClient.createContainerCmd(imageName)
@@ -115,6 +164,11 @@ public class DockerWarmPoolManager implements WarmPoolManager {
         dockerClient.startContainerCmd(containerId).exec();
         log.debug("Started container: {}", containerId);
 
+        // Python fork server는 pause 전에 띄워 두고 함께 멈춤 (unpause 시 바로 요청 수신)
+        if (runtimeType == RuntimeType.PYTHON) {
+            forkServerManager.start(containerId);
+        }
+
         // 컨테이너 Pause
         dockerClient.pauseContainerCmd(containerId).exec();
         log.debug("Paused container: {}", containerId);
@@ -124,30 +178,34 @@ public class DockerWarmPoolManager implements WarmPoolManager {
 
     /**
      * Pool에서 컨테이너 획득 (Unpause 포함)
+     * 같은 함수를 마지막으로 실행한 컨테이너 → 미할당 컨테이너 → 가장 오래 쉰 컨테이너 순으로 선택
      */
     @Override
-    public String acquireContainer(RuntimeType runtimeType) {
-        log.debug("Acquiring container for runtime: {}", runtimeType);
+    public String acquireContainer(RuntimeType runtimeType, String affinityKey) {
+        log.debug("Acquiring container for runtime: {}, affinity: {}", runtimeType, affinityKey);
 
-        ConcurrentLinkedDeque<String> runtimePool = pool.get(runtimeType);
+        RuntimePool runtimePool = pool.get(runtimeType);
         if (runtimePool == null) {
             throw new IllegalStateException("Pool not initialized for runtime: " + runtimeType);
         }
 
         // Pool에서 컨테이너 가져오기
-        String containerId = runtimePool.poll();
+        Selection selection = runtimePool.take(affinityKey);
+        String containerId = selection != null ? selection.containerId : null;
+        recordSelection(affinityKey, selection);
 
         // Pool이 비어있으면 새로 생성
         if (containerId == null) {
             log.warn("Pool is empty for runtime: {}, creating new container", runtimeType);
             containerId = createAndPauseContainer(runtimeType);
+        } else if (selection.previousAffinity != null && !selection.previousAffinity.equals(affinityKey)) {
+            log.debug("Reassigning container {} from {} to {}", containerId, selection.previousAffinity, affinityKey);
         }
 
         // Unpause
         try {
             dockerClient.unpauseContainerCmd(containerId).exec();
             log.info("Acquired and unpaused container: {} for runtime: {}", containerId, runtimeType);
-            return containerId;
         } catch (Exception e) {
             log.error("Failed to unpause container: {}, creating new one", containerId, e);
             // 실패한 컨테이너 정리
@@ -155,7 +213,26 @@ public class DockerWarmPoolManager implements WarmPoolManager {
             // 새로 생성해서 반환
             containerId = createAndPauseContainer(runtimeType);
             dockerClient.unpauseContainerCmd(containerId).exec();
-            return containerId;
+        }
+
+        if (affinityKey != null) {
+            assignments.put(containerId, affinityKey);
+        }
+        return containerId;
+    }
+
+    private void recordSelection(String affinityKey, Selection selection) {
+        if (affinityKey != null) {
+            affinityRequests.incrementAndGet();
+        }
+        if (selection == null) {
+            created.incrementAndGet();
+        } else if (affinityKey != null && affinityKey.equals(selection.previousAffinity)) {
+            affinityHits.incrementAndGet();
+        } else if (selection.previousAffinity == null) {
+            genericAssignments.incrementAndGet();
+        } else {
+            reassignments.incrementAndGet();
         }
     }
 
@@ -165,6 +242,7 @@ public class DockerWarmPoolManager implements WarmPoolManager {
     @Override
     public void releaseContainer(RuntimeType runtimeType, String containerId) {
         log.debug("Releasing container: {} for runtime: {}", containerId, runtimeType);
+        String affinityKey = assignments.remove(containerId);
 
         try {
             // 컨테이너 상태 확인
@@ -181,10 +259,10 @@ public class DockerWarmPoolManager implements WarmPoolManager {
             dockerClient.pauseContainerCmd(containerId).exec();
             log.debug("Paused container: {}", containerId);
 
-            // Pool에 반환
-            ConcurrentLinkedDeque<String> runtimePool = pool.get(runtimeType);
+            // Pool에 반환 (마지막으로 실행한 함수 기록)
+            RuntimePool runtimePool = pool.get(runtimeType);
             if (runtimePool != null) {
-                runtimePool.offer(containerId);
+                runtimePool.offer(containerId, affinityKey);
                 log.info("Released container: {} back to {} pool (current size: {})",
                         containerId, runtimeType, runtimePool.size());
             }
@@ -195,10 +273,22 @@ public class DockerWarmPoolManager implements WarmPoolManager {
         }
     }
 
+    /**
+     * 재사용할 수 없는 컨테이너 제거 (풀이 비면 acquireContainer에서 새로 생성)
+     */
+    @Override
+    public void discardContainer(RuntimeType runtimeType, String containerId) {
+        log.warn("Discarding {} container: {}", runtimeType, containerId);
+        cleanupContainer(containerId);
+    }
+
     /**
      * 컨테이너 정리 (Stop & Remove)
      */
     private void cleanupContainer(String containerId) {
+        assignments.remove(containerId);
+        forkServerManager.remove(containerId);
+
         try {
             dockerClient.stopContainerCmd(containerId)
                     .withTimeout(5)
@@ -235,21 +325,109 @@ public class DockerWarmPoolManager implements WarmPoolManager {
     public void cleanup() {
         log.info("Cleaning up Warm Pool containers...");
 
-        for (Map.Entry<RuntimeType, ConcurrentLinkedDeque<String>> entry : pool.entrySet()) {
+        for (Map.Entry<RuntimeType, RuntimePool> entry : pool.entrySet()) {
             RuntimeType runtimeType = entry.getKey();
-            ConcurrentLinkedDeque<String> runtimePool = entry.getValue();
+            List<String> containerIds = entry.getValue().drain();
 
-            log.info("Cleaning up {} pool ({} containers)", runtimeType, runtimePool.size());
+            log.info("Cleaning up {} pool ({} containers)", runtimeType, containerIds.size());
 
-            while (!runtimePool.isEmpty()) {
-                String containerId = runtimePool.poll();
-                if (containerId != null) {
-                    cleanupContainer(containerId);
-                }
+            for (String containerId : containerIds) {
+                cleanupContainer(containerId);
             }
         }
 
         log.info("Warm Pool cleanup completed");
     }
+
+    @Override
+    public String statsName() {
+        return "warmPool";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        for (Map.Entry<RuntimeType, RuntimePool> entry : pool.entrySet()) {
+            RuntimePool runtimePool = entry.getValue();
+            String prefix = entry.getKey().name().toLowerCase();
+            synchronized (runtimePool) {
+                stats.put(prefix + "Idle", runtimePool.size());
+                stats.put(prefix + "IdleGeneric", runtimePool.genericCount());
+            }
+        }
+        long requests = affinityRequests.get();
+        stats.put("inUse", assignments.size());
+        stats.put("affinityRequests", requests);
+        stats.put("affinityHits", affinityHits.get());
+        stats.put("affinityHitRate", requests == 0 ? 0.0 : (double) affinityHits.get() / requests);
+        stats.put("genericAssignments", genericAssignments.get());
+        stats.put("reassignments", reassignments.get());
+        stats.put("created", created.get());
+        return stats;
+    }
+
+    /**
+     * 런타임 하나의 대기 중인 컨테이너
+     * 컨테이너 ID → 마지막으로 실행한 함수(null이면 미할당), 반환된 순서 유지 (앞쪽이 가장 오래 쉰 컨테이너)
+     */
+    private static final class RuntimePool {
+
+        private final LinkedHashMap<String, String> idle = new LinkedHashMap<>();
+
+        synchronized void offer(String containerId, String affinityKey) {
+            idle.remove(containerId);
+            idle.put(containerId, affinityKey);
+        }
+
+        /**
+         * 같은 함수 → 미할당 → LRU 순으로 꺼냄 (비어 있으면 null)
+         */
+        synchronized Selection take(String affinityKey) {
+            String generic = null;
+            String match = null;
+            for (Map.Entry<String, String> entry : idle.entrySet()) {
+                String previous = entry.getValue();
+                if (affinityKey != null && affinityKey.equals(previous)) {
+                    // 가장 최근에 반환된 것이 캐시가 가장 따뜻함
+                    match = entry.getKey();
+                } else if (previous == null && generic == null) {
+                    generic = entry.getKey();
+                }
+            }
+
+            String containerId = match != null ? match : generic;
+            if (containerId == null) {
+                Iterator<String> oldest = idle.keySet().iterator();
+                if (!oldest.hasNext()) {
+                    return null;
+                }
+                containerId = oldest.next();
+            }
+            return new Selection(containerId, idle.remove(containerId));
+        }
+
+        synchronized List<String> drain() {
+            List<String> containerIds = new ArrayList<>(idle.keySet());
+            idle.clear();
+            return containerIds;
+        }
+
+        synchronized int size() {
+            return idle.size();
+        }
+
+        synchronized int genericCount() {
+            int count = 0;
+            for (String affinityKey : idle.values()) {
+                if (affinityKey == null) {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+
+    private record Selection(String containerId, String previousAffinity) {
+    }
 }
 
@@ -0,0 +1,165 @@
+package org.brown.nanogridplus.docker;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.async.ResultCallback;
+import com.github.dockerjava.api.model.Frame;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 제한 시간을 넘긴 exec의 프로세스 트리 종료 + 컨테이너 정리 확인
+ *
+ * docker exec 스트림 대기를 끝내도 컨테이너 안의 사용자 프로세스는 계속 실행되므로
+ * 그대로 풀에 반환하면 다음 작업과 CPU/메모리를 나눠 쓰게 된다.
+ *
+ * - wrap(): 실행 커맨드를 sh로 감싸 exec 프로세스의 컨테이너 내 PID를 파일에 기록 (이후 exec로 대체되어 PID 유지)
+ * - terminate(): 기록한 PID부터 /proc의 부모 관계를 따라 자손까지 SIGSTOP → SIGKILL
+ * - 이후 PID 1(sleep infinity) 외의 프로세스가 남아 있는지 확인하고, 남아 있으면 모두 종료 후 다시 확인
+ *
+ * 정리를 확인하지 못한 컨테이너는 재사용하지 않는다. (호출한 쪽에서 폐기)
+ * warm 컨테이너는 한 번에 한 작업만 실행하므로 PID 1과 KEEP_FILE에 등록된 상주 프로세스(fork server)
+ * 외의 프로세스는 모두 이전 작업의 것이다.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ExecTerminator {
+
+    static final String PID_FILE = "/tmp/.nanogrid-exec.pid";
+
+    // 정리 대상에서 제외할 상주 프로세스 PID (ForkServerManager)
+    static final String KEEP_FILE = "/tmp/.nanogrid-keep.pid";
+
+    private static final long CONTROL_EXEC_TIMEOUT_SECONDS = 5;
+    private static final int MAX_CONTROL_OUTPUT = 4096;
+
+    // $0 = PID 파일, 나머지 인자 = 원래 커맨드
+    private static final String WRAPPER = "echo $$ > \"$0\"; exec \"$@\"";
+
+    // $0 = PID 파일: 루트부터 자손을 찾으며 멈춘 뒤 한 번에 SIGKILL
+    private static final String KILL_TREE = """
+            root=$(cat "$0" 2>/dev/null) || exit 0
+            [ -n "$root" ] || exit 0
+            kill -STOP "$root" 2>/dev/null
+            pids="$root"; frontier="$root"
+            while [ -n "$frontier" ]; do
+              next=""
+              for s in /proc/[0-9]*/stat; do
+                read -r p c st pp rest < "$s" 2>/dev/null || continue
+                for f in $frontier; do
+                  if [ "$pp" = "$f" ]; then kill -STOP "$p" 2>/dev/null; next="$next $p"; fi
+                done
+              done
+              pids="$pids $next"; frontier="$next"
+            done
+            kill -KILL $pids 2>/dev/null
+            rm -f "$0"
+            exit 0
+            """;
+
+    // $0 = KEEP_FILE: PID 1, 상주 프로세스, 자기 자신, 좀비를 제외한 프로세스 출력 (정리 확인용)
+    // PID 1(sleep)은 고아 프로세스를 회수하지 않으므로 종료된 프로세스가 좀비로 남을 수 있음
+    private static final String LIST_STRAYS = """
+            keep=" 1 $$ $(cat "$0" 2>/dev/null) "
+            for s in /proc/[0-9]*/stat; do
+              read -r p c st rest < "$s" 2>/dev/null || continue
+              case "$keep" in *" $p "*) continue ;; esac
+              [ "$st" = Z ] || echo "$p"
+            done
+            """;
+
+    // $0 = KEEP_FILE: PID 1, 상주 프로세스, 자기 자신을 제외한 모든 프로세스 종료
+    private static final String KILL_STRAYS = """
+            keep=" 1 $$ $(cat "$0" 2>/dev/null) "
+            for p in /proc/[0-9]*; do
+              n=${p#/proc/}
+              case "$keep" in *" $n "*) continue ;; esac
+              kill -KILL "$n" 2>/dev/null
+            done
+            exit 0
+            """;
+
+    private final DockerClient dockerClient;
+
+    /**
+     * 실행 커맨드를 PID 기록용 sh로 감싼다.
+     */
+    public List<String> wrap(List<String> cmd) {
+        List<String> wrapped = new ArrayList<>(cmd.size() + 4);
+        wrapped.add("/bin/sh");
+        wrapped.add("-c");
+        wrapped.add(WRAPPER);
+        wrapped.add(PID_FILE);
+        wrapped.addAll(cmd);
+        return wrapped;
+    }
+
+    /**
+     * exec 프로세스 트리를 종료하고 컨테이너에 남은 프로세스가 없는지 확인
+     *
+     * @return 정리가 확인되어 재사용해도 되면 true
+     */
+    public boolean terminate(String containerId) {
+        try {
+            runControl(containerId, KILL_TREE, PID_FILE);
+            if (listStrays(containerId).isEmpty()) {
+                return true;
+            }
+
+            // 프로세스 트리 밖으로 빠져나간 프로세스 (데몬화 등)
+            log.warn("Stray processes remain in container {} after killing exec tree, sweeping", containerId);
+            runControl(containerId, KILL_STRAYS, KEEP_FILE);
+            List<String> remaining = listStrays(containerId);
+            if (remaining.isEmpty()) {
+                return true;
+            }
+            log.warn("Container {} still has processes {} after sweep", containerId, remaining);
+            return false;
+
+        } catch (Exception e) {
+            log.warn("Failed to terminate exec in container {}", containerId, e);
+            return false;
+        }
+    }
+
+    private List<String> listStrays(String containerId) throws InterruptedException {
+        String output = runControl(containerId, LIST_STRAYS, KEEP_FILE);
+        return output.isBlank() ? List.of() : List.of(output.trim().split("\\s+"));
+    }
+
+    /**
+     * 컨테이너 안에서 짧은 sh 스크립트 실행, stdout 반환
+     */
+    private String runControl(String containerId, String script, String... args) throws InterruptedException {
+        List<String> cmd = new ArrayList<>(List.of("/bin/sh", "-c", script));
+        cmd.addAll(List.of(args));
+
+        String execId = dockerClient.execCreateCmd(containerId)
+                .withCmd(cmd.toArray(new String[0]))
+                .withAttachStdout(true)
+                .withAttachStderr(true)
+                .exec()
+                .getId();
+
+        StringBuilder output = new StringBuilder();
+        ResultCallback.Adapter<Frame> callback = dockerClient.execStartCmd(execId)
+                .exec(new ResultCallback.Adapter<>() {
+                    @Override
+                    public void onNext(Frame frame) {
+                        if (frame.getPayload() != null && output.length() < MAX_CONTROL_OUTPUT) {
+                            output.append(new String(frame.getPayload(), StandardCharsets.UTF_8));
+                        }
+                    }
+                });
+        if (!callback.awaitCompletion(CONTROL_EXEC_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Control exec did not finish in container " + containerId);
+        }
+        return output.toString();
+    }
+}
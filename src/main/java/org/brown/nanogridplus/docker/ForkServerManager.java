@@ -0,0 +1,370 @@
+package org.brown.nanogridplus.docker;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.async.ResultCallback;
+import com.github.dockerjava.api.model.Frame;
+import lombok.extern.slf4j.Slf4j;
+import org.brown.nanogridplus.capture.OutputCapture;
+import org.brown.nanogridplus.capture.OutputSink;
+import org.brown.nanogridplus.config.AgentProperties;
+import org.brown.nanogridplus.metrics.StatsProvider;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.SecureRandom;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Python fork server 관리 및 호출
+ *
+ * Python 호출마다 docker exec를 만들면 exec 생성 + 인터프리터 시작 + 모듈 import 비용을 매번 낸다.
+ * fork server를 켜면 Python warm 컨테이너를 만들 때 상주 프로세스(forkserver.py)를 띄워 두고
+ * 요청은 공유 마운트(/workspace-root/.forkserver)의 Unix 소켓으로 전달한다.
+ * fork server는 preloadModules를 미리 import한 상태에서 요청마다 fork한 자식으로 main.py를 실행한다.
+ *
+ * - start(): 컨테이너 생성 직후(pause 전) fork server 실행, 소켓이 생기면 등록
+ * - invoke(): 요청 전달 → stdout/stderr 프레임을 OutputCapture로 수집 → 종료 코드 반환
+ * - 제한 시간 초과 시 연결을 닫고 timedOut 반환 (프로세스 정리는 호출한 쪽에서 ExecTerminator로 수행)
+ * - 연결 실패(ForkServerUnavailableException) 시 등록을 해제하고 호출한 쪽은 docker exec로 실행
+ *
+ * 소켓 디렉터리는 모든 warm 컨테이너에 마운트되므로 다른 컨테이너에서 접근하지 못하도록
+ * 디렉터리(0700)와 소켓(0600)은 root 전용이고(execUser를 지정하면 사용자 코드는 접근 불가),
+ * 컨테이너마다 무작위 토큰을 환경 변수로 fork server에 넘겨 토큰이 다른 요청은 거부한다.
+ */
+@Slf4j
+@Component
+public class ForkServerManager implements StatsProvider {
+
+    static final String DIRECTORY_NAME = ".forkserver";
+    private static final String SCRIPT_NAME = "forkserver.py";
+    private static final String SCRIPT_RESOURCE = "/forkserver/" + SCRIPT_NAME;
+
+    // 프레임 타입 (forkserver.py와 동일)
+    private static final int FRAME_STARTED = 0;
+    private static final int FRAME_STDOUT = 1;
+    private static final int FRAME_STDERR = 2;
+    private static final int FRAME_EXIT = 3;
+    private static final int FRAME_BUFFER_SIZE = 64 * 1024;
+    private static final String TOKEN_ENV = "NANOGRID_FORKSERVER_TOKEN";
+    private static final String OWNER_ENV = "NANOGRID_FORKSERVER_OWNER";
+    private static final int TOKEN_BYTES = 32;
+
+    private final DockerClient dockerClient;
+    private final ObjectMapper objectMapper;
+    private final AgentProperties.ForkServerConfig forkServerConfig;
+    private final Path hostDir;
+    private final String containerDir;
+    private final String execUser;
+
+    // 컨테이너 ID → 호스트 측 소켓 경로
+    private final Map<String, Server> sockets = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+    // 소켓 소유자 (agent 프로세스의 uid, 디렉터리 생성 후 확인)
+    private volatile int ownerUid;
+    private final ScheduledThreadPoolExecutor watchdog;
+
+    // 통계
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong startFailures = new AtomicLong();
+    private final AtomicLong invocations = new AtomicLong();
+    private final AtomicLong unavailable = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong dispatches = new AtomicLong();
+    private final AtomicLong totalDispatchMicros = new AtomicLong();
+    private final AtomicLong maxDispatchMicros = new AtomicLong();
+
+    public ForkServerManager(DockerClient dockerClient, ObjectMapper objectMapper, AgentProperties agentProperties) {
+        this.dockerClient = dockerClient;
+        this.objectMapper = objectMapper;
+        this.forkServerConfig = agentProperties.getForkServer();
+        this.hostDir = Paths.get(agentProperties.getTaskBaseDir(), DIRECTORY_NAME);
+        this.containerDir = agentProperties.getDocker().getWorkDirRoot() + "/" + DIRECTORY_NAME;
+        this.execUser = agentProperties.getDocker().getExecUser();
+
+        this.watchdog = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "forkserver-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.watchdog.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * 공유 마운트에 fork server 스크립트 배치, 이전 실행의 소켓 파일 정리
+     */
+    @PostConstruct
+    public void initialize() throws IOException {
+        if (!forkServerConfig.isEnabled()) {
+            return;
+        }
+        Files.createDirectories(hostDir);
+        Files.setPosixFilePermissions(hostDir, PosixFilePermissions.fromString("rwx------"));
+        ownerUid = (Integer) Files.getAttribute(hostDir, "unix:uid");
+        try (DirectoryStream<Path> stale = Files.newDirectoryStream(hostDir, "*.sock*")) {
+            for (Path socket : stale) {
+                Files.deleteIfExists(socket);
+            }
+        }
+        try (InputStream script = ForkServerManager.class.getResourceAsStream(SCRIPT_RESOURCE)) {
+            if (script == null) {
+                throw new IllegalStateException("Fork server script not found: " + SCRIPT_RESOURCE);
+            }
+            Files.copy(script, hostDir.resolve(SCRIPT_NAME), StandardCopyOption.REPLACE_EXISTING);
+        }
+        log.info("Python fork server enabled: dir={} -> {}, preloadModules={}",
+                hostDir, containerDir, forkServerConfig.getPreloadModules());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        watchdog.shutdownNow();
+    }
+
+    public boolean isEnabled() {
+        return forkServerConfig.isEnabled();
+    }
+
+    /**
+     * 컨테이너에 fork server가 실행 중인지 (invoke 가능 여부)
+     */
+    public boolean isAvailable(String containerId) {
+        return sockets.containsKey(containerId);
+    }
+
+    /**
+     * 실행 중인(unpause된) 컨테이너에 fork server 시작
+     * 소켓이 startTimeoutMs 안에 생기지 않으면 등록하지 않는다. (해당 컨테이너는 docker exec 사용)
+     */
+    public void start(String containerId) {
+        if (!forkServerConfig.isEnabled()) {
+            return;
+        }
+        String socketName = socketName(containerId);
+        Path hostSocket = hostDir.resolve(socketName);
+        byte[] tokenBytes = new byte[TOKEN_BYTES];
+        random.nextBytes(tokenBytes);
+        String token = HexFormat.of().formatHex(tokenBytes);
+        try {
+            Files.deleteIfExists(hostSocket);
+
+            // 토큰은 명령줄(/proc/*/cmdline) 대신 환경 변수로 전달 (fork server가 읽은 뒤 제거)
+            String execId = dockerClient.execCreateCmd(containerId)
+                    .withUser("0")
+                    .withEnv(List.of(TOKEN_ENV + "=" + token, OWNER_ENV + "=" + ownerUid))
+                    .withCmd("python", containerDir + "/" + SCRIPT_NAME,
+                            containerDir + "/" + socketName,
+                            ExecTerminator.KEEP_FILE,
+                            String.join(",", forkServerConfig.getPreloadModules()))
+                    .exec()
+                    .getId();
+            dockerClient.execStartCmd(execId)
+                    .withDetach(true)
+                    .exec(new ResultCallback.Adapter<Frame>())
+                    .awaitCompletion(forkServerConfig.getStartTimeoutMs(), TimeUnit.MILLISECONDS);
+
+            // forkserver.py는 listen 후 소켓 파일을 rename하므로 파일이 보이면 연결 가능
+            long deadline = System.currentTimeMillis() + forkServerConfig.getStartTimeoutMs();
+            while (!Files.exists(hostSocket)) {
+                if (System.currentTimeMillis() > deadline) {
+                    startFailures.incrementAndGet();
+                    log.warn("Fork server did not start in container {} within {}ms, using docker exec",
+                            containerId, forkServerConfig.getStartTimeoutMs());
+                    return;
+                }
+                Thread.sleep(10);
+            }
+            sockets.put(containerId, new Server(hostSocket, token));
+            started.incrementAndGet();
+            log.debug("Fork server started in container {}: {}", containerId, hostSocket);
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            startFailures.incrementAndGet();
+        } catch (Exception e) {
+            startFailures.incrementAndGet();
+            log.warn("Failed to start fork server in container {}, using docker exec", containerId, e);
+        }
+    }
+
+    /**
+     * 컨테이너 제거 시 등록 해제 및 소켓 파일 삭제
+     */
+    public void remove(String containerId) {
+        Server server = sockets.remove(containerId);
+        if (server != null) {
+            Path socket = server.socket();
+            try {
+                Files.deleteIfExists(socket);
+            } catch (IOException e) {
+                log.debug("Failed to delete fork server socket: {}", socket, e);
+            }
+        }
+    }
+
+    /**
+     * fork server로 entry 실행, 출력은 capture에 수집
+     *
+     * @throws ForkServerUnavailableException 요청을 전달하기 전에 연결하지 못한 경우 (docker exec로 대신 실행 가능)
+     */
+    public Invocation invoke(String requestId, String containerId, String workDir, String entry,
+                             List<String> env, long timeoutMs, OutputCapture capture) throws IOException {
+        Server server = sockets.get(containerId);
+        if (server == null) {
+            throw new ForkServerUnavailableException("No fork server in container " + containerId, null);
+        }
+
+        long startNanos = System.nanoTime();
+        SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+        AtomicBoolean expired = new AtomicBoolean();
+        ScheduledFuture<?> deadline = null;
+        try {
+            try {
+                channel.connect(UnixDomainSocketAddress.of(server.socket()));
+                Map<String, Object> request = new LinkedHashMap<>();
+                request.put("token", server.token());
+                request.put("requestId", requestId);
+                request.put("workDir", workDir);
+                request.put("entry", entry);
+                request.put("env", env);
+                request.put("pidFile", ExecTerminator.PID_FILE);
+                request.put("user", execUser);
+                byte[] line = objectMapper.writeValueAsBytes(request);
+                channel.write(new ByteBuffer[]{ByteBuffer.wrap(line), ByteBuffer.wrap(new byte[]{'\n'})});
+            } catch (IOException e) {
+                unavailable.incrementAndGet();
+                remove(containerId);
+                throw new ForkServerUnavailableException("Fork server unreachable in container " + containerId, e);
+            }
+            invocations.incrementAndGet();
+
+            // 제한 시간이 지나면 연결을 닫아 블로킹 read를 끝냄
+            deadline = watchdog.schedule(() -> {
+                expired.set(true);
+                closeQuietly(channel);
+            }, timeoutMs, TimeUnit.MILLISECONDS);
+
+            DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(Channels.newInputStream(channel), FRAME_BUFFER_SIZE));
+            byte[] buffer = new byte[FRAME_BUFFER_SIZE];
+            try {
+                while (true) {
+                    int type = in.readUnsignedByte();
+                    int length = in.readInt();
+                    if (length > buffer.length) {
+                        buffer = new byte[length];
+                    }
+                    in.readFully(buffer, 0, length);
+
+                    switch (type) {
+                        case FRAME_STARTED -> recordDispatch(System.nanoTime() - startNanos);
+                        case FRAME_STDOUT -> capture.append(OutputSink.Stream.STDOUT, buffer, 0, length);
+                        case FRAME_STDERR -> capture.append(OutputSink.Stream.STDERR, buffer, 0, length);
+                        case FRAME_EXIT -> {
+                            return new Invocation(ByteBuffer.wrap(buffer, 0, 4).getInt(), false);
+                        }
+                        default -> throw new IOException("Unknown fork server frame type: " + type);
+                    }
+                }
+            } catch (IOException e) {
+                if (expired.get()) {
+                    timeouts.incrementAndGet();
+                    return new Invocation(-1, true);
+                }
+                if (e instanceof EOFException) {
+                    throw new IOException("Fork server closed connection before exit code", e);
+                }
+                throw e;
+            }
+        } finally {
+            if (deadline != null) {
+                deadline.cancel(false);
+            }
+            closeQuietly(channel);
+        }
+    }
+
+    private void recordDispatch(long nanos) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        dispatches.incrementAndGet();
+        totalDispatchMicros.addAndGet(micros);
+        maxDispatchMicros.accumulateAndGet(micros, Math::max);
+    }
+
+    /**
+     * Unix 소켓 경로 길이 제한(108바이트)을 넘지 않도록 짧은 컨테이너 ID 사용
+     */
+    private static String socketName(String containerId) {
+        return containerId.substring(0, Math.min(12, containerId.length())) + ".sock";
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // 무시
+        }
+    }
+
+    @Override
+    public String statsName() {
+        return "forkServer";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long dispatched = dispatches.get();
+        stats.put("enabled", forkServerConfig.isEnabled());
+        stats.put("servers", sockets.size());
+        stats.put("started", started.get());
+        stats.put("startFailures", startFailures.get());
+        stats.put("invocations", invocations.get());
+        stats.put("unavailable", unavailable.get());
+        stats.put("timeouts", timeouts.get());
+        stats.put("avgDispatchMicros", dispatched == 0 ? 0 : totalDispatchMicros.get() / dispatched);
+        stats.put("maxDispatchMicros", maxDispatchMicros.get());
+        return stats;
+    }
+
+    /**
+     * fork server 실행 결과
+     *
+     * @param exitCode 종료 코드 (시간 초과 시 -1)
+     * @param timedOut 제한 시간 초과 여부
+     */
+    public record Invocation(int exitCode, boolean timedOut) {
+    }
+
+    /**
+     * 컨테이너 하나의 fork server (호스트 측 소켓 경로, 요청 인증 토큰)
+     */
+    private record Server(Path socket, String token) {
+    }
+}
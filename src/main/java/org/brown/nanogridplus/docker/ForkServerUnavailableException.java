@@ -0,0 +1,15 @@
+package org.brown.nanogridplus.docker;
+
+import java.io.IOException;
+
+/**
+ * fork server에 연결하지 못함 (요청 전달 전 실패, docker exec로 대신 실행 가능)
+ */
+public class ForkServerUnavailableException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ForkServerUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,261 @@
+package org.brown.nanogridplus.docker;
+
+import lombok.extern.slf4j.Slf4j;
+import org.brown.nanogridplus.config.AgentProperties;
+import org.brown.nanogridplus.metrics.StatsProvider;
+import org.brown.nanogridplus.model.TaskMessage;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 호스트 자원 기반 작업 수락 제어 (Admission Control)
+ *
+ * 작업을 실행하기 전에 TaskMessage.memoryMb(없으면 기본값)와 CPU 예약량을
+ * 호스트 예산에서 차감하고, 예산이 부족하거나 호스트 부하가 높으면 거부한다.
+ * 버스트 상황에서 컨테이너가 무한히 늘어나 호스트가 스왑에 빠지는 것을 막는다.
+ *
+ * - 예산: agent.admission.hostMemoryMb / hostCpuMillicores
+ * - 실시간 부하: /proc/meminfo의 MemAvailable, 시스템 CPU 사용률
+ */
+@Slf4j
+@Component
+public class HostAdmissionController implements StatsProvider {
+
+    private static final Path MEMINFO_PATH = Paths.get("/proc/meminfo");
+    private static final long PRESSURE_SAMPLE_INTERVAL_MILLIS = 500;
+
+    private final AgentProperties.AdmissionConfig admissionConfig;
+    private final long memoryBudgetMb;
+    private final int cpuBudgetMillicores;
+
+    private long reservedMemoryMb;
+    private int reservedCpuMillicores;
+    private int activeReservations;
+
+    private volatile long lastSampleMillis;
+    private volatile long availableMemoryMb = Long.MAX_VALUE;
+    private volatile double cpuLoad;
+
+    // 통계
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong rejectedBudget = new AtomicLong();
+    private final AtomicLong rejectedPressure = new AtomicLong();
+
+    public HostAdmissionController(AgentProperties agentProperties) {
+        this.admissionConfig = agentProperties.getAdmission();
+        this.memoryBudgetMb = admissionConfig.getHostMemoryMb() > 0
+                ? admissionConfig.getHostMemoryMb()
+                : totalPhysicalMemoryMb() * 8 / 10;
+        this.cpuBudgetMillicores = admissionConfig.getHostCpuMillicores() > 0
+                ? admissionConfig.getHostCpuMillicores()
+                : Runtime.getRuntime().availableProcessors() * 1000;
+
+        log.info("Host admission control: enabled={}, memoryBudget={}MB, cpuBudget={}m",
+                admissionConfig.isEnabled(), memoryBudgetMb, cpuBudgetMillicores);
+    }
+
+    /**
+     * 작업 실행을 위한 자원 예약 시도
+     *
+     * @param taskMessage 실행할 작업
+     * @return 예약 성공 시 Reservation (실행 종료 후 release 필요), 실패 시 null
+     */
+    public Reservation tryReserve(TaskMessage taskMessage) {
+        long memoryMb = requestedMemoryMb(taskMessage);
+        int cpuMillicores = admissionConfig.getCpuMillicoresPerTask();
+
+        if (!admissionConfig.isEnabled()) {
+            return new Reservation(0, 0);
+        }
+
+        if (isUnderPressure()) {
+            rejectedPressure.incrementAndGet();
+            return null;
+        }
+
+        synchronized (this) {
+            if (!fits(memoryMb, cpuMillicores)) {
+                rejectedBudget.incrementAndGet();
+                return null;
+            }
+            reservedMemoryMb += memoryMb;
+            reservedCpuMillicores += cpuMillicores;
+            activeReservations++;
+        }
+
+        admitted.incrementAndGet();
+        return new Reservation(memoryMb, cpuMillicores);
+    }
+
+    /**
+     * 지금 예약하면 성공할지 확인만 한다. (예약하지 않음, 버퍼에서 실행할 작업을 고를 때 사용)
+     * 수락할 수 없는 작업은 큐로 돌려보내지 않고 버퍼에서 기다리게 한다.
+     */
+    public boolean canAdmit(TaskMessage taskMessage) {
+        if (!admissionConfig.isEnabled()) {
+            return true;
+        }
+        if (isUnderPressure()) {
+            return false;
+        }
+        long memoryMb = requestedMemoryMb(taskMessage);
+        synchronized (this) {
+            return fits(memoryMb, admissionConfig.getCpuMillicoresPerTask());
+        }
+    }
+
+    /**
+     * 기본 크기의 작업을 몇 개 더 수락할 수 있는지 (수신 개수 결정용)
+     */
+    public int admittableTasks() {
+        if (!admissionConfig.isEnabled()) {
+            return Integer.MAX_VALUE;
+        }
+        if (isUnderPressure()) {
+            return 0;
+        }
+
+        synchronized (this) {
+            if (activeReservations == 0) {
+                return Integer.MAX_VALUE;
+            }
+            long byMemory = (memoryBudgetMb - reservedMemoryMb) / Math.max(1, admissionConfig.getDefaultMemoryMb());
+            long byCpu = (cpuBudgetMillicores - reservedCpuMillicores)
+                    / Math.max(1, admissionConfig.getCpuMillicoresPerTask());
+            return (int) Math.max(0, Math.min(byMemory, byCpu));
+        }
+    }
+
+    public int getShedVisibilitySeconds() {
+        return admissionConfig.getShedVisibilitySeconds();
+    }
+
+    /**
+     * 예산 안에 들어가는지 (this 동기화 상태에서 호출)
+     * 실행 중인 작업이 하나도 없으면 예산보다 큰 작업도 단독 실행 허용 (영구 거부 방지)
+     */
+    private boolean fits(long memoryMb, int cpuMillicores) {
+        return activeReservations == 0
+                || (reservedMemoryMb + memoryMb <= memoryBudgetMb
+                && reservedCpuMillicores + cpuMillicores <= cpuBudgetMillicores);
+    }
+
+    private synchronized void release(Reservation reservation) {
+        reservedMemoryMb -= reservation.memoryMb;
+        reservedCpuMillicores -= reservation.cpuMillicores;
+        activeReservations--;
+    }
+
+    private long requestedMemoryMb(TaskMessage taskMessage) {
+        Integer memoryMb = taskMessage.getMemoryMb();
+        return memoryMb != null && memoryMb > 0 ? memoryMb : admissionConfig.getDefaultMemoryMb();
+    }
+
+    /**
+     * 호스트 가용 메모리 / CPU 사용률 확인 (500ms 간격으로 샘플링)
+     */
+    private boolean isUnderPressure() {
+        long now = System.currentTimeMillis();
+        if (now - lastSampleMillis >= PRESSURE_SAMPLE_INTERVAL_MILLIS) {
+            lastSampleMillis = now;
+            availableMemoryMb = readAvailableMemoryMb();
+            cpuLoad = readCpuLoad();
+        }
+        return availableMemoryMb < admissionConfig.getMinAvailableMemoryMb()
+                || cpuLoad > admissionConfig.getMaxCpuLoad();
+    }
+
+    private long readAvailableMemoryMb() {
+        try {
+            List<String> lines = Files.readAllLines(MEMINFO_PATH);
+            for (String line : lines) {
+                if (line.startsWith("MemAvailable:")) {
+                    String[] parts = line.trim().split("\\s+");
+                    return Long.parseLong(parts[1]) / 1024;  // kB → MB
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            log.debug("Failed to read /proc/meminfo: {}", e.getMessage());
+        }
+
+        if (ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean os) {
+            return os.getFreeMemorySize() / (1024 * 1024);
+        }
+        return Long.MAX_VALUE;
+    }
+
+    private double readCpuLoad() {
+        if (ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean os) {
+            double load = os.getCpuLoad();
+            return load < 0 ? 0 : load;
+        }
+        return 0;
+    }
+
+    private static long totalPhysicalMemoryMb() {
+        if (ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean os) {
+            return os.getTotalMemorySize() / (1024 * 1024);
+        }
+        return 1024;
+    }
+
+    @Override
+    public String statsName() {
+        return "admission";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", admissionConfig.isEnabled());
+        synchronized (this) {
+            stats.put("memoryBudgetMb", memoryBudgetMb);
+            stats.put("reservedMemoryMb", reservedMemoryMb);
+            stats.put("cpuBudgetMillicores", cpuBudgetMillicores);
+            stats.put("reservedCpuMillicores", reservedCpuMillicores);
+            stats.put("activeReservations", activeReservations);
+        }
+        stats.put("hostAvailableMemoryMb", availableMemoryMb);
+        stats.put("hostCpuLoad", cpuLoad);
+        stats.put("admitted", admitted.get());
+        stats.put("rejectedBudget", rejectedBudget.get());
+        stats.put("rejectedPressure", rejectedPressure.get());
+        return stats;
+    }
+
+    /**
+     * 작업 하나의 자원 예약 (실행 종료 후 한 번만 release)
+     */
+    public final class Reservation {
+
+        private final long memoryMb;
+        private final int cpuMillicores;
+        private boolean released;
+
+        private Reservation(long memoryMb, int cpuMillicores) {
+            this.memoryMb = memoryMb;
+            this.cpuMillicores = cpuMillicores;
+        }
+
+        public void release() {
+            synchronized (HostAdmissionController.this) {
+                if (released) {
+                    return;
+                }
+                released = true;
+            }
+            if (admissionConfig.isEnabled()) {
+                HostAdmissionController.this.release(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package org.brown.nanogridplus.docker;
+
+/**
+ * TaskMessage의 runtime이 없거나 지원하지 않는 런타임 (재시도해도 같은 결과)
+ */
+public class UnsupportedRuntimeException extends IllegalArgumentException {
+
+    private static final long serialVersionUID = 1L;
+
+    public UnsupportedRuntimeException(String message) {
+        super(message);
+    }
+}
@@ -13,7 +13,26 @@ public interface WarmPoolManager {
      */
     enum RuntimeType {
         PYTHON,
-        CPP
+        CPP;
+
+        /**
+         * TaskMessage의 runtime 문자열을 RuntimeType으로 변환한다.
+         *
+         * @param runtime 런타임 문자열 ("python", "cpp", "c++")
+         * @return 대응하는 RuntimeType
+         * @throws UnsupportedRuntimeException runtime이 null이거나 지원하지 않는 런타임인 경우
+         */
+        public static RuntimeType fromRuntime(String runtime) {
+            if (runtime == null) {
+                throw new UnsupportedRuntimeException("Runtime is null");
+            }
+
+            return switch (runtime.toLowerCase()) {
+                case "python" -> PYTHON;
+                case "cpp", "c++" -> CPP;
+                default -> throw new UnsupportedRuntimeException("Unsupported runtime: " + runtime);
+            };
+        }
     }
 
     /**
@@ -23,7 +42,19 @@ public interface WarmPoolManager {
      * @param runtimeType 런타임 타입 (PYTHON, CPP)
      * @return 컨테이너 ID (unpause 완료 상태)
      */
-    String acquireContainer(RuntimeType runtimeType);
+    default String acquireContainer(RuntimeType runtimeType) {
+        return acquireContainer(runtimeType, null);
+    }
+
+    /**
+     * 지정한 함수(affinityKey)를 마지막으로 실행한 컨테이너를 우선하여 하나를 풀에서 가져온다.
+     * 없으면 아직 할당되지 않은 컨테이너, 그것도 없으면 가장 오래 쉬고 있던 컨테이너를 다시 할당한다.
+     *
+     * @param runtimeType 런타임 타입 (PYTHON, CPP)
+     * @param affinityKey 함수 ID + 코드 버전 (null이면 선호 없음)
+     * @return 컨테이너 ID (unpause 완료 상태)
+     */
+    String acquireContainer(RuntimeType runtimeType, String affinityKey);
 
     /**
      * 작업이 끝난 컨테이너를 다시 풀에 되돌린다.
@@ -33,5 +64,13 @@ public interface WarmPoolManager {
      * @param containerId 컨테이너 ID
      */
     void releaseContainer(RuntimeType runtimeType, String containerId);
+
+    /**
+     * 재사용하면 안 되는 컨테이너(정리되지 않은 프로세스가 남은 경우 등)를 풀에 반환하지 않고 제거한다.
+     *
+     * @param runtimeType 런타임 타입
+     * @param containerId 컨테이너 ID
+     */
+    void discardContainer(RuntimeType runtimeType, String containerId);
 }
 
@@ -0,0 +1,23 @@
+package org.brown.nanogridplus.metrics;
+
+import java.util.Map;
+
+/**
+ * Agent 내부 컴포넌트의 실시간 통계 제공 인터페이스
+ *
+ * 구현한 빈은 GET /status 응답의 metrics 항목에 자동으로 포함된다.
+ */
+public interface StatsProvider {
+
+    /**
+     * 통계 그룹 이름 (예: "sqsAck")
+     */
+    String statsName();
+
+    /**
+     * 현재 시점의 통계 스냅샷
+     *
+     * @return 통계 이름 → 값
+     */
+    Map<String, Object> stats();
+}
@@ -43,6 +43,16 @@ public class ExecutionResult {
      */
     private String stderr;
 
+    /**
+     * 출력 한도를 넘어 버려진 stdout 바이트 수 (앞/뒤만 보존)
+     */
+    private long stdoutTruncatedBytes;
+
+    /**
+     * 출력 한도를 넘어 버려진 stderr 바이트 수 (앞/뒤만 보존)
+     */
+    private long stderrTruncatedBytes;
+
     /**
      * 실행 소요 시간 (밀리초)
      */
@@ -53,6 +63,11 @@ public class ExecutionResult {
      */
     private boolean success;
 
+    /**
+     * 제한 시간(timeoutMs) 초과로 강제 종료되었는지 여부
+     */
+    private boolean timedOut;
+
     /**
      * 피크 메모리 사용량 (바이트 단위) - Auto-Tuner
      */
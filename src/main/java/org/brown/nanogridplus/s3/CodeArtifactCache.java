@@ -0,0 +1,659 @@
+package org.brown.nanogridplus.s3;
+
+import com.github.dockerjava.api.model.AccessMode;
+import com.github.dockerjava.api.model.Bind;
+import com.github.dockerjava.api.model.Volume;
+import lombok.extern.slf4j.Slf4j;
+import org.brown.nanogridplus.config.AgentProperties;
+import org.brown.nanogridplus.metrics.StatsProvider;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import jakarta.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 코드 zip 로컬 캐시 (bucket/key/ETag 기준)
+ *
+ * 같은 s3Key를 반복 실행할 때마다 S3에서 다시 다운로드하지 않도록
+ * 다운로드한 zip을 ETag와 함께 보관한다.
+ *
+ * - revalidateAfterSeconds 이내: S3 요청 없이 캐시 사용
+ * - 이후: If-None-Match 조건부 GetObject (304면 캐시 사용, 아니면 새 버전으로 교체)
+ * - 디스크 사용량이 maxBytes를 넘으면 오래 사용하지 않은 항목부터 제거 (사용 중인 항목 제외)
+ * - 재시작 시 남아 있는 {키 해시}-{ETag}-{접미사}.zip 파일로 인덱스를 다시 만든다 (처음 사용할 때 ETag로 재확인)
+ * - 같은 항목을 동시에 요청하면 다운로드는 한 번만 (실패는 모든 대기 요청에 전달, 캐시에는 남기지 않음)
+ * - 요청 시 버전별 압축 해제 트리도 한 번만 만들어 보관 (Lease.extractedTree, zip과 함께 제거)
+ *   트리는 {directory}/trees 아래에 두고 warm 컨테이너에 같은 경로로 읽기 전용 마운트한다. (containerBind)
+ * - 대역폭 제한이 걸린 다운로드(prefetch)에 실제 요청이 합류하면 제한을 풀어 바로 받는다
+ *
+ * 사용 후 반드시 Lease를 close하여 제거 가능 상태로 돌려야 한다.
+ */
+@Slf4j
+@Component
+public class CodeArtifactCache implements StatsProvider {
+
+    private static final int HTTP_NOT_MODIFIED = 304;
+    // 이 캐시가 만든 zip 파일 이름: {sha256(bucket/key)}-{hex(ETag)}-{접미사}.zip
+    private static final Pattern CACHE_FILE = Pattern.compile("([0-9a-f]{64})-([0-9a-f]*)-([0-9a-f]{8})\\.zip");
+    private static final Set<PosixFilePermission> READ_ONLY = Set.of(
+            PosixFilePermission.OWNER_READ, PosixFilePermission.GROUP_READ, PosixFilePermission.OTHERS_READ);
+
+    private final S3RangedDownloader rangedDownloader;
+    private final ZipExtractor zipExtractor;
+    private final AgentProperties.CodeCacheConfig cacheConfig;
+    private final Path cacheDir;
+    private final Path treesDir;
+
+    // access-order LinkedHashMap = LRU 순서
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // 진행 중인 다운로드 (같은 항목에 대한 동시 요청 합치기)
+    private final Map<String, Flight> inFlight = new HashMap<>();
+    private long totalBytes;
+
+    // 통계
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong revalidatedHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong downloadedBytes = new AtomicLong();
+    private final AtomicLong treeExtractions = new AtomicLong();
+    private final AtomicLong coalescedWaits = new AtomicLong();
+    private final AtomicLong coalescedHits = new AtomicLong();
+
+    public CodeArtifactCache(S3RangedDownloader rangedDownloader, ZipExtractor zipExtractor,
+                             AgentProperties agentProperties) {
+        this.rangedDownloader = rangedDownloader;
+        this.zipExtractor = zipExtractor;
+        this.cacheConfig = agentProperties.getCodeCache();
+        this.cacheDir = Paths.get(cacheConfig.getDirectory());
+        this.treesDir = cacheDir.resolve("trees");
+    }
+
+    /**
+     * 캐시 디렉터리 초기화: 이전 실행이 남긴 zip과 압축 해제 트리로 인덱스를 다시 만든다.
+     * 이 캐시가 만든 이름의 파일만 다루며(다운로드 중이던 .part, 짝이 없는 트리는 삭제) 그 외 파일은 그대로 둔다.
+     * 복구한 항목은 ETag만 알고 확인 시각은 모르므로 처음 사용할 때 조건부 요청으로 재확인한다.
+     */
+    @PostConstruct
+    public void initialize() throws IOException {
+        if (!cacheConfig.isEnabled()) {
+            return;
+        }
+        Files.createDirectories(treesDir);
+
+        List<Path> toDelete = new ArrayList<>();
+        List<Entry> restored = new ArrayList<>();
+        try (var paths = Files.list(cacheDir)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                String name = path.getFileName().toString();
+                if (name.endsWith(".part")) {
+                    toDelete.add(path);
+                    continue;
+                }
+                Matcher matcher = CACHE_FILE.matcher(name);
+                if (!matcher.matches() || !Files.isRegularFile(path)) {
+                    continue;
+                }
+                try {
+                    String eTag = new String(HexFormat.of().parseHex(matcher.group(2)), StandardCharsets.UTF_8);
+                    Entry entry = new Entry(matcher.group(1), eTag, path, Files.size(path));
+                    entry.validatedAtMillis = 0;
+                    restored.add(entry);
+                } catch (IllegalArgumentException e) {
+                    log.debug("Unreadable cache file name, deleting: {}", path);
+                    toDelete.add(path);
+                }
+            }
+        }
+
+        // 수정 시각 순서로 넣어 LRU 순서를 근사 (같은 키의 여러 버전은 가장 최근 것만 유지)
+        restored.sort(Comparator.comparing(entry -> entry.path.toFile().lastModified()));
+        Set<Path> indexedTrees = new HashSet<>();
+        synchronized (this) {
+            for (Entry entry : restored) {
+                Entry previous = entries.put(entry.cacheKey, entry);
+                if (previous != null) {
+                    totalBytes -= previous.totalBytes();
+                    toDelete.add(previous.path);
+                    if (previous.treeDir != null) {
+                        indexedTrees.remove(previous.treeDir);
+                    }
+                }
+                Path treeDir = treeDirFor(entry.path);
+                if (Files.isDirectory(treeDir)) {
+                    entry.treeDir = treeDir;
+                    entry.treeBytes = makeReadOnly(treeDir);
+                    indexedTrees.add(treeDir);
+                }
+                totalBytes += entry.totalBytes();
+            }
+            evictIfNeeded(toDelete);
+        }
+
+        // 만들다 만 트리, 인덱스에 없는 트리 정리 (trees 디렉터리는 이 캐시 전용)
+        try (var paths = Files.list(treesDir)) {
+            paths.filter(path -> !indexedTrees.contains(path)).forEach(toDelete::add);
+        }
+        for (Path path : toDelete) {
+            deleteQuietly(path);
+        }
+
+        log.info("Code artifact cache initialized: dir={}, restoredEntries={}, bytes={}, maxBytes={}, revalidateAfter={}s",
+                cacheDir, entries.size(), totalBytes, cacheConfig.getMaxBytes(), cacheConfig.getRevalidateAfterSeconds());
+    }
+
+    public boolean isEnabled() {
+        return cacheConfig.isEnabled();
+    }
+
+    /**
+     * 압축 해제 트리를 warm 컨테이너에 호스트와 같은 경로로 읽기 전용 마운트 (트리를 공유하지 않으면 null)
+     * 작업 디렉터리의 심볼릭 링크가 호스트와 컨테이너 양쪽에서 같은 파일을 가리키고,
+     * 컨테이너 안에서는 root라도 원본을 수정할 수 없다.
+     */
+    public Bind containerBind() {
+        if (!cacheConfig.isEnabled() || !cacheConfig.isShareExtractedTrees()) {
+            return null;
+        }
+        String path = treesDir.toAbsolutePath().normalize().toString();
+        return new Bind(path, new Volume(path), AccessMode.ro);
+    }
+
+    /**
+     * 재확인 없이 바로 사용할 수 있는 항목이 있거나 다운로드가 진행 중인지 확인
+     */
+    public synchronized boolean isWarm(String bucket, String key) {
+        String cacheKey = cacheKey(bucket, key);
+        if (inFlight.containsKey(cacheKey)) {
+            return true;
+        }
+        Entry entry = entries.get(cacheKey);
+        long revalidateMillis = TimeUnit.SECONDS.toMillis(cacheConfig.getRevalidateAfterSeconds());
+        return entry != null && System.currentTimeMillis() - entry.validatedAtMillis < revalidateMillis;
+    }
+
+    /**
+     * 코드 zip을 캐시에서 가져오거나, 없으면(또는 변경되었으면) S3에서 다운로드한다.
+     * 같은 항목을 동시에 요청하면 첫 요청만 S3에 접근하고 나머지는 그 결과를 기다린다. (single-flight)
+     *
+     * @param bucket S3 버킷
+     * @param key S3 키
+     * @return 캐시된 zip에 대한 Lease (사용 후 close 필요)
+     */
+    public Lease acquire(String bucket, String key) throws IOException {
+        return acquire(bucket, key, S3RangedDownloader.Throttle.NONE);
+    }
+
+    /**
+     * 대역폭 제한을 적용해 가져온다. (prefetch용)
+     * 제한 없는 요청이 같은 다운로드를 기다리기 시작하면 그 시점부터 제한을 적용하지 않는다.
+     */
+    public Lease acquire(String bucket, String key, S3RangedDownloader.Throttle throttle) throws IOException {
+        String cacheKey = cacheKey(bucket, key);
+        long revalidateMillis = TimeUnit.SECONDS.toMillis(cacheConfig.getRevalidateAfterSeconds());
+        boolean waited = false;
+
+        while (true) {
+            String knownETag = null;
+            Flight flight;
+            boolean leader = false;
+
+            synchronized (this) {
+                Entry entry = entries.get(cacheKey);
+                // 진행 중이던 다운로드를 기다린 경우에는 방금 확인된 항목이므로 바로 사용
+                if (entry != null && (waited || System.currentTimeMillis() - entry.validatedAtMillis < revalidateMillis)) {
+                    (waited ? coalescedHits : hits).incrementAndGet();
+                    return lease(entry);
+                }
+
+                flight = inFlight.get(cacheKey);
+                if (flight == null) {
+                    knownETag = entry != null ? entry.eTag : null;
+                    flight = new Flight(throttle);
+                    inFlight.put(cacheKey, flight);
+                    leader = true;
+                } else if (!throttle.isLimited()) {
+                    flight.unthrottled = true;
+                }
+            }
+
+            if (!leader) {
+                awaitFlight(flight.done, bucket + "/" + key);
+                waited = true;
+                continue;
+            }
+
+            try {
+                Lease lease = fetch(bucket, key, cacheKey, knownETag, flight);
+                finishFlight(cacheKey, flight, null);
+                return lease;
+            } catch (IOException | RuntimeException e) {
+                // 실패는 기다리던 요청에 모두 전달하되 캐시에는 남기지 않음 (다음 요청은 다시 시도)
+                finishFlight(cacheKey, flight, e);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * 조건부 다운로드 (ETag가 같으면 304, 본문 전송 없음)
+     */
+    private Lease fetch(String bucket, String key, String cacheKey, String knownETag,
+                        S3RangedDownloader.Throttle throttle) throws IOException {
+        Path tempFile = cacheDir.resolve(UUID.randomUUID() + ".part");
+        S3RangedDownloader.Download download;
+        try {
+            download = rangedDownloader.download(bucket, key, knownETag, tempFile, throttle);
+        } catch (S3Exception e) {
+            Files.deleteIfExists(tempFile);
+            if (e.statusCode() == HTTP_NOT_MODIFIED) {
+                synchronized (this) {
+                    Entry entry = entries.get(cacheKey);
+                    if (entry != null && entry.eTag.equals(knownETag)) {
+                        entry.validatedAtMillis = System.currentTimeMillis();
+                        revalidatedHits.incrementAndGet();
+                        return lease(entry);
+                    }
+                }
+                // 확인 중에 제거됨 - 조건 없이 다시 다운로드
+                return acquireUnconditionally(bucket, key, throttle);
+            }
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+
+        misses.incrementAndGet();
+        return store(cacheKey, download.eTag(), tempFile);
+    }
+
+    private void awaitFlight(CompletableFuture<Void> flight, String objectName) throws IOException {
+        coalescedWaits.incrementAndGet();
+        try {
+            flight.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for code fetch: " + objectName);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IOException("Coalesced code fetch failed: " + objectName, cause);
+        }
+    }
+
+    private void finishFlight(String cacheKey, Flight flight, Throwable failure) {
+        synchronized (this) {
+            inFlight.remove(cacheKey, flight);
+        }
+        if (failure == null) {
+            flight.done.complete(null);
+        } else {
+            flight.done.completeExceptionally(failure);
+        }
+    }
+
+    private Lease acquireUnconditionally(String bucket, String key, S3RangedDownloader.Throttle throttle)
+            throws IOException {
+        Path tempFile = cacheDir.resolve(UUID.randomUUID() + ".part");
+        try {
+            S3RangedDownloader.Download download = rangedDownloader.download(bucket, key, null, tempFile, throttle);
+            misses.incrementAndGet();
+            return store(cacheKey(bucket, key), download.eTag(), tempFile);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+    }
+
+    /**
+     * 다운로드한 파일을 캐시에 등록 (같은 키의 이전 버전은 교체)
+     */
+    private Lease store(String cacheKey, String eTag, Path tempFile) throws IOException {
+        String normalizedETag = eTag != null ? eTag : "";
+        Path target = cacheDir.resolve(fileName(cacheKey, normalizedETag));
+        long size = Files.size(tempFile);
+        downloadedBytes.addAndGet(size);
+
+        List<Path> toDelete = new ArrayList<>();
+        Lease lease;
+        synchronized (this) {
+            Entry existing = entries.get(cacheKey);
+            if (existing != null && existing.eTag.equals(normalizedETag)) {
+                // 동시에 같은 버전을 받은 경우 - 먼저 등록된 파일 사용
+                existing.validatedAtMillis = System.currentTimeMillis();
+                toDelete.add(tempFile);
+                lease = lease(existing);
+            } else {
+                if (existing != null) {
+                    removeEntry(cacheKey, existing, toDelete);
+                }
+                Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                Entry entry = new Entry(cacheKey, normalizedETag, target, size);
+                entries.put(cacheKey, entry);
+                totalBytes += size;
+                lease = lease(entry);
+                evictIfNeeded(toDelete);
+            }
+        }
+
+        for (Path path : toDelete) {
+            deleteQuietly(path);
+        }
+        return lease;
+    }
+
+    /**
+     * maxBytes를 넘으면 오래 사용하지 않은 항목부터 제거 (lock 보유 상태에서 호출)
+     */
+    private void evictIfNeeded(List<Path> toDelete) {
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (totalBytes > cacheConfig.getMaxBytes() && iterator.hasNext()) {
+            Entry entry = iterator.next().getValue();
+            if (entry.leases > 0) {
+                continue;
+            }
+            iterator.remove();
+            totalBytes -= entry.totalBytes();
+            entry.removed = true;
+            toDelete.add(entry.path);
+            if (entry.treeDir != null) {
+                toDelete.add(entry.treeDir);
+            }
+            evictions.incrementAndGet();
+            log.debug("Evicted cached code artifact: {} ({} bytes)", entry.cacheKey, entry.totalBytes());
+        }
+    }
+
+    private void removeEntry(String cacheKey, Entry entry, List<Path> toDelete) {
+        entries.remove(cacheKey);
+        totalBytes -= entry.totalBytes();
+        entry.removed = true;
+        if (entry.leases == 0) {
+            toDelete.add(entry.path);
+            if (entry.treeDir != null) {
+                toDelete.add(entry.treeDir);
+            }
+        }
+    }
+
+    private Lease lease(Entry entry) {
+        entry.leases++;
+        return new Lease(entry);
+    }
+
+    private void release(Entry entry) {
+        boolean delete;
+        synchronized (this) {
+            entry.leases--;
+            delete = entry.removed && entry.leases == 0;
+        }
+        if (delete) {
+            deleteQuietly(entry.path);
+            if (entry.treeDir != null) {
+                deleteQuietly(entry.treeDir);
+            }
+        }
+    }
+
+    /**
+     * 버전별 압축 해제 트리를 한 번만 만든다. (같은 항목에 대한 동시 요청은 완료까지 대기)
+     * 트리의 파일은 읽기 전용으로 만든다. (컨테이너에서는 읽기 전용 마운트로 보호)
+     */
+    private Path ensureTree(Entry entry) throws IOException {
+        synchronized (entry) {
+            if (entry.treeDir != null) {
+                return entry.treeDir;
+            }
+
+            Path tempDir = treesDir.resolve(UUID.randomUUID() + ".tree-part");
+            Path treeDir = treeDirFor(entry.path);
+            try {
+                Files.createDirectories(tempDir);
+                zipExtractor.extract(entry.path, tempDir, entry.cacheKey);
+                long treeBytes = makeReadOnly(tempDir);
+                Files.move(tempDir, treeDir, StandardCopyOption.ATOMIC_MOVE);
+                treeExtractions.incrementAndGet();
+
+                List<Path> toDelete = new ArrayList<>();
+                synchronized (this) {
+                    entry.treeDir = treeDir;
+                    if (!entry.removed) {
+                        entry.treeBytes = treeBytes;
+                        totalBytes += treeBytes;
+                        evictIfNeeded(toDelete);
+                    }
+                }
+                for (Path path : toDelete) {
+                    deleteQuietly(path);
+                }
+                return treeDir;
+
+            } catch (IOException | RuntimeException e) {
+                deleteQuietly(tempDir);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * 트리의 모든 파일을 읽기 전용으로 바꾸고 전체 크기를 반환
+     */
+    private static long makeReadOnly(Path root) throws IOException {
+        long[] bytes = {0};
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                bytes[0] += attrs.size();
+                try {
+                    Files.setPosixFilePermissions(file, READ_ONLY);
+                } catch (UnsupportedOperationException e) {
+                    file.toFile().setReadOnly();
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return bytes[0];
+    }
+
+    /**
+     * 파일 또는 디렉터리(재귀) 삭제, 실패는 로그만 남김
+     */
+    private static void deleteQuietly(Path path) {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (var paths = Files.walk(path)) {
+            paths.sorted((p1, p2) -> -p1.compareTo(p2))  // 역순으로 정렬 (파일 먼저, 디렉터리 나중)
+                    .forEach(p -> {
+                        try {
+                            Files.delete(p);
+                        } catch (IOException e) {
+                            log.warn("Failed to delete cache file: {}", p, e);
+                        }
+                    });
+        } catch (IOException e) {
+            log.warn("Failed to delete cache path: {}", path, e);
+        }
+    }
+
+    /**
+     * 인덱스 키 = sha256(bucket/key) (파일 이름에 그대로 쓰여 재시작 후 복구 가능)
+     */
+    private static String cacheKey(String bucket, String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest((bucket + "/" + key).getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static String fileName(String cacheKey, String eTag) {
+        String encodedETag = HexFormat.of().formatHex(eTag.getBytes(StandardCharsets.UTF_8));
+        // 제거 대기 중인 같은 버전의 파일과 겹치지 않도록 고유 접미사 추가
+        String suffix = UUID.randomUUID().toString().substring(0, 8);
+        return cacheKey + "-" + encodedETag + "-" + suffix + ".zip";
+    }
+
+    private Path treeDirFor(Path zipFile) {
+        return treesDir.resolve(zipFile.getFileName().toString().replaceFirst("\\.zip$", ".d"));
+    }
+
+    @Override
+    public String statsName() {
+        return "codeCache";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", cacheConfig.isEnabled());
+        synchronized (this) {
+            stats.put("entries", entries.size());
+            stats.put("bytes", totalBytes);
+            stats.put("inFlight", inFlight.size());
+        }
+        stats.put("maxBytes", cacheConfig.getMaxBytes());
+        stats.put("hits", hits.get());
+        stats.put("revalidatedHits", revalidatedHits.get());
+        stats.put("misses", misses.get());
+        stats.put("evictions", evictions.get());
+        stats.put("downloadedBytes", downloadedBytes.get());
+        stats.put("treeExtractions", treeExtractions.get());
+        stats.put("coalescedWaits", coalescedWaits.get());
+        stats.put("coalescedHits", coalescedHits.get());
+        long cached = hits.get() + revalidatedHits.get() + coalescedHits.get();
+        long total = cached + misses.get();
+        stats.put("hitRatio", total == 0 ? 0.0 : (double) cached / total);
+        return stats;
+    }
+
+    /**
+     * 캐시 항목 사용권 (close 전까지 제거되지 않음)
+     */
+    public final class Lease implements AutoCloseable {
+
+        private final Entry entry;
+        private boolean closed;
+
+        private Lease(Entry entry) {
+            this.entry = entry;
+        }
+
+        public Path path() {
+            return entry.path;
+        }
+
+        public String eTag() {
+            return entry.eTag;
+        }
+
+        public long sizeBytes() {
+            return entry.sizeBytes;
+        }
+
+        /**
+         * 이 버전의 압축 해제 트리 (없으면 만든다, 파일은 읽기 전용)
+         */
+        public Path extractedTree() throws IOException {
+            return ensureTree(entry);
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            release(entry);
+        }
+    }
+
+    /**
+     * 진행 중인 다운로드 하나 (리더의 제한을 적용하되, 제한 없는 요청이 합류하면 해제)
+     */
+    private static final class Flight implements S3RangedDownloader.Throttle {
+
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        private final S3RangedDownloader.Throttle throttle;
+        private volatile boolean unthrottled;
+
+        private Flight(S3RangedDownloader.Throttle throttle) {
+            this.throttle = throttle;
+            this.unthrottled = !throttle.isLimited();
+        }
+
+        @Override
+        public void acquire(int bytes) throws InterruptedIOException {
+            if (!unthrottled) {
+                throttle.acquire(bytes);
+            }
+        }
+
+        @Override
+        public boolean isLimited() {
+            return !unthrottled;
+        }
+    }
+
+    /**
+     * 캐시 항목 (CodeArtifactCache lock 보유 상태에서만 변경)
+     */
+    private static final class Entry {
+
+        private final String cacheKey;
+        private final String eTag;
+        private final Path path;
+        private final long sizeBytes;
+
+        private long validatedAtMillis = System.currentTimeMillis();
+        private int leases;
+        private boolean removed;
+        private volatile Path treeDir;
+        private long treeBytes;
+
+        private Entry(String cacheKey, String eTag, Path path, long sizeBytes) {
+            this.cacheKey = cacheKey;
+            this.eTag = eTag;
+            this.path = path;
+            this.sizeBytes = sizeBytes;
+        }
+
+        private long totalBytes() {
+            return sizeBytes + treeBytes;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package org.brown.nanogridplus.s3;
+
+import lombok.extern.slf4j.Slf4j;
+import org.brown.nanogridplus.config.AgentProperties;
+import org.brown.nanogridplus.metrics.StatsProvider;
+import org.brown.nanogridplus.model.TaskMessage;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.io.InterruptedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 코드 선행 다운로드 (speculative prefetch)
+ *
+ * 수신 후 실행 대기 버퍼에 들어간 메시지는 이미 s3Bucket/s3Key를 알고 있으므로,
+ * 컨테이너 슬롯을 기다리는 동안 코드를 CodeArtifactCache에 미리 받아 둔다.
+ * 실행 단계의 prepareWorkingDirectory는 캐시 적중(또는 진행 중인 다운로드 합류)으로 끝난다.
+ *
+ * - 낮은 우선순위 스레드, 크기가 제한된 대기열 (가득 차면 버림 - 실행 시 직접 다운로드)
+ * - 전체 prefetch 다운로드에 대역폭 제한 (토큰 버킷, maxBytesPerSecond)
+ * - 실제 실행 요청이 같은 다운로드에 합류하면 CodeArtifactCache가 제한을 해제
+ * - 코드 캐시가 꺼져 있으면 동작하지 않음
+ */
+@Slf4j
+@Component
+public class CodePrefetcher implements StatsProvider {
+
+    private final CodeArtifactCache codeArtifactCache;
+    private final AgentProperties agentProperties;
+    private final AgentProperties.PrefetchConfig prefetchConfig;
+    private final ThreadPoolExecutor executor;
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    // 대역폭 토큰 버킷 (bytes, 최대 1초 분량)
+    private final Object bandwidthLock = new Object();
+    private double tokens;
+    private long lastRefillNanos = System.nanoTime();
+
+    // 통계
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong alreadyWarm = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong prefetchedBytes = new AtomicLong();
+    private final AtomicLong throttledNanos = new AtomicLong();
+
+    public CodePrefetcher(CodeArtifactCache codeArtifactCache, AgentProperties agentProperties) {
+        this.codeArtifactCache = codeArtifactCache;
+        this.agentProperties = agentProperties;
+        this.prefetchConfig = agentProperties.getPrefetch();
+        this.tokens = prefetchConfig.getMaxBytesPerSecond();
+
+        int threads = Math.max(1, prefetchConfig.getThreads());
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+                threads, threads,
+                60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, prefetchConfig.getQueueCapacity())),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "code-prefetch-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+
+        log.info("Code prefetch: enabled={}, threads={}, queueCapacity={}, maxBytesPerSecond={}",
+                isEnabled(), threads, prefetchConfig.getQueueCapacity(), prefetchConfig.getMaxBytesPerSecond());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private boolean isEnabled() {
+        return prefetchConfig.isEnabled() && codeArtifactCache.isEnabled();
+    }
+
+    /**
+     * 대기 중인 메시지의 코드를 미리 캐시에 받도록 예약 (블로킹 없음)
+     */
+    public void prefetch(TaskMessage taskMessage) {
+        if (!isEnabled() || taskMessage.getS3Key() == null) {
+            return;
+        }
+
+        String bucket = taskMessage.getS3Bucket();
+        if (bucket == null || bucket.trim().isEmpty()) {
+            bucket = agentProperties.getS3().getCodeBucket();
+        }
+        String key = taskMessage.getS3Key();
+        String cacheKey = bucket + "/" + key;
+
+        if (codeArtifactCache.isWarm(bucket, key)) {
+            alreadyWarm.incrementAndGet();
+            return;
+        }
+        if (!pending.add(cacheKey)) {
+            return;
+        }
+
+        String s3Bucket = bucket;
+        try {
+            executor.execute(() -> run(s3Bucket, key, cacheKey));
+            submitted.incrementAndGet();
+        } catch (RejectedExecutionException e) {
+            // 대기열이 가득 참 - 실행 단계에서 직접 다운로드
+            pending.remove(cacheKey);
+            dropped.incrementAndGet();
+        }
+    }
+
+    private void run(String bucket, String key, String cacheKey) {
+        // 대역폭 제한이 없으면 일반 요청과 같이 병렬 구간 다운로드
+        S3RangedDownloader.Throttle throttle = prefetchConfig.getMaxBytesPerSecond() > 0
+                ? this::acquireBandwidth
+                : S3RangedDownloader.Throttle.NONE;
+        try (CodeArtifactCache.Lease lease = codeArtifactCache.acquire(bucket, key, throttle)) {
+            if (agentProperties.getCodeCache().isShareExtractedTrees()) {
+                lease.extractedTree();
+            }
+            prefetchedBytes.addAndGet(lease.sizeBytes());
+            completed.incrementAndGet();
+            log.debug("Prefetched code artifact: s3://{}/{} ({} bytes)", bucket, key, lease.sizeBytes());
+        } catch (Exception e) {
+            // 실패해도 실행 단계에서 다시 시도하므로 로그만 남김
+            failed.incrementAndGet();
+            log.warn("[SKIP][PREFETCH] 코드 선행 다운로드 실패: s3://{}/{} - {}", bucket, key, e.getMessage());
+        } finally {
+            pending.remove(cacheKey);
+        }
+    }
+
+    /**
+     * 읽은 바이트만큼 토큰 소비, 부족하면 부족분이 채워질 때까지 대기
+     */
+    private void acquireBandwidth(int bytes) throws InterruptedIOException {
+        long rate = prefetchConfig.getMaxBytesPerSecond();
+        if (rate <= 0) {
+            return;
+        }
+
+        long waitNanos;
+        synchronized (bandwidthLock) {
+            long now = System.nanoTime();
+            tokens = Math.min(rate, tokens + (now - lastRefillNanos) / 1_000_000_000.0 * rate);
+            lastRefillNanos = now;
+            tokens -= bytes;
+            waitNanos = tokens < 0 ? (long) (-tokens / rate * 1_000_000_000L) : 0;
+        }
+
+        if (waitNanos > 0) {
+            throttledNanos.addAndGet(waitNanos);
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while throttling code prefetch");
+            }
+        }
+    }
+
+    @Override
+    public String statsName() {
+        return "codePrefetch";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", isEnabled());
+        stats.put("pending", pending.size());
+        stats.put("queued", executor.getQueue().size());
+        stats.put("submitted", submitted.get());
+        stats.put("alreadyWarm", alreadyWarm.get());
+        stats.put("dropped", dropped.get());
+        stats.put("completed", completed.get());
+        stats.put("failed", failed.get());
+        stats.put("prefetchedBytes", prefetchedBytes.get());
+        stats.put("throttledMillis", TimeUnit.NANOSECONDS.toMillis(throttledNanos.get()));
+        stats.put("maxBytesPerSecond", prefetchConfig.getMaxBytesPerSecond());
+        return stats;
+    }
+}
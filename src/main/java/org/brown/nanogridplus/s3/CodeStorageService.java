@@ -19,5 +19,13 @@ public interface CodeStorageService {
      * @throws RuntimeException S3 다운로드 실패 또는 압축 해제 실패 시
      */
     Path prepareWorkingDirectory(TaskMessage taskMessage);
+
+    /**
+     * 요청 종료: 작업 디렉터리가 참조하던 자원(공유 코드 트리 등) 반환
+     *
+     * @param requestId 요청 ID
+     */
+    default void releaseWorkingDirectory(String requestId) {
+    }
 }
 
@@ -4,28 +4,52 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.brown.nanogridplus.config.AgentProperties;
 import org.brown.nanogridplus.model.TaskMessage;
+import org.brown.nanogridplus.workspace.WorkspaceAllocator;
 import org.springframework.stereotype.Service;
-import software.amazon.awssdk.core.sync.ResponseTransformer;
+import software.amazon.awssdk.core.ResponseInputStream;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.*;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * S3 기반 코드 저장소 서비스 구현
  *
  * S3에서 코드 zip을 다운로드하고 작업 디렉터리에 압축 해제
+ * 코드 캐시가 켜져 있으면 CodeArtifactCache에서 zip을 가져온다 (캐시 적중 시 다운로드 없음)
+ * 캐시를 쓰지 않으면 S3 응답 스트림에서 바로 압축 해제한다 (agent.extract.streaming)
+ * shareExtractedTrees가 켜져 있으면 버전별로 한 번만 압축을 풀고 작업 디렉터리는 심볼릭 링크로 구성한다
+ * - 공유 트리는 warm 컨테이너에 읽기 전용으로 마운트되어 있어 root로 실행해도 원본을 직접 수정할 수 없다 (EROFS)
+ * - 디렉터리는 요청마다 새로 만들므로 새 파일 생성, 링크를 지우고 다시 쓰기는 작업 디렉터리 안에서만 일어난다
+ * - 링크가 가리키는 트리는 요청이 끝날 때(releaseWorkingDirectory)까지 캐시에서 제거되지 않는다
+ *
+ * agent.docker.execUser로 root가 아닌 사용자를 지정하면 작업 디렉터리의 디렉터리만 쓰기 가능하게 연다. (파일 권한은 그대로)
  */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class S3CodeStorageService implements CodeStorageService {
 
+    private static final Set<PosixFilePermission> SCRATCH_DIRECTORY = PosixFilePermissions.fromString("rwxrwxrwx");
+
     private final S3Client s3Client;
     private final AgentProperties agentProperties;
+    private final CodeArtifactCache codeArtifactCache;
+    private final ZipExtractor zipExtractor;
+    private final S3RangedDownloader rangedDownloader;
+    private final WorkspaceAllocator workspaceAllocator;
+
+    // 요청 ID → 작업 디렉터리가 링크한 공유 트리의 캐시 사용권 (요청 종료 시 반환)
+    private final Map<String, CodeArtifactCache.Lease> pinnedTrees = new ConcurrentHashMap<>();
 
     @Override
     public Path prepareWorkingDirectory(TaskMessage taskMessage) {
@@ -39,21 +63,55 @@ public class S3CodeStorageService implements CodeStorageService {
 
         try {
             // 1. 작업 디렉터리 생성
+            releaseWorkingDirectory(requestId);
             Path workingDir = createWorkingDirectory(requestId);
 
-            // 2. S3에서 zip 다운로드
-            Path zipFilePath = downloadFromS3(s3Bucket, s3Key, workingDir, requestId);
-
-            // 3. zip 압축 해제
-            extractZipFile(zipFilePath, workingDir, requestId);
+            if (codeArtifactCache.isEnabled()) {
+                // 2. 캐시에서 zip 가져오기 (없거나 변경되었으면 S3에서 다운로드)
+                CodeArtifactCache.Lease lease = codeArtifactCache.acquire(s3Bucket, s3Key);
+                boolean pinned = false;
+                try {
+                    log.info("Using cached code artifact: etag={}, {} bytes", lease.eTag(), lease.sizeBytes());
+
+                    if (agentProperties.getCodeCache().isShareExtractedTrees()) {
+                        // 3. 버전별 압축 해제 트리를 심볼릭 링크 (압축 해제는 버전당 한 번, 요청이 끝날 때까지 트리 유지)
+                        int files = linkTree(lease.extractedTree(), workingDir);
+                        pinnedTrees.put(requestId, lease);
+                        pinned = true;
+                        if (files == 0) {
+                            log.error("❌ [S3][FAIL] ZIP 파일이 비어있습니다! requestId={}, s3Key={}", requestId, s3Key);
+                        }
+                    } else {
+                        // 3. zip 압축 해제 (캐시된 zip은 유지)
+                        zipExtractor.extract(lease.path(), workingDir, requestId);
+                    }
+                } finally {
+                    if (!pinned) {
+                        lease.close();
+                    }
+                }
+            } else if (agentProperties.getExtract().isStreaming()) {
+                // 2~3. S3 응답 스트림에서 바로 압축 해제 (임시 zip 파일 없음)
+                streamExtractFromS3(s3Bucket, s3Key, workingDir, requestId);
+            } else {
+                // 2. S3에서 zip 다운로드
+                Path zipFilePath = downloadFromS3(s3Bucket, s3Key, workingDir, requestId);
+
+                // 3. zip 압축 해제
+                zipExtractor.extract(zipFilePath, workingDir, requestId);
+
+                // 4. zip 파일 삭제 (압축 해제 후 불필요)
+                Files.deleteIfExists(zipFilePath);
+            }
 
-            // 4. zip 파일 삭제 (압축 해제 후 불필요)
-            Files.deleteIfExists(zipFilePath);
+            // root가 아닌 실행 사용자가 새 파일을 만들 수 있도록 디렉터리만 개방
+            grantAccess(workingDir);
 
             log.info("Successfully prepared working directory: {}", workingDir);
             return workingDir;
 
         } catch (Exception e) {
+            releaseWorkingDirectory(requestId);
             String errorMsg = String.format(
                     "Failed to prepare working directory for requestId=%s, s3Bucket=%s, s3Key=%s",
                     requestId, s3Bucket, s3Key
@@ -63,6 +121,14 @@ public class S3CodeStorageService implements CodeStorageService {
         }
     }
 
+    @Override
+    public void releaseWorkingDirectory(String requestId) {
+        CodeArtifactCache.Lease lease = pinnedTrees.remove(requestId);
+        if (lease != null) {
+            lease.close();
+        }
+    }
+
     /**
      * S3 버킷 이름 결정
      * 우선순위 1: TaskMessage에 포함된 s3Bucket
@@ -79,11 +145,10 @@ public class S3CodeStorageService implements CodeStorageService {
 
     /**
      * 작업 디렉터리 생성
-     * 경로: {taskBaseDir}/{requestId}
+     * 경로: {taskBaseDir}/{requestId} 또는 {tmpfs.directory}/{requestId} (WorkspaceAllocator가 결정)
      */
     private Path createWorkingDirectory(String requestId) throws IOException {
-        String baseDir = agentProperties.getTaskBaseDir();
-        Path workingDir = Paths.get(baseDir, requestId);
+        Path workingDir = workspaceAllocator.allocate(requestId);
 
         // 디렉터리가 이미 존재하면 삭제 후 재생성 (깨끗한 상태 보장)
         if (Files.exists(workingDir)) {
@@ -105,14 +170,9 @@ public class S3CodeStorageService implements CodeStorageService {
 
         log.info("Downloading from S3: s3://{}/{} -> {}", bucket, key, zipFilePath);
 
-        GetObjectRequest getObjectRequest = GetObjectRequest.builder()
-                .bucket(bucket)
-                .key(key)
-                .build();
-
         try {
-            s3Client.getObject(getObjectRequest, ResponseTransformer.toFile(zipFilePath));
-            log.info("Successfully downloaded zip file: {} bytes", Files.size(zipFilePath));
+            S3RangedDownloader.Download download = rangedDownloader.download(bucket, key, null, zipFilePath);
+            log.info("Successfully downloaded zip file: {} bytes", download.sizeBytes());
             return zipFilePath;
 
         } catch (Exception e) {
@@ -126,46 +186,75 @@ public class S3CodeStorageService implements CodeStorageService {
     }
 
     /**
-     * zip 파일 압축 해제
-     * zip 내의 디렉터리 구조를 유지하면서 추출
+     * S3 GetObject 응답 스트림을 바로 압축 해제
+     * 디스크에는 압축 해제된 파일만 쓰고, 첫 바이트 수신과 동시에 추출을 시작한다.
      */
-    private void extractZipFile(Path zipFilePath, Path targetDir, String requestId) throws IOException {
-        log.info("Extracting zip file: {} -> {}", zipFilePath, targetDir);
+    private void streamExtractFromS3(String bucket, String key, Path workingDir, String requestId)
+            throws IOException {
+        log.info("Streaming from S3: s3://{}/{} -> {}", bucket, key, workingDir);
 
-        int extractedFiles = 0;
-        try (ZipInputStream zipInputStream = new ZipInputStream(Files.newInputStream(zipFilePath))) {
-            ZipEntry entry;
-
-            while ((entry = zipInputStream.getNextEntry()) != null) {
-                Path targetPath = targetDir.resolve(entry.getName());
+        GetObjectRequest getObjectRequest = GetObjectRequest.builder()
+                .bucket(bucket)
+                .key(key)
+                .build();
 
-                // 디렉터리 순회 공격 방지: targetPath가 targetDir 밖을 가리키는지 확인
-                if (!targetPath.normalize().startsWith(targetDir.normalize())) {
-                    log.warn("Suspicious zip entry detected, skipping: {}", entry.getName());
-                    continue;
-                }
+        try (ResponseInputStream<GetObjectResponse> inputStream = s3Client.getObject(getObjectRequest)) {
+            log.info("Streaming zip: {} bytes (etag={})",
+                    inputStream.response().contentLength(), inputStream.response().eTag());
+            zipExtractor.extract(inputStream, workingDir, requestId);
 
-                if (entry.isDirectory()) {
-                    Files.createDirectories(targetPath);
-                } else {
-                    // 부모 디렉터리 생성
-                    Files.createDirectories(targetPath.getParent());
+            // central directory 등 남은 바이트를 읽어 연결을 재사용할 수 있게 함
+            inputStream.transferTo(OutputStream.nullOutputStream());
+        }
+    }
 
-                    // 파일 추출
-                    Files.copy(zipInputStream, targetPath, StandardCopyOption.REPLACE_EXISTING);
-                    extractedFiles++;
-                }
+    /**
+     * 공유 압축 해제 트리를 작업 디렉터리에 심볼릭 링크로 구성
+     * 디렉터리는 요청마다 새로 만들어 쓰기 가능(scratch)하고, 파일은 원본 트리의 절대 경로를 가리킨다.
+     * (트리는 컨테이너에 같은 경로로 읽기 전용 마운트되므로 호스트와 컨테이너에서 같은 파일로 풀린다)
+     */
+    private int linkTree(Path sourceTree, Path workingDir) throws IOException {
+        Path tree = sourceTree.toAbsolutePath().normalize();
+        int[] files = {0};
+
+        Files.walkFileTree(tree, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Files.createDirectories(workingDir.resolve(tree.relativize(dir).toString()));
+                return FileVisitResult.CONTINUE;
+            }
 
-                zipInputStream.closeEntry();
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.createSymbolicLink(workingDir.resolve(tree.relativize(file).toString()), file);
+                files[0]++;
+                return FileVisitResult.CONTINUE;
             }
-        }
+        });
 
-        log.info("Successfully extracted {} files from zip for requestId={}", extractedFiles, requestId);
+        log.info("Linked code tree into working directory: {} files", files[0]);
+        return files[0];
+    }
 
-        if (extractedFiles == 0) {
-            log.error("❌ [S3][FAIL] ZIP 파일이 비어있습니다! requestId={}, zipFile={}", requestId, zipFilePath);
-            log.error("   S3 Key: {}", zipFilePath.getFileName());
-            // 실행은 계속 진행 (Docker가 main.py 없음으로 실패할 것임)
+    /**
+     * execUser가 설정된 경우 작업 디렉터리의 디렉터리만 실행 사용자에게 개방 (scratch 영역)
+     * 파일 권한은 바꾸지 않으며, 링크를 따라가지 않으므로 공유 트리에는 영향이 없다.
+     */
+    private void grantAccess(Path workingDir) throws IOException {
+        String execUser = agentProperties.getDocker().getExecUser();
+        if (execUser == null || execUser.isBlank()) {
+            return;
+        }
+        try {
+            Files.walkFileTree(workingDir, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                    Files.setPosixFilePermissions(dir, SCRATCH_DIRECTORY);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (UnsupportedOperationException e) {
+            log.debug("POSIX permissions not supported, leaving defaults: {}", workingDir);
         }
     }
 
@@ -0,0 +1,284 @@
+package org.brown.nanogridplus.s3;
+
+import lombok.extern.slf4j.Slf4j;
+import org.brown.nanogridplus.config.AgentProperties;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.sync.ResponseTransformer;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * S3 객체 병렬 구간 다운로드 (byte-range GET)
+ *
+ * 단일 GetObject 스트림은 EC2 네트워크 대역폭을 다 쓰지 못하므로
+ * 큰 파일은 여러 구간으로 나누어 동시에 요청하고, 미리 크기를 잡아 둔 파일에
+ * FileChannel 위치 지정 쓰기(positional write)로 기록한다.
+ *
+ * - 첫 요청: bytes=0-(threshold-1) → 전체 크기와 ETag 확인 (HeadObject 생략)
+ * - 전체 크기가 threshold 이하이면 첫 요청으로 완료
+ * - 나머지 구간: partSize 단위, If-Match(ETag)로 도중에 객체가 바뀌면 실패
+ *
+ * 프로젝트가 동기 S3Client만 사용하므로 비동기 클라이언트/Transfer Manager 대신
+ * 전용 스레드 풀에서 동기 구간 요청을 병렬로 실행한다.
+ */
+@Slf4j
+@Component
+public class S3RangedDownloader {
+
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+    private static final int COPY_BUFFER_SIZE = 256 * 1024;
+
+    private final S3Client s3Client;
+    private final AgentProperties.DownloadConfig downloadConfig;
+    private final ThreadPoolExecutor partExecutor;
+
+    public S3RangedDownloader(S3Client s3Client, AgentProperties agentProperties) {
+        this.s3Client = s3Client;
+        this.downloadConfig = agentProperties.getS3().getDownload();
+
+        int parallelism = Math.max(1, downloadConfig.getParallelism());
+        AtomicInteger counter = new AtomicInteger();
+        this.partExecutor = new ThreadPoolExecutor(
+                parallelism, parallelism,
+                60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "s3-range-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.partExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        partExecutor.shutdownNow();
+    }
+
+    /**
+     * 다운로드 대역폭 제한 (받은 바이트 수만큼 토큰 소비)
+     */
+    @FunctionalInterface
+    public interface Throttle {
+
+        Throttle NONE = new Throttle() {
+            @Override
+            public void acquire(int bytes) {
+            }
+
+            @Override
+            public boolean isLimited() {
+                return false;
+            }
+        };
+
+        void acquire(int bytes) throws InterruptedIOException;
+
+        /**
+         * 다운로드 시작 시점에 제한이 걸려 있는지 (false면 병렬 구간 다운로드 사용)
+         */
+        default boolean isLimited() {
+            return true;
+        }
+    }
+
+    /**
+     * 다운로드 결과
+     *
+     * @param eTag 객체 ETag
+     * @param sizeBytes 받은 바이트 수
+     */
+    public record Download(String eTag, long sizeBytes) {
+    }
+
+    /**
+     * S3 객체를 파일로 다운로드 (큰 파일은 병렬 구간 다운로드)
+     *
+     * @param bucket S3 버킷
+     * @param key S3 키
+     * @param ifNoneMatch 지정 시 ETag가 같으면 S3Exception(304)
+     * @param target 저장할 파일 (존재하지 않아야 함)
+     */
+    public Download download(String bucket, String key, String ifNoneMatch, Path target) throws IOException {
+        return download(bucket, key, ifNoneMatch, target, Throttle.NONE);
+    }
+
+    /**
+     * S3 객체를 파일로 다운로드 (대역폭 제한 적용)
+     *
+     * 제한이 걸린 다운로드는 구간 스레드 풀을 점유하지 않도록 단일 스트림으로 받는다.
+     * (대역폭이 제한되어 있으므로 병렬 구간 요청의 이점이 없음)
+     *
+     * @param throttle 읽은 바이트만큼 호출되는 대역폭 제한
+     */
+    public Download download(String bucket, String key, String ifNoneMatch, Path target, Throttle throttle)
+            throws IOException {
+        if (throttle.isLimited()) {
+            try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                 ResponseInputStream<GetObjectResponse> in = s3Client.getObject(
+                         request(bucket, key, ifNoneMatch, null, null))) {
+                writeAt(in, channel, 0, throttle);
+                return new Download(in.response().eTag(), channel.size());
+            }
+        }
+
+        if (!downloadConfig.isRangedEnabled()) {
+            GetObjectResponse response = s3Client.getObject(request(bucket, key, ifNoneMatch, null, null),
+                    ResponseTransformer.toFile(target));
+            return new Download(response.eTag(), Files.size(target));
+        }
+
+        long threshold = Math.max(1, downloadConfig.getMultipartThresholdBytes());
+        long started = System.nanoTime();
+
+        try (FileChannel channel = FileChannel.open(target,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, StandardOpenOption.READ)) {
+
+            // 첫 구간 - 크기와 ETag 확인을 겸함
+            String eTag;
+            long totalSize;
+            try (ResponseInputStream<GetObjectResponse> first = openFirstPart(bucket, key, ifNoneMatch, threshold)) {
+                eTag = first.response().eTag();
+                totalSize = totalSize(first.response());
+                if (totalSize > threshold) {
+                    // 미리 전체 크기 할당 후 구간별로 기록
+                    channel.write(ByteBuffer.wrap(new byte[]{0}), totalSize - 1);
+                }
+                writeAt(first, channel, 0, Throttle.NONE);
+            }
+
+            if (totalSize > threshold) {
+                downloadRemainingParts(bucket, key, eTag, channel, threshold, totalSize);
+                log.info("Ranged download completed: s3://{}/{} ({} bytes, {} parts) in {}ms",
+                        bucket, key, totalSize, partCount(threshold, totalSize) + 1,
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+            }
+            return new Download(eTag, totalSize);
+        }
+    }
+
+    private ResponseInputStream<GetObjectResponse> openFirstPart(String bucket, String key, String ifNoneMatch,
+                                                                 long threshold) {
+        try {
+            return s3Client.getObject(request(bucket, key, ifNoneMatch, null, "bytes=0-" + (threshold - 1)));
+        } catch (S3Exception e) {
+            if (e.statusCode() != HTTP_RANGE_NOT_SATISFIABLE) {
+                throw e;
+            }
+            // 빈 객체는 Range 요청이 거부됨 - 일반 요청으로 받음
+            return s3Client.getObject(request(bucket, key, ifNoneMatch, null, null));
+        }
+    }
+
+    private void downloadRemainingParts(String bucket, String key, String eTag, FileChannel channel,
+                                        long offset, long totalSize) throws IOException {
+        long partSize = Math.max(1, downloadConfig.getPartSizeBytes());
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (long start = offset; start < totalSize; start += partSize) {
+            long partStart = start;
+            long partEnd = Math.min(start + partSize, totalSize) - 1;
+            futures.add(partExecutor.submit(() -> {
+                GetObjectRequest partRequest = request(bucket, key, null, eTag, "bytes=" + partStart + "-" + partEnd);
+                try (ResponseInputStream<GetObjectResponse> part = s3Client.getObject(partRequest)) {
+                    writeAt(part, channel, partStart, Throttle.NONE);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return null;
+            }));
+        }
+
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted during ranged download: s3://" + bucket + "/" + key);
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException unchecked) {
+                throw unchecked.getCause();
+            }
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IOException("Ranged download failed: s3://" + bucket + "/" + key, cause);
+        }
+    }
+
+    /**
+     * 스트림을 파일의 지정 위치부터 기록 (위치 지정 쓰기라 여러 스레드가 같은 채널을 공유 가능)
+     */
+    private static void writeAt(InputStream in, FileChannel channel, long position, Throttle throttle)
+            throws IOException {
+        byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        long offset = position;
+        int read;
+        while ((read = in.readNBytes(buffer, 0, buffer.length)) > 0) {
+            throttle.acquire(read);
+            ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, read);
+            while (chunk.hasRemaining()) {
+                offset += channel.write(chunk, offset);
+            }
+        }
+    }
+
+    /**
+     * Content-Range(bytes 0-99/12345)에서 전체 크기 추출, 없으면 Content-Length
+     */
+    private static long totalSize(GetObjectResponse response) {
+        String contentRange = response.contentRange();
+        if (contentRange != null) {
+            int slash = contentRange.lastIndexOf('/');
+            if (slash >= 0 && !contentRange.endsWith("*")) {
+                return Long.parseLong(contentRange.substring(slash + 1).trim());
+            }
+        }
+        return response.contentLength() != null ? response.contentLength() : 0;
+    }
+
+    private long partCount(long offset, long totalSize) {
+        long partSize = Math.max(1, downloadConfig.getPartSizeBytes());
+        return (totalSize - offset + partSize - 1) / partSize;
+    }
+
+    private static GetObjectRequest request(String bucket, String key, String ifNoneMatch, String ifMatch, String range) {
+        GetObjectRequest.Builder builder = GetObjectRequest.builder().bucket(bucket).key(key);
+        if (ifNoneMatch != null) {
+            builder.ifNoneMatch(ifNoneMatch);
+        }
+        if (ifMatch != null) {
+            builder.ifMatch(ifMatch);
+        }
+        if (range != null) {
+            builder.range(range);
+        }
+        return builder.build();
+    }
+}
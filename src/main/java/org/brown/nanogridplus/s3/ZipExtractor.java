@@ -0,0 +1,261 @@
+package org.brown.nanogridplus.s3;
+
+import lombok.extern.slf4j.Slf4j;
+import org.brown.nanogridplus.config.AgentProperties;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+/**
+ * 코드 zip 압축 해제
+ *
+ * zip 내의 디렉터리 구조를 유지하면서 추출하고,
+ * 대상 디렉터리 밖을 가리키는 항목(디렉터리 순회 공격)은 건너뛴다.
+ *
+ * 파일(zip)과 스트림(S3 GetObject 응답) 모두 같은 방식으로 처리하며,
+ * 헤더에 적힌 크기를 믿지 않고 실제로 쓴 바이트를 세어 크기 제한을 적용한다.
+ * 제한을 넘으면 ZipException (CODE_BUNDLE, 재시도 불가)
+ *
+ * 디스크에 있는 큰 zip(parallelMinArchiveBytes 이상)은 ZipFile로 central directory를 읽고
+ * 항목별로 전용 ForkJoinPool에서 병렬로 압축 해제한다. (스레드별 direct buffer 재사용)
+ */
+@Slf4j
+@Component
+public class ZipExtractor {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final AgentProperties.ExtractConfig extractConfig;
+    private final ForkJoinPool extractPool;
+    private final ThreadLocal<ByteBuffer> directBuffers =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
+
+    public ZipExtractor(AgentProperties agentProperties) {
+        this.extractConfig = agentProperties.getExtract();
+        int parallelism = extractConfig.getParallelism() > 0
+                ? extractConfig.getParallelism()
+                : Runtime.getRuntime().availableProcessors();
+        this.extractPool = new ForkJoinPool(parallelism);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        extractPool.shutdown();
+    }
+
+    /**
+     * zip 파일 압축 해제
+     *
+     * @param zipFilePath 압축 파일
+     * @param targetDir 압축을 풀 디렉터리
+     * @param requestId 로그용 요청 ID
+     * @return 추출한 파일 수
+     */
+    public int extract(Path zipFilePath, Path targetDir, String requestId) throws IOException {
+        log.info("Extracting zip file: {} -> {}", zipFilePath, targetDir);
+
+        if (extractConfig.isParallelEnabled() && Files.size(zipFilePath) >= extractConfig.getParallelMinArchiveBytes()) {
+            return extractParallel(zipFilePath, targetDir, requestId);
+        }
+
+        try (InputStream inputStream = Files.newInputStream(zipFilePath)) {
+            return extract(inputStream, targetDir, requestId);
+        }
+    }
+
+    /**
+     * zip 스트림 압축 해제 (첫 바이트부터 바로 추출, 임시 파일 없음)
+     * 스트림은 호출한 쪽에서 닫는다.
+     *
+     * @param inputStream zip 데이터 스트림
+     * @param targetDir 압축을 풀 디렉터리
+     * @param requestId 로그용 요청 ID
+     * @return 추출한 파일 수
+     */
+    public int extract(InputStream inputStream, Path targetDir, String requestId) throws IOException {
+        int extractedFiles = 0;
+        int entries = 0;
+        long totalBytes = 0;
+        byte[] buffer = new byte[BUFFER_SIZE];
+
+        ZipInputStream zipInputStream = new ZipInputStream(inputStream);
+        ZipEntry entry;
+
+        while ((entry = zipInputStream.getNextEntry()) != null) {
+            if (++entries > extractConfig.getMaxEntries()) {
+                throw new ZipException("Too many zip entries (limit " + extractConfig.getMaxEntries() + ")");
+            }
+
+            Path targetPath = targetDir.resolve(entry.getName());
+
+            // 디렉터리 순회 공격 방지: targetPath가 targetDir 밖을 가리키는지 확인
+            if (!targetPath.normalize().startsWith(targetDir.normalize())) {
+                log.warn("Suspicious zip entry detected, skipping: {}", entry.getName());
+                continue;
+            }
+
+            if (entry.isDirectory()) {
+                Files.createDirectories(targetPath);
+            } else {
+                // 부모 디렉터리 생성
+                Files.createDirectories(targetPath.getParent());
+
+                // 파일 추출 (쓰는 동안 크기 제한 확인)
+                totalBytes += copyEntry(zipInputStream, targetPath, entry.getName(), totalBytes, buffer);
+                extractedFiles++;
+            }
+
+            zipInputStream.closeEntry();
+        }
+
+        log.info("Successfully extracted {} files ({} bytes) from zip for requestId={}",
+                extractedFiles, totalBytes, requestId);
+
+        if (extractedFiles == 0) {
+            log.error("❌ [S3][FAIL] ZIP 파일이 비어있습니다! requestId={}, targetDir={}", requestId, targetDir);
+            // 실행은 계속 진행 (Docker가 main.py 없음으로 실패할 것임)
+        }
+        return extractedFiles;
+    }
+
+    /**
+     * central directory 기반 병렬 압축 해제
+     * 디렉터리를 먼저 순차로 만든 뒤, 파일 항목을 ForkJoinPool에서 나누어 추출한다.
+     */
+    private int extractParallel(Path zipFilePath, Path targetDir, String requestId) throws IOException {
+        long started = System.nanoTime();
+        Path normalizedTarget = targetDir.normalize();
+        List<ZipEntry> fileEntries = new ArrayList<>();
+
+        try (ZipFile zipFile = new ZipFile(zipFilePath.toFile())) {
+            if (zipFile.size() > extractConfig.getMaxEntries()) {
+                throw new ZipException("Too many zip entries (limit " + extractConfig.getMaxEntries() + ")");
+            }
+
+            Enumeration<? extends ZipEntry> enumeration = zipFile.entries();
+            while (enumeration.hasMoreElements()) {
+                ZipEntry entry = enumeration.nextElement();
+                Path targetPath = targetDir.resolve(entry.getName());
+
+                // 디렉터리 순회 공격 방지: targetPath가 targetDir 밖을 가리키는지 확인
+                if (!targetPath.normalize().startsWith(normalizedTarget)) {
+                    log.warn("Suspicious zip entry detected, skipping: {}", entry.getName());
+                    continue;
+                }
+
+                if (entry.isDirectory()) {
+                    Files.createDirectories(targetPath);
+                } else {
+                    Files.createDirectories(targetPath.getParent());
+                    fileEntries.add(entry);
+                }
+            }
+
+            AtomicLong totalBytes = new AtomicLong();
+            try {
+                extractPool.submit(() -> fileEntries.parallelStream().forEach(entry -> {
+                    try {
+                        inflateEntry(zipFile, entry, targetDir.resolve(entry.getName()), totalBytes);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                })).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while extracting " + zipFilePath);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof UncheckedIOException unchecked) {
+                    throw unchecked.getCause();
+                }
+                throw new IOException("Parallel extraction failed: " + zipFilePath, cause);
+            }
+
+            log.info("Successfully extracted {} files ({} bytes) in parallel for requestId={} in {}ms",
+                    fileEntries.size(), totalBytes.get(), requestId,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        }
+
+        if (fileEntries.isEmpty()) {
+            log.error("❌ [S3][FAIL] ZIP 파일이 비어있습니다! requestId={}, zipFile={}", requestId, zipFilePath);
+        }
+        return fileEntries.size();
+    }
+
+    /**
+     * 항목 하나를 스레드별 direct buffer로 파일에 기록 (크기 제한 확인)
+     */
+    private void inflateEntry(ZipFile zipFile, ZipEntry entry, Path targetPath, AtomicLong totalBytes)
+            throws IOException {
+        ByteBuffer buffer = directBuffers.get();
+        long written = 0;
+
+        try (ReadableByteChannel in = Channels.newChannel(zipFile.getInputStream(entry));
+             FileChannel out = FileChannel.open(targetPath,
+                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            buffer.clear();
+            while (in.read(buffer) != -1) {
+                buffer.flip();
+                int chunk = buffer.remaining();
+                written += chunk;
+                if (written > extractConfig.getMaxEntryBytes()) {
+                    throw new ZipException("Zip entry too large: " + entry.getName()
+                            + " (limit " + extractConfig.getMaxEntryBytes() + " bytes)");
+                }
+                if (totalBytes.addAndGet(chunk) > extractConfig.getMaxUncompressedBytes()) {
+                    throw new ZipException("Zip uncompressed size exceeds limit of "
+                            + extractConfig.getMaxUncompressedBytes() + " bytes");
+                }
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                buffer.clear();
+            }
+        }
+    }
+
+    private long copyEntry(InputStream in, Path targetPath, String entryName, long totalSoFar, byte[] buffer)
+            throws IOException {
+        long written = 0;
+        try (OutputStream out = Files.newOutputStream(targetPath,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                written += read;
+                if (written > extractConfig.getMaxEntryBytes()) {
+                    throw new ZipException("Zip entry too large: " + entryName
+                            + " (limit " + extractConfig.getMaxEntryBytes() + " bytes)");
+                }
+                if (totalSoFar + written > extractConfig.getMaxUncompressedBytes()) {
+                    throw new ZipException("Zip uncompressed size exceeds limit of "
+                            + extractConfig.getMaxUncompressedBytes() + " bytes");
+                }
+                out.write(buffer, 0, read);
+            }
+        }
+        return written;
+    }
+}
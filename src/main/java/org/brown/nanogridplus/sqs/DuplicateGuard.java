@@ -0,0 +1,273 @@
+package org.brown.nanogridplus.sqs;
+
+import lombok.extern.slf4j.Slf4j;
+import org.brown.nanogridplus.config.AgentProperties;
+import org.brown.nanogridplus.metrics.StatsProvider;
+import org.brown.nanogridplus.model.TaskMessage;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * requestId 기준 중복 실행 방지 (Idempotency Guard)
+ *
+ * SQS Standard 큐는 at-least-once 전달이므로 Visibility Timeout 이후
+ * 같은 requestId가 다시 전달될 수 있다. 사용자 코드를 다시 실행하지 않도록
+ * 실행 전에 requestId를 선점(claim)한다.
+ *
+ * - 1차: 프로세스 내 LRU (같은 Agent로 재전달된 경우, 네트워크 호출 없음)
+ * - 2차: Redis SET NX + TTL (다른 Agent로 재전달된 경우)
+ *   값은 "RUNNING:{선점 토큰}"이고, 해제는 토큰이 같을 때만 삭제하는 Lua 스크립트로 한 번에 처리한다.
+ *   (TTL 만료 후 다른 Agent가 다시 선점한 키를 지우지 않도록)
+ * - 실행 중 표시 TTL은 메시지가 이 Agent에 숨겨져 있을 수 있는 최대 시간 (heartbeat 연장 한도 또는 Visibility Timeout)
+ *   이후에는 SQS가 메시지를 다시 보여 주므로 선점도 함께 풀린다. (inProgressTtlSeconds > 0이면 고정값 사용)
+ * - Redis 장애 시 로컬 LRU만으로 동작 (실행을 막지 않음)
+ *
+ * 결과:
+ * - ACQUIRED: 처음 실행 → 실행 진행
+ * - IN_PROGRESS: 다른 실행이 진행 중 → 메시지를 잠시 숨겨 나중에 다시 확인
+ * - COMPLETED: 이미 완료 → 메시지 즉시 삭제
+ */
+@Slf4j
+@Component
+public class DuplicateGuard implements StatsProvider {
+
+    private static final String RUNNING_PREFIX = "RUNNING:";
+    private static final String DONE = "DONE";
+
+    // KEYS[1] = 키, ARGV[1] = 선점 시 기록한 값: 값이 같을 때만 삭제
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+
+    public enum Claim {
+        ACQUIRED,
+        IN_PROGRESS,
+        COMPLETED
+    }
+
+    private final StringRedisTemplate redisTemplate;
+    private final AgentProperties agentProperties;
+    private final AgentProperties.DedupConfig dedupConfig;
+    private final Map<String, LocalEntry> localEntries;
+    // 이 Agent가 Redis에 기록한 선점 값 (requestId → "RUNNING:{token}")
+    private final Map<String, String> ownedClaims = new ConcurrentHashMap<>();
+
+    // 통계
+    private final AtomicLong acquired = new AtomicLong();
+    private final AtomicLong duplicatesInProgress = new AtomicLong();
+    private final AtomicLong duplicatesCompleted = new AtomicLong();
+    private final AtomicLong redisHits = new AtomicLong();
+    private final AtomicLong redisErrors = new AtomicLong();
+
+    public DuplicateGuard(StringRedisTemplate redisTemplate, AgentProperties agentProperties) {
+        this.redisTemplate = redisTemplate;
+        this.agentProperties = agentProperties;
+        this.dedupConfig = agentProperties.getDedup();
+
+        int maxEntries = Math.max(1, dedupConfig.getLocalMaxEntries());
+        this.localEntries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, LocalEntry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * requestId 실행 선점 시도
+     *
+     * @param taskMessage 실행할 작업 (requestId, 실행 중 표시 TTL 계산용 timeoutMs)
+     * @return 선점 결과
+     */
+    public Claim claim(TaskMessage taskMessage) {
+        if (!dedupConfig.isEnabled()) {
+            return Claim.ACQUIRED;
+        }
+
+        String requestId = taskMessage.getRequestId();
+        long inProgressTtlMillis = inProgressTtlMillis(taskMessage);
+        long now = System.currentTimeMillis();
+        synchronized (localEntries) {
+            LocalEntry entry = localEntries.get(requestId);
+            if (entry != null && entry.expiresAtMillis > now) {
+                return countDuplicate(entry.completed ? Claim.COMPLETED : Claim.IN_PROGRESS);
+            }
+            // 로컬에서 먼저 선점 (같은 Agent 내 동시 중복 방지)
+            localEntries.put(requestId, new LocalEntry(false, now + inProgressTtlMillis));
+        }
+
+        Claim remote = claimRemote(requestId, inProgressTtlMillis);
+        if (remote != Claim.ACQUIRED) {
+            synchronized (localEntries) {
+                if (remote == Claim.COMPLETED) {
+                    localEntries.put(requestId, new LocalEntry(true, now + completedTtlMillis()));
+                } else {
+                    // 다른 Agent가 실행 중 - 로컬 선점 취소 (다음 확인 시 Redis를 다시 조회)
+                    localEntries.remove(requestId);
+                }
+            }
+            redisHits.incrementAndGet();
+            return countDuplicate(remote);
+        }
+
+        acquired.incrementAndGet();
+        return Claim.ACQUIRED;
+    }
+
+    /**
+     * 실행 완료 표시 (이후 재전달된 메시지는 바로 삭제됨)
+     */
+    public void complete(String requestId) {
+        if (!dedupConfig.isEnabled()) {
+            return;
+        }
+
+        synchronized (localEntries) {
+            localEntries.put(requestId, new LocalEntry(true, System.currentTimeMillis() + completedTtlMillis()));
+        }
+        ownedClaims.remove(requestId);
+
+        if (dedupConfig.isRedisEnabled()) {
+            try {
+                redisTemplate.opsForValue().set(key(requestId), DONE,
+                        Duration.ofSeconds(dedupConfig.getCompletedTtlSeconds()));
+            } catch (Exception e) {
+                redisErrors.incrementAndGet();
+                log.warn("[DEDUP] Redis 완료 표시 실패 (로컬 LRU만 적용): requestId={}, error={}",
+                        requestId, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 선점 해제 (실행 실패 후 재시도가 가능하도록)
+     */
+    public void release(String requestId) {
+        if (!dedupConfig.isEnabled()) {
+            return;
+        }
+
+        synchronized (localEntries) {
+            LocalEntry entry = localEntries.get(requestId);
+            if (entry != null && !entry.completed) {
+                localEntries.remove(requestId);
+            }
+        }
+
+        String owned = ownedClaims.remove(requestId);
+        if (dedupConfig.isRedisEnabled() && owned != null) {
+            try {
+                redisTemplate.execute(RELEASE_SCRIPT, List.of(key(requestId)), owned);
+            } catch (Exception e) {
+                redisErrors.incrementAndGet();
+                log.warn("[DEDUP] Redis 선점 해제 실패 (TTL 만료 후 해제됨): requestId={}, error={}",
+                        requestId, e.getMessage());
+            }
+        }
+    }
+
+    public int getSuppressVisibilitySeconds() {
+        return dedupConfig.getSuppressVisibilitySeconds();
+    }
+
+    private Claim claimRemote(String requestId, long inProgressTtlMillis) {
+        if (!dedupConfig.isRedisEnabled()) {
+            return Claim.ACQUIRED;
+        }
+
+        try {
+            String key = key(requestId);
+            String running = RUNNING_PREFIX + UUID.randomUUID();
+            Boolean set = redisTemplate.opsForValue().setIfAbsent(key, running, Duration.ofMillis(inProgressTtlMillis));
+            if (Boolean.TRUE.equals(set)) {
+                ownedClaims.put(requestId, running);
+                return Claim.ACQUIRED;
+            }
+
+            String value = redisTemplate.opsForValue().get(key);
+            if (value == null) {
+                // 조회 사이에 만료됨 - 실행 허용 (선점 기록이 없으므로 해제는 TTL에 맡김)
+                return Claim.ACQUIRED;
+            }
+            return DONE.equals(value) ? Claim.COMPLETED : Claim.IN_PROGRESS;
+
+        } catch (Exception e) {
+            redisErrors.incrementAndGet();
+            log.warn("[DEDUP] Redis 선점 실패 (로컬 LRU만 적용): requestId={}, error={}", requestId, e.getMessage());
+            return Claim.ACQUIRED;
+        }
+    }
+
+    private Claim countDuplicate(Claim claim) {
+        if (claim == Claim.COMPLETED) {
+            duplicatesCompleted.incrementAndGet();
+        } else {
+            duplicatesInProgress.incrementAndGet();
+        }
+        return claim;
+    }
+
+    private String key(String requestId) {
+        return dedupConfig.getKeyPrefix() + requestId;
+    }
+
+    /**
+     * 실행 중 표시 TTL: 이 Agent가 메시지를 숨겨 둘 수 있는 최대 시간
+     * heartbeat가 켜져 있으면 timeoutMs + graceMillis까지 연장되고 마지막 연장분만큼 더 숨겨진다.
+     */
+    private long inProgressTtlMillis(TaskMessage taskMessage) {
+        if (dedupConfig.getInProgressTtlSeconds() > 0) {
+            return TimeUnit.SECONDS.toMillis(dedupConfig.getInProgressTtlSeconds());
+        }
+        AgentProperties.SqsConfig sqsConfig = agentProperties.getSqs();
+        long visibilityMillis = TimeUnit.SECONDS.toMillis(sqsConfig.getVisibilityTimeoutSeconds());
+        AgentProperties.HeartbeatConfig heartbeat = sqsConfig.getHeartbeat();
+        if (!heartbeat.isEnabled()) {
+            return visibilityMillis;
+        }
+        int timeoutMs = taskMessage.getTimeoutMs();
+        long taskTimeoutMillis = timeoutMs > 0 ? timeoutMs : agentProperties.getDocker().getDefaultTimeoutMs();
+        long extendedMillis = taskTimeoutMillis + heartbeat.getGraceMillis()
+                + TimeUnit.SECONDS.toMillis(heartbeat.getExtensionSeconds());
+        return Math.max(visibilityMillis, extendedMillis);
+    }
+
+    private long completedTtlMillis() {
+        return TimeUnit.SECONDS.toMillis(dedupConfig.getCompletedTtlSeconds());
+    }
+
+    @Override
+    public String statsName() {
+        return "dedup";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", dedupConfig.isEnabled());
+        stats.put("redisEnabled", dedupConfig.isRedisEnabled());
+        synchronized (localEntries) {
+            stats.put("localEntries", localEntries.size());
+        }
+        stats.put("acquired", acquired.get());
+        stats.put("duplicatesInProgress", duplicatesInProgress.get());
+        stats.put("duplicatesCompleted", duplicatesCompleted.get());
+        stats.put("redisHits", redisHits.get());
+        stats.put("redisErrors", redisErrors.get());
+        return stats;
+    }
+
+    private record LocalEntry(boolean completed, long expiresAtMillis) {
+    }
+}
@@ -0,0 +1,39 @@
+package org.brown.nanogridplus.sqs;
+
+/**
+ * 작업 처리 실패 유형
+ *
+ * retryable == true  : 일시적 오류 → 지수 백오프 후 재시도
+ * retryable == false : 재시도해도 실패할 메시지(poison) → 빠르게 DLQ로 이동
+ */
+public enum FailureCategory {
+
+    S3_TRANSIENT("S3", true),                    // S3 5xx, 스로틀링, 네트워크 오류
+    S3_NOT_FOUND("S3", false),                   // NoSuchKey, NoSuchBucket, 403/404
+    CODE_BUNDLE("CODE_BUNDLE", false),           // 손상된 zip 등 코드 번들 자체의 문제
+    DOCKER("DOCKER", true),                      // 컨테이너 획득/unpause 실패 등 Docker 오류
+    DEPENDENCY("DEPENDENCY", true),              // requirements.txt 설치 실패 (PyPI 일시 오류, 제한 시간 초과 등)
+    DEPENDENCY_INVALID("DEPENDENCY", false),     // requirements.txt 자체 오류 (없는 패키지/버전, 코드 번들 밖 파일 참조)
+    AWS_TRANSIENT("AWS", true),                  // 기타 AWS 스로틀링/5xx, SDK 클라이언트 오류 (타임아웃 등)
+    RUNTIME_NOT_SUPPORTED("RUNTIME_NOT_SUPPORTED", false),
+    UNKNOWN("UNKNOWN", true);
+
+    private final String tag;
+    private final boolean retryable;
+
+    FailureCategory(String tag, boolean retryable) {
+        this.tag = tag;
+        this.retryable = retryable;
+    }
+
+    /**
+     * 로그 태그 ([FAIL][{tag}])
+     */
+    public String tag() {
+        return tag;
+    }
+
+    public boolean isRetryable() {
+        return retryable;
+    }
+}
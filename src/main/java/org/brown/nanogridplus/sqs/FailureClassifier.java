@@ -0,0 +1,88 @@
+package org.brown.nanogridplus.sqs;
+
+import com.github.dockerjava.api.exception.DockerClientException;
+import com.github.dockerjava.api.exception.DockerException;
+import org.brown.nanogridplus.docker.DependencyInstallException;
+import org.brown.nanogridplus.docker.UnsupportedRuntimeException;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.exception.SdkServiceException;
+import software.amazon.awssdk.services.s3.model.NoSuchBucketException;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.util.zip.ZipException;
+
+/**
+ * 예외를 FailureCategory로 분류
+ *
+ * 예외 메시지 문자열 대신 예외 타입(원인 체인 전체)을 기준으로 판단한다.
+ * 가장 안쪽의 구체적인 원인부터 확인하여 처음 매칭되는 유형을 반환한다.
+ */
+@Component
+public class FailureClassifier {
+
+    private static final int MAX_CAUSE_DEPTH = 16;
+
+    /**
+     * 예외 분류
+     *
+     * @param throwable 처리 중 발생한 예외
+     * @return 실패 유형 (매칭되지 않으면 UNKNOWN)
+     */
+    public FailureCategory classify(Throwable throwable) {
+        Throwable current = throwable;
+        FailureCategory fallback = FailureCategory.UNKNOWN;
+
+        for (int depth = 0; current != null && depth < MAX_CAUSE_DEPTH; depth++) {
+            FailureCategory category = classifySingle(current);
+            if (category == FailureCategory.AWS_TRANSIENT) {
+                // 일반 AWS 오류는 더 구체적인 원인이 있는지 계속 확인
+                fallback = category;
+            } else if (category != null) {
+                return category;
+            }
+
+            if (current.getCause() == current) {
+                break;
+            }
+            current = current.getCause();
+        }
+
+        return fallback;
+    }
+
+    private FailureCategory classifySingle(Throwable t) {
+        if (t instanceof NoSuchKeyException || t instanceof NoSuchBucketException) {
+            return FailureCategory.S3_NOT_FOUND;
+        }
+        if (t instanceof S3Exception s3Exception) {
+            int status = s3Exception.statusCode();
+            if (status == 403 || status == 404) {
+                return FailureCategory.S3_NOT_FOUND;
+            }
+            return FailureCategory.S3_TRANSIENT;
+        }
+        if (t instanceof SdkServiceException serviceException) {
+            return serviceException.isThrottlingException() || serviceException.statusCode() >= 500
+                    ? FailureCategory.AWS_TRANSIENT
+                    : null;
+        }
+        if (t instanceof SdkClientException) {
+            return FailureCategory.AWS_TRANSIENT;
+        }
+        if (t instanceof DependencyInstallException dependencyException) {
+            return dependencyException.isPermanent() ? FailureCategory.DEPENDENCY_INVALID : FailureCategory.DEPENDENCY;
+        }
+        if (t instanceof DockerException || t instanceof DockerClientException) {
+            return FailureCategory.DOCKER;
+        }
+        if (t instanceof ZipException) {
+            return FailureCategory.CODE_BUNDLE;
+        }
+        if (t instanceof UnsupportedRuntimeException) {
+            return FailureCategory.RUNTIME_NOT_SUPPORTED;
+        }
+        return null;
+    }
+}
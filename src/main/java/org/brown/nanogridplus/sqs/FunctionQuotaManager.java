@@ -0,0 +1,235 @@
+package org.brown.nanogridplus.sqs;
+
+import lombok.extern.slf4j.Slf4j;
+import org.brown.nanogridplus.config.AgentProperties;
+import org.brown.nanogridplus.metrics.StatsProvider;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 함수(functionId)별 실행 제한
+ *
+ * 한 테넌트가 특정 함수를 대량으로 호출해도 다른 함수의 지연 시간이 유지되도록
+ * 함수마다 동시 실행 수와 초당 실행 수(토큰 버킷)를 제한한다.
+ * 함수 사이의 실행 순서는 PrefetchBuffer가 Deficit Round Robin으로 결정하며,
+ * 이 클래스는 가중치(quantum)를 제공한다.
+ *
+ * - PrefetchBuffer: check()로 확인 (제한에 걸린 작업은 작업당 한 번만 recordThrottled()) → TaskPipeline.submit()에서 acquire()
+ * - 실행 단계 종료: release()
+ */
+@Slf4j
+@Component
+public class FunctionQuotaManager implements StatsProvider {
+
+    private static final String UNKNOWN_FUNCTION = "unknown";
+
+    private final AgentProperties.FunctionQuotaConfig quotaConfig;
+    private final Map<String, FunctionState> states = new HashMap<>();
+
+    // 통계
+    private final AtomicLong throttledByConcurrency = new AtomicLong();
+    private final AtomicLong throttledByRate = new AtomicLong();
+
+    public FunctionQuotaManager(AgentProperties agentProperties) {
+        this.quotaConfig = agentProperties.getFunctionQuota();
+        log.info("Function quota: enabled={}, defaultMaxConcurrency={}, defaultRatePerSecond={}, overrides={}",
+                quotaConfig.isEnabled(), quotaConfig.getDefaultMaxConcurrency(),
+                quotaConfig.getDefaultRatePerSecond(), quotaConfig.getFunctions().keySet());
+    }
+
+    /**
+     * 함수 실행 제한 종류
+     */
+    public enum Limit {
+        NONE,
+        CONCURRENCY,
+        RATE
+    }
+
+    /**
+     * 지금 이 함수의 작업을 실행할 수 있는지 확인 (통계를 바꾸지 않음)
+     *
+     * @return 걸린 제한 (실행 가능하면 NONE)
+     */
+    public synchronized Limit check(String functionId) {
+        if (!quotaConfig.isEnabled()) {
+            return Limit.NONE;
+        }
+
+        FunctionState state = states.get(key(functionId));
+        if (state == null) {
+            return Limit.NONE;
+        }
+
+        if (state.maxConcurrency > 0 && state.running >= state.maxConcurrency) {
+            return Limit.CONCURRENCY;
+        }
+        if (state.ratePerSecond > 0) {
+            state.refill(System.nanoTime());
+            if (state.tokens < 1) {
+                return Limit.RATE;
+            }
+        }
+        return Limit.NONE;
+    }
+
+    public boolean canDispatch(String functionId) {
+        return check(functionId) == Limit.NONE;
+    }
+
+    /**
+     * 제한에 걸린 작업 집계 (작업 하나당 한 번 호출)
+     */
+    public void recordThrottled(Limit limit) {
+        switch (limit) {
+            case CONCURRENCY -> throttledByConcurrency.incrementAndGet();
+            case RATE -> throttledByRate.incrementAndGet();
+            default -> { }
+        }
+    }
+
+    /**
+     * 함수 하나가 실행 대기 버퍼에 둘 수 있는 최대 메시지 수 (0이면 제한 없음)
+     */
+    public int maxBuffered() {
+        return quotaConfig.isEnabled() ? Math.max(0, quotaConfig.getMaxBufferedPerFunction()) : 0;
+    }
+
+    public int getOverflowVisibilitySeconds() {
+        return quotaConfig.getOverflowVisibilitySeconds();
+    }
+
+    /**
+     * 함수 실행 시작 (동시 실행 수 증가, 토큰 소비)
+     */
+    public synchronized void acquire(String functionId) {
+        if (!quotaConfig.isEnabled()) {
+            return;
+        }
+
+        FunctionState state = states.computeIfAbsent(key(functionId), this::newState);
+        state.running++;
+        state.dispatched++;
+        if (state.ratePerSecond > 0) {
+            state.refill(System.nanoTime());
+            state.tokens = Math.max(0, state.tokens - 1);
+        }
+    }
+
+    /**
+     * 함수 실행 종료 (동시 실행 수 감소)
+     */
+    public synchronized void release(String functionId) {
+        if (!quotaConfig.isEnabled()) {
+            return;
+        }
+
+        String key = key(functionId);
+        FunctionState state = states.get(key);
+        if (state == null) {
+            return;
+        }
+        state.running = Math.max(0, state.running - 1);
+
+        // 실행 중인 작업이 없고 토큰도 가득 찼으면 상태를 유지할 필요가 없음
+        if (state.running == 0) {
+            state.refill(System.nanoTime());
+            if (state.ratePerSecond <= 0 || state.tokens >= state.burst) {
+                states.remove(key);
+            }
+        }
+    }
+
+    /**
+     * 공정 배분 가중치 (Deficit Round Robin에서 한 차례에 실행할 수 있는 작업 수)
+     */
+    public int weight(String functionId) {
+        AgentProperties.FunctionLimit limit = quotaConfig.getFunctions().get(key(functionId));
+        int weight = limit != null && limit.getWeight() != null ? limit.getWeight() : quotaConfig.getDefaultWeight();
+        return Math.max(1, weight);
+    }
+
+    private FunctionState newState(String functionId) {
+        AgentProperties.FunctionLimit limit = quotaConfig.getFunctions().get(functionId);
+
+        int maxConcurrency = limit != null && limit.getMaxConcurrency() != null
+                ? limit.getMaxConcurrency() : quotaConfig.getDefaultMaxConcurrency();
+        double ratePerSecond = limit != null && limit.getRatePerSecond() != null
+                ? limit.getRatePerSecond() : quotaConfig.getDefaultRatePerSecond();
+        int burst = limit != null && limit.getBurst() != null ? limit.getBurst() : quotaConfig.getDefaultBurst();
+        if (burst <= 0) {
+            burst = (int) Math.max(1, Math.ceil(ratePerSecond));
+        }
+
+        return new FunctionState(maxConcurrency, ratePerSecond, burst, System.nanoTime());
+    }
+
+    static String key(String functionId) {
+        return functionId != null ? functionId : UNKNOWN_FUNCTION;
+    }
+
+    @Override
+    public String statsName() {
+        return "functionQuota";
+    }
+
+    @Override
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", quotaConfig.isEnabled());
+        stats.put("throttledByConcurrency", throttledByConcurrency.get());
+        stats.put("throttledByRate", throttledByRate.get());
+
+        Map<String, Object> functions = new LinkedHashMap<>();
+        long now = System.nanoTime();
+        for (Map.Entry<String, FunctionState> entry : states.entrySet()) {
+            FunctionState state = entry.getValue();
+            state.refill(now);
+            Map<String, Object> functionStats = new LinkedHashMap<>();
+            functionStats.put("running", state.running);
+            functionStats.put("maxConcurrency", state.maxConcurrency);
+            functionStats.put("tokens", state.tokens);
+            functionStats.put("ratePerSecond", state.ratePerSecond);
+            functionStats.put("dispatched", state.dispatched);
+            functions.put(entry.getKey(), functionStats);
+        }
+        stats.put("activeFunctions", functions);
+        return stats;
+    }
+
+    /**
+     * 함수 하나의 실행 상태 (동기화된 메서드에서만 접근)
+     */
+    private static final class FunctionState {
+
+        private final int maxConcurrency;
+        private final double ratePerSecond;
+        private final int burst;
+
+        private int running;
+        private long dispatched;
+        private double tokens;
+        private long lastRefillNanos;
+
+        private FunctionState(int maxConcurrency, double ratePerSecond, int burst, long nowNanos) {
+            this.maxConcurrency = maxConcurrency;
+            this.ratePerSecond = ratePerSecond;
+            this.burst = burst;
+            this.tokens = burst;
+            this.lastRefillNanos = nowNanos;
+        }
+
+        private void refill(long nowNanos) {
+            if (ratePerSecond <= 0) {
+                return;
+            }
+            double elapsedSeconds = (nowNanos - lastRefillNanos) / 1_000_000_000.0;
+            tokens = Math.min(burst, tokens + elapsedSeconds * ratePerSecond);
+            lastRefillNanos = nowNanos;
+        }
+    }
+}
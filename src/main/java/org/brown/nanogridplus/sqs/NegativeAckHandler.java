@@ -0,0 +1,300 @@
+package org.brown.nanogridplus.sqs;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.brown.nanogridplus.config.AgentProperties;
+import org.brown.nanogridplus.metrics.StatsProvider;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityRequest;
+import software.amazon.awssdk.services.sqs.model.GetQueueAttributesRequest;
+import software.amazon.awssdk.services.sqs.model.Message;
+import software.amazon.awssdk.services.sqs.model.MessageAttributeValue;
+import software.amazon.awssdk.services.sqs.model.QueueAttributeName;
+import software.amazon.awssdk.services.sqs.model.SendMessageRequest;
+
+import jakarta.annotation.PostConstruct;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 실패한 메시지의 빠른 재시도 처리 (Negative ACK)
+ *
+ * 실패한 메시지를 그대로 두면 Visibility Timeout 전체가 지나야 재전송된다.
+ * 대신 ChangeMessageVisibility로 다음 재전송 시점을 직접 지정한다.
+ *
+ * - 일시적 오류: initialBackoffSeconds * 2^(ApproximateReceiveCount - 1), 최대 maxBackoffSeconds
+ * - poison 메시지 (재시도 불가 유형 또는 maxReceiveCount 초과):
+ *   deadLetterQueueUrl이 있으면 DLQ로 전송 후 삭제,
+ *   없으면 시작 시 GetQueueAttributes로 확인한 큐의 Redrive Policy에 맡긴다.
+ *   정책이 있으면 바로 다시 보이게 하여(Visibility 0) 몇 번의 빠른 수신 뒤 SQS가 DLQ로 옮기고,
+ *   정책도 없으면(시작 시 ERROR 로그) 수신-실패가 끝없이 반복되지 않도록 최대 백오프만큼 숨긴다
+ *
+ * returnToQueue()로 실행하지 않고 돌려보낸 메시지(과부하, 함수별 한도 초과)도 ApproximateReceiveCount가 올라가므로
+ * 이 Agent가 돌려보낸 횟수를 messageId별로 기억해 두고 poison/백오프 판단에서 뺀다. (최근 MAX_TRACKED_RETURNS건)
+ */
+@Slf4j
+@Component
+public class NegativeAckHandler implements StatsProvider {
+
+    public static final String RECEIVE_COUNT_ATTRIBUTE = "ApproximateReceiveCount";
+
+    private static final int SQS_MAX_VISIBILITY_SECONDS = 43200;
+    private static final int MAX_TRACKED_RETURNS = 10000;
+
+    private final SqsClient sqsClient;
+    private final SqsAckBatcher sqsAckBatcher;
+    private final ObjectMapper objectMapper;
+    private final AgentProperties.SqsConfig sqsConfig;
+    private final AgentProperties.RetryConfig retryConfig;
+
+    // 큐 URL → Redrive Policy의 maxReceiveCount (정책이 있는 큐만, deadLetterQueueUrl이 없을 때 시작 시 확인)
+    private final Map<String, Integer> redrivePolicies = new ConcurrentHashMap<>();
+
+    // 통계
+    private final AtomicLong retriesScheduled = new AtomicLong();
+    private final AtomicLong poisonMessages = new AtomicLong();
+    private final AtomicLong sentToDeadLetterQueue = new AtomicLong();
+    private final AtomicLong nackFailures = new AtomicLong();
+    private final AtomicLong returnedToQueue = new AtomicLong();
+
+    // messageId → 실행하지 않고 돌려보낸 횟수 (오래된 항목부터 제거)
+    private final Map<String, Integer> localReturns = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+            return size() > MAX_TRACKED_RETURNS;
+        }
+    };
+
+    public NegativeAckHandler(SqsClient sqsClient, SqsAckBatcher sqsAckBatcher, ObjectMapper objectMapper,
+                              AgentProperties agentProperties) {
+        this.sqsClient = sqsClient;
+        this.sqsAckBatcher = sqsAckBatcher;
+        this.objectMapper = objectMapper;
+        this.sqsConfig = agentProperties.getSqs();
+        this.retryConfig = sqsConfig.getRetry();
+    }
+
+    /**
+     * deadLetterQueueUrl이 없으면 수신하는 큐마다 Redrive Policy를 확인한다.
+     * 정책이 없는 큐는 poison 메시지를 DLQ로 옮길 방법이 없으므로 ERROR로 알린다.
+     */
+    @PostConstruct
+    public void detectRedrivePolicies() {
+        if (hasDeadLetterQueue()) {
+            return;
+        }
+        for (AgentProperties.QueueConfig queue : sqsConfig.resolveQueues()) {
+            String queueUrl = queue.getUrl();
+            if (queueUrl == null || queueUrl.isBlank()) {
+                continue;
+            }
+            try {
+                String policy = sqsClient.getQueueAttributes(GetQueueAttributesRequest.builder()
+                                .queueUrl(queueUrl)
+                                .attributeNames(QueueAttributeName.REDRIVE_POLICY)
+                                .build())
+                        .attributes()
+                        .get(QueueAttributeName.REDRIVE_POLICY);
+                if (policy == null || policy.isBlank()) {
+                    log.error("[CONFIG] DLQ 없음: agent.sqs.retry.deadLetterQueueUrl과 큐의 Redrive Policy가 모두 없어 "
+                                    + "poison 메시지가 {}초마다 계속 재전송됩니다. 둘 중 하나를 설정하세요: queue={}",
+                            poisonDelaySeconds(), queue.getName());
+                    continue;
+                }
+
+                int maxReceiveCount = objectMapper.readTree(policy).path("maxReceiveCount").asInt(0);
+                redrivePolicies.put(queueUrl, maxReceiveCount);
+                log.info("[CONFIG] Redrive Policy 확인: queue={}, maxReceiveCount={}", queue.getName(), maxReceiveCount);
+                if (maxReceiveCount > retryConfig.getMaxReceiveCount()) {
+                    log.warn("[CONFIG] Redrive Policy maxReceiveCount({})가 agent.sqs.retry.maxReceiveCount({})보다 커서 "
+                                    + "poison 메시지가 DLQ로 이동하기 전에 더 많이 수신됩니다: queue={}",
+                            maxReceiveCount, retryConfig.getMaxReceiveCount(), queue.getName());
+                }
+            } catch (Exception e) {
+                log.error("[CONFIG] Redrive Policy 확인 실패, poison 메시지는 {}초마다 재전송됩니다: queue={}",
+                        poisonDelaySeconds(), queue.getName(), e);
+            }
+        }
+    }
+
+    /**
+     * 실패한 메시지를 실패 유형에 맞게 재시도 예약 또는 DLQ 처리
+     *
+     * @param queueUrl 큐 URL
+     * @param message 실패한 메시지
+     * @param category 실패 유형
+     * @param reason 실패 사유 (DLQ 메시지 속성에 기록)
+     */
+    public void nack(String queueUrl, Message message, FailureCategory category, String reason) {
+        int receiveCount = attemptCount(message);
+        boolean poison = !category.isRetryable() || receiveCount >= retryConfig.getMaxReceiveCount();
+
+        try {
+            if (poison) {
+                forgetReturns(message);
+                poisonMessages.incrementAndGet();
+                handlePoison(queueUrl, message, category, reason, receiveCount);
+            } else {
+                int delaySeconds = backoffSeconds(receiveCount);
+                changeVisibility(queueUrl, message.receiptHandle(), delaySeconds);
+                retriesScheduled.incrementAndGet();
+                log.info("[RETRY][{}] {}초 후 재시도 예약 (receiveCount={})", category.tag(), delaySeconds, receiveCount);
+            }
+        } catch (Exception e) {
+            // 실패해도 Visibility Timeout 만료 후 재전송됨
+            nackFailures.incrementAndGet();
+            log.warn("Negative ACK 실패 (Visibility Timeout 만료 후 재시도됨): category={}", category, e);
+        }
+    }
+
+    /**
+     * 처리하지 않은 메시지를 짧은 Visibility로 큐에 돌려보낸다. (과부하 시 부하 분산용)
+     * 다른 Agent가 곧바로 가져갈 수 있고, 실패로 취급하지 않는다. (poison 판단의 수신 횟수에서 제외)
+     *
+     * @param queueUrl 큐 URL
+     * @param message 돌려보낼 메시지
+     * @param visibilityTimeoutSeconds 다시 보이기까지의 시간
+     */
+    public void returnToQueue(String queueUrl, Message message, int visibilityTimeoutSeconds) {
+        try {
+            changeVisibility(queueUrl, message.receiptHandle(), visibilityTimeoutSeconds);
+            recordReturn(message);
+            returnedToQueue.incrementAndGet();
+        } catch (Exception e) {
+            nackFailures.incrementAndGet();
+            log.warn("메시지 반환 실패 (Visibility Timeout 만료 후 재시도됨)", e);
+        }
+    }
+
+    /**
+     * 지수 백오프 계산
+     */
+    private int backoffSeconds(int receiveCount) {
+        int exponent = Math.max(0, Math.min(receiveCount - 1, 20));
+        long delay = (long) retryConfig.getInitialBackoffSeconds() << exponent;
+        return (int) Math.min(delay, Math.min(retryConfig.getMaxBackoffSeconds(), SQS_MAX_VISIBILITY_SECONDS));
+    }
+
+    private void handlePoison(String queueUrl, Message message, FailureCategory category,
+                              String reason, int receiveCount) {
+        if (!hasDeadLetterQueue()) {
+            Integer redriveReceiveCount = redrivePolicies.get(queueUrl);
+            if (redriveReceiveCount != null) {
+                // 바로 다시 보이게 하여 Redrive Policy의 수신 횟수를 빨리 채움
+                changeVisibility(queueUrl, message.receiptHandle(), 0);
+                log.warn("[POISON][{}] 재시도 불가 메시지, 즉시 반환하여 Redrive Policy로 DLQ 이동 (receiveCount={}, maxReceiveCount={})",
+                        category.tag(), receiveCount, redriveReceiveCount);
+            } else {
+                // DLQ로 옮길 방법이 없으므로 수신-실패를 끝없이 빠르게 반복하지 않도록 최대 백오프 적용
+                int delaySeconds = poisonDelaySeconds();
+                changeVisibility(queueUrl, message.receiptHandle(), delaySeconds);
+                log.error("[POISON][{}] 재시도 불가 메시지, DLQ/Redrive Policy가 없어 {}초 후 재전송 (receiveCount={})",
+                        category.tag(), delaySeconds, receiveCount);
+            }
+            return;
+        }
+
+        sqsClient.sendMessage(SendMessageRequest.builder()
+                .queueUrl(retryConfig.getDeadLetterQueueUrl())
+                .messageBody(message.body())
+                .messageAttributes(Map.of(
+                        "failureCategory", stringAttribute(category.name()),
+                        "failureReason", stringAttribute(reason != null ? reason : "unknown"),
+                        "sourceQueueUrl", stringAttribute(queueUrl)))
+                .build());
+        sqsAckBatcher.acknowledge(queueUrl, message.receiptHandle());
+        sentToDeadLetterQueue.incrementAndGet();
+        log.warn("[POISON][{}] DLQ로 이동 완료 (receiveCount={})", category.tag(), receiveCount);
+    }
+
+    private boolean hasDeadLetterQueue() {
+        String deadLetterQueueUrl = retryConfig.getDeadLetterQueueUrl();
+        return deadLetterQueueUrl != null && !deadLetterQueueUrl.isBlank();
+    }
+
+    private int poisonDelaySeconds() {
+        return Math.min(retryConfig.getMaxBackoffSeconds(), SQS_MAX_VISIBILITY_SECONDS);
+    }
+
+    private void changeVisibility(String queueUrl, String receiptHandle, int visibilityTimeoutSeconds) {
+        sqsClient.changeMessageVisibility(ChangeMessageVisibilityRequest.builder()
+                .queueUrl(queueUrl)
+                .receiptHandle(receiptHandle)
+                .visibilityTimeout(visibilityTimeoutSeconds)
+                .build());
+    }
+
+    private MessageAttributeValue stringAttribute(String value) {
+        return MessageAttributeValue.builder()
+                .dataType("String")
+                .stringValue(value)
+                .build();
+    }
+
+    /**
+     * 실제로 실행을 시도한 횟수 (ApproximateReceiveCount - 이 Agent가 실행하지 않고 돌려보낸 횟수)
+     */
+    private int attemptCount(Message message) {
+        int returns;
+        synchronized (localReturns) {
+            returns = message.messageId() != null ? localReturns.getOrDefault(message.messageId(), 0) : 0;
+        }
+        return Math.max(1, receiveCount(message) - returns);
+    }
+
+    private void recordReturn(Message message) {
+        if (message.messageId() == null) {
+            return;
+        }
+        synchronized (localReturns) {
+            localReturns.merge(message.messageId(), 1, Integer::sum);
+        }
+    }
+
+    private void forgetReturns(Message message) {
+        if (message.messageId() == null) {
+            return;
+        }
+        synchronized (localReturns) {
+            localReturns.remove(message.messageId());
+        }
+    }
+
+    /**
+     * 메시지의 ApproximateReceiveCount (수신 요청 시 속성을 요청해야 채워짐)
+     */
+    public static int receiveCount(Message message) {
+        String value = message.attributesAsStrings().get(RECEIVE_COUNT_ATTRIBUTE);
+        if (value == null) {
+            return 1;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
+
+    @Override
+    public String statsName() {
+        return "sqsRetry";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("retriesScheduled", retriesScheduled.get());
+        stats.put("poisonMessages", poisonMessages.get());
+        stats.put("sentToDeadLetterQueue", sentToDeadLetterQueue.get());
+        stats.put("redrivePolicyQueues", redrivePolicies.size());
+        stats.put("returnedToQueue", returnedToQueue.get());
+        synchronized (localReturns) {
+            stats.put("trackedReturns", localReturns.size());
+        }
+        stats.put("nackFailures", nackFailures.get());
+        return stats;
+    }
+}
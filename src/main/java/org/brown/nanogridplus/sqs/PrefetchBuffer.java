@@ -0,0 +1,610 @@
+package org.brown.nanogridplus.sqs;
+
+import lombok.extern.slf4j.Slf4j;
+import org.brown.nanogridplus.config.AgentProperties;
+import org.brown.nanogridplus.docker.WarmPoolManager.RuntimeType;
+import org.brown.nanogridplus.metrics.StatsProvider;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * 수신한 메시지를 실행 전까지 보관하는 제한된 크기의 버퍼
+ *
+ * - 수신 스레드는 reserve()로 수신 가능한 개수를 먼저 확보한 뒤 ReceiveMessage를 호출
+ * - 수신 가능 개수 = min(런타임별 (빈 실행 슬롯 - 실행 가능한 대기 메시지)의 합 - 수신 중 예약, 호스트 수락 여유, 버퍼 남은 용량)
+ *   (다른 런타임의 빈 슬롯으로 밀린 런타임의 메시지를 더 받지 않도록 런타임별로 계산,
+ *    함수별 제한에 걸린 메시지는 슬롯을 기다리는 것이 아니므로 빈 슬롯에서 빼지 않음)
+ * - 빈 슬롯은 우선순위 순서로 배정: 더 높은 우선순위 큐가 메시지를 받고 있는 동안(직전 수신이 비어 있지 않았거나
+ *   실행 가능한 대기 메시지가 있음) 낮은 우선순위 큐는 빈 슬롯의 minShare 비율까지만 수신
+ * - 큐마다, 함수(functionId)마다 FIFO로 보관하여 한 함수가 밀려도 다른 함수 메시지는 바로 실행
+ * - 함수 하나가 버퍼에 둘 수 있는 메시지 수는 maxBufferedPerFunction으로 제한 (초과분은 put()이 거부 → 큐로 반환)
+ * - Visibility Timeout 만료가 EXPIRY_MARGIN_MILLIS 이내로 다가온 메시지는 실행 가능 여부와 관계없이
+ *   takeDispatchable()이 매번 버퍼에서 빼서 onExpired로 넘긴다. (런타임이 계속 바빠도 버퍼에 남지 않음)
+ *
+ * 여러 큐 사이의 실행 순서 (agent.sqs.queues):
+ * 1. minShare보다 최근 실행 비율이 낮은 큐 (기아 방지, 실행 이력이 MIN_SHARE_HISTORY건 이상 쌓인 뒤부터)
+ * 2. priority가 가장 높은 큐
+ * 3. 같은 priority 안에서는 weight 비율로 번갈아 실행 (stride scheduling)
+ *
+ * 큐 안에서 함수 사이의 실행 순서:
+ * - Deficit Round Robin (함수별 quantum = FunctionQuotaManager.weight)
+ * - 한 함수가 대량으로 들어와도 다른 함수는 매 라운드 차례를 받는다
+ */
+@Slf4j
+@Component
+public class PrefetchBuffer implements StatsProvider {
+
+    // 최근 실행 비율 계산용 감쇠 계수 (대략 최근 50건 기준)
+    private static final double SHARE_DECAY = 0.98;
+    private static final int RATE_WINDOW_SECONDS = 60;
+    // 버퍼에 작업이 있지만 실행할 수 없을 때(속도 제한 등) 다시 확인하는 간격
+    private static final long RECHECK_MILLIS = 50;
+    // 이력이 없을 때는 비율이 의미가 없으므로 minShare 보정을 적용하지 않음 (감쇠 반영한 최근 실행 수)
+    private static final double MIN_SHARE_HISTORY = 10;
+    // Visibility Timeout 만료 전 이 시간 안에 실행하지 못한 메시지는 버퍼에서 제거
+    static final long EXPIRY_MARGIN_MILLIS = 5000;
+
+    private final int capacity;
+    private final FunctionQuotaManager functionQuotaManager;
+
+    private final Map<String, QueueLane> lanes = new LinkedHashMap<>();
+    // 함수별 버퍼에 있는 메시지 수 (모든 큐 합계)
+    private final Map<String, Integer> bufferedPerFunction = new HashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+
+    private int size;
+    private int reserved;
+    private long overflowed;
+    private long expired;
+
+    public PrefetchBuffer(AgentProperties agentProperties, FunctionQuotaManager functionQuotaManager) {
+        this.functionQuotaManager = functionQuotaManager;
+        this.capacity = Math.max(1, agentProperties.getPolling().getPrefetchCapacity());
+
+        for (AgentProperties.QueueConfig queue : agentProperties.getSqs().resolveQueues()) {
+            lanes.put(queue.getUrl(), new QueueLane(queue));
+            log.info("Prefetch lane: queue={}, priority={}, weight={}, minShare={}",
+                    queue.getName(), queue.getPriority(), queue.getWeight(), queue.getMinShare());
+        }
+    }
+
+    /**
+     * 이번 ReceiveMessage 호출로 받을 수 있는 메시지 수를 예약한다.
+     *
+     * @param queueUrl 수신할 큐
+     * @param maxMessages 한 번에 받을 최대 메시지 수
+     * @param freeSlots 런타임별 비어 있는 실행 슬롯 수
+     * @param admittable 호스트 자원 기준으로 더 수락할 수 있는 작업 수
+     * @return 예약된 개수 (0이면 수신하지 않아야 함)
+     */
+    public int reserve(String queueUrl, int maxMessages, Map<RuntimeType, Integer> freeSlots, int admittable) {
+        lock.lock();
+        try {
+            QueueLane lane = lane(queueUrl);
+            int pending = size + reserved;
+
+            // 런타임별로 빈 슬롯에서 그 런타임의 실행 가능한 대기 메시지를 뺌
+            Map<RuntimeType, Integer> waiting = dispatchableByRuntime();
+            int dispatchable = 0;
+            int slotCredits = -reserved;
+            int totalFree = 0;
+            for (Map.Entry<RuntimeType, Integer> free : freeSlots.entrySet()) {
+                int waitingForRuntime = waiting.getOrDefault(free.getKey(), 0);
+                dispatchable += waitingForRuntime;
+                totalFree += free.getValue();
+                slotCredits += Math.max(0, free.getValue() - waitingForRuntime);
+            }
+            slotCredits = Math.min(slotCredits, admittable - (dispatchable + reserved));
+            totalFree = Math.min(totalFree, admittable);
+
+            int credits = Math.min(maxMessages, Math.min(capacity - pending, slotCredits));
+            if (higherPriorityHungry(lane)) {
+                // 높은 우선순위 큐가 빈 슬롯을 쓰고 있으면 minShare 몫까지만
+                int share = (int) Math.ceil(Math.max(0, totalFree) * lane.config.getMinShare());
+                credits = Math.min(credits, share - (lane.dispatchableCount(functionQuotaManager) + lane.reserved));
+            }
+            if (credits <= 0) {
+                return 0;
+            }
+            reserved += credits;
+            lane.reserved += credits;
+            return credits;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * reserve()로 확보한 예약을 반환한다. (수신이 끝난 뒤 반드시 호출)
+     *
+     * @param received 이번 수신에서 받은 메시지 수 (0이면 낮은 우선순위 큐에 빈 슬롯을 양보)
+     */
+    public void releaseReservation(String queueUrl, int credits, int received) {
+        if (credits <= 0) {
+            return;
+        }
+        lock.lock();
+        try {
+            QueueLane lane = lane(queueUrl);
+            lane.lastReceived = received;
+            reserved = Math.max(0, reserved - credits);
+            lane.reserved = Math.max(0, lane.reserved - credits);
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 수신한 작업을 버퍼에 추가
+     *
+     * @return 함수별 버퍼 한도를 넘어 추가하지 않았으면 false (호출한 쪽에서 큐로 반환)
+     */
+    public boolean put(PrefetchedTask task) {
+        lock.lock();
+        try {
+            String functionKey = FunctionQuotaManager.key(task.taskMessage().getFunctionId());
+            int maxBuffered = functionQuotaManager.maxBuffered();
+            int functionBuffered = bufferedPerFunction.getOrDefault(functionKey, 0);
+            if (maxBuffered > 0 && functionBuffered >= maxBuffered) {
+                overflowed++;
+                return false;
+            }
+            bufferedPerFunction.put(functionKey, functionBuffered + 1);
+
+            QueueLane lane = lane(task.queueUrl());
+            if (lane.size == 0) {
+                // 쉬고 있던 큐가 밀린 몫을 한꺼번에 가져가지 않도록 현재 진행 위치로 맞춤
+                lane.pass = Math.max(lane.pass, minActivePass(lane.config.getPriority()));
+            }
+            lane.add(task, functionQuotaManager.weight(task.taskMessage().getFunctionId()));
+            lane.size++;
+            lane.received++;
+            size++;
+            changed.signalAll();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 실행 가능한 작업 중 큐 우선순위/비율과 함수별 공정 배분에 따라 다음 작업을 꺼낸다.
+     * 실행 가능한 작업이 없으면 최대 timeoutMillis 동안 대기한다.
+     * 확인할 때마다 만료가 임박한 작업을 먼저 제거하여 lock을 놓은 뒤 onExpired로 넘긴다.
+     *
+     * @param runnable 작업을 지금 실행할 수 있는지 판단 (런타임 슬롯 등, 함수별 제한은 버퍼가 직접 확인)
+     * @param onExpired 만료가 임박해 실행하지 않고 제거한 작업 처리
+     * @param timeoutMillis 최대 대기 시간
+     * @return 꺼낸 작업, 없으면 null
+     */
+    public PrefetchedTask takeDispatchable(Predicate<PrefetchedTask> runnable, Consumer<PrefetchedTask> onExpired,
+                                           long timeoutMillis) throws InterruptedException {
+        long remainingNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        List<PrefetchedTask> expired = new ArrayList<>();
+
+        lock.lock();
+        try {
+            Predicate<FunctionQueue> ready = queue -> runnable.test(queue.tasks.peekFirst()) && quotaAllows(queue);
+            while (true) {
+                removeExpired(System.currentTimeMillis(), expired);
+                QueueLane selected = selectLane(ready);
+                if (selected != null) {
+                    PrefetchedTask task = selected.pollNext(ready);
+                    onDispatched(selected, task);
+                    changed.signalAll();
+                    return task;
+                }
+
+                if (remainingNanos <= 0 || !expired.isEmpty()) {
+                    return null;
+                }
+                if (size > 0) {
+                    // 토큰 버킷 충전은 신호가 없으므로 짧게 대기 후 재확인
+                    long waitNanos = Math.min(remainingNanos, TimeUnit.MILLISECONDS.toNanos(RECHECK_MILLIS));
+                    remainingNanos -= waitNanos - changed.awaitNanos(waitNanos);
+                } else {
+                    remainingNanos = changed.awaitNanos(remainingNanos);
+                }
+            }
+        } finally {
+            lock.unlock();
+            expired.forEach(onExpired);
+        }
+    }
+
+    /**
+     * 버퍼 상태가 바뀔 때까지 최대 timeoutMillis 동안 대기
+     */
+    public void awaitChange(long timeoutMillis) throws InterruptedException {
+        lock.lock();
+        try {
+            changed.await(timeoutMillis, TimeUnit.MILLISECONDS);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 외부 상태(실행 슬롯 반환 등)가 바뀌었음을 대기 중인 스레드에 알린다.
+     */
+    public void signalChange() {
+        lock.lock();
+        try {
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * 다음에 실행할 큐 선택 (lock 보유 상태에서 호출)
+     */
+    private QueueLane selectLane(Predicate<FunctionQueue> runnable) {
+        double totalRecent = 0;
+        for (QueueLane lane : lanes.values()) {
+            totalRecent += lane.recentDispatches;
+        }
+
+        // 1. 최소 비율을 보장받지 못한 큐 중 부족분이 가장 큰 큐 (이력이 충분할 때만)
+        QueueLane starving = null;
+        double largestDeficit = 0;
+        for (QueueLane lane : lanes.values()) {
+            if (totalRecent < MIN_SHARE_HISTORY || lane.config.getMinShare() <= 0 || !lane.hasRunnable(runnable)) {
+                continue;
+            }
+            double share = lane.recentDispatches / totalRecent;
+            double deficit = lane.config.getMinShare() - share;
+            if (deficit > largestDeficit) {
+                largestDeficit = deficit;
+                starving = lane;
+            }
+        }
+        if (starving != null) {
+            return starving;
+        }
+
+        // 2. 가장 높은 우선순위, 3. 같은 우선순위에서는 pass가 가장 작은 큐
+        QueueLane selected = null;
+        for (QueueLane lane : lanes.values()) {
+            if (!lane.hasRunnable(runnable)) {
+                continue;
+            }
+            if (selected == null
+                    || lane.config.getPriority() > selected.config.getPriority()
+                    || (lane.config.getPriority() == selected.config.getPriority() && lane.pass < selected.pass)) {
+                selected = lane;
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * 함수별 제한 확인 (제한에 걸린 작업은 작업당 한 번만 집계, lock 보유 상태에서 호출)
+     */
+    private boolean quotaAllows(FunctionQueue queue) {
+        PrefetchedTask head = queue.tasks.peekFirst();
+        FunctionQuotaManager.Limit limit = functionQuotaManager.check(head.taskMessage().getFunctionId());
+        if (limit == FunctionQuotaManager.Limit.NONE) {
+            return true;
+        }
+        if (queue.throttledHead != head) {
+            queue.throttledHead = head;
+            functionQuotaManager.recordThrottled(limit);
+        }
+        return false;
+    }
+
+    /**
+     * 만료가 임박한 작업을 버퍼에서 제거 (함수별 FIFO는 수신 순서이므로 맨 앞부터 확인, lock 보유 상태에서 호출)
+     */
+    private void removeExpired(long nowMillis, List<PrefetchedTask> expired) {
+        if (size == 0) {
+            return;
+        }
+        int before = expired.size();
+        for (QueueLane lane : lanes.values()) {
+            Iterator<FunctionQueue> queues = lane.ring.iterator();
+            while (queues.hasNext()) {
+                FunctionQueue queue = queues.next();
+                while (!queue.tasks.isEmpty() && queue.tasks.peekFirst().isExpired(nowMillis, EXPIRY_MARGIN_MILLIS)) {
+                    PrefetchedTask task = queue.tasks.pollFirst();
+                    expired.add(task);
+                    removed(task);
+                    lane.size--;
+                }
+                if (queue.tasks.isEmpty()) {
+                    queues.remove();
+                    lane.functions.remove(queue.functionId);
+                }
+            }
+        }
+        int count = expired.size() - before;
+        if (count > 0) {
+            this.expired += count;
+            changed.signalAll();
+        }
+    }
+
+    /**
+     * 런타임별 함수별 제한에 걸리지 않은 대기 메시지 수 (lock 보유 상태에서 호출)
+     */
+    private Map<RuntimeType, Integer> dispatchableByRuntime() {
+        Map<RuntimeType, Integer> counts = new EnumMap<>(RuntimeType.class);
+        for (QueueLane lane : lanes.values()) {
+            for (FunctionQueue queue : lane.ring) {
+                if (!functionQuotaManager.canDispatch(queue.tasks.peekFirst().taskMessage().getFunctionId())) {
+                    continue;
+                }
+                for (PrefetchedTask task : queue.tasks) {
+                    counts.merge(task.runtimeType(), 1, Integer::sum);
+                }
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * 버퍼에서 빠진 작업의 전체/함수별 개수 반영 (lock 보유 상태에서 호출)
+     */
+    private void removed(PrefetchedTask task) {
+        bufferedPerFunction.computeIfPresent(FunctionQuotaManager.key(task.taskMessage().getFunctionId()),
+                (key, count) -> count > 1 ? count - 1 : null);
+        size--;
+    }
+
+    /**
+     * 더 높은 우선순위 큐 중 메시지를 받고 있는 큐가 있는지 (lock 보유 상태에서 호출)
+     */
+    private boolean higherPriorityHungry(QueueLane lane) {
+        for (QueueLane other : lanes.values()) {
+            if (other.config.getPriority() > lane.config.getPriority()
+                    && (other.lastReceived > 0 || other.dispatchableCount(functionQuotaManager) > 0)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void onDispatched(QueueLane selected, PrefetchedTask task) {
+        long now = System.currentTimeMillis();
+        long waitMillis = Math.max(0, now - task.receivedAtMillis());
+
+        removed(task);
+        selected.size--;
+        selected.pass += 1.0 / Math.max(1, selected.config.getWeight());
+        for (QueueLane lane : lanes.values()) {
+            lane.recentDispatches *= SHARE_DECAY;
+        }
+        selected.recentDispatches += 1;
+
+        selected.dispatched++;
+        selected.totalWaitMillis += waitMillis;
+        selected.maxWaitMillis = Math.max(selected.maxWaitMillis, waitMillis);
+        selected.recordDispatch(now);
+    }
+
+    private double minActivePass(int priority) {
+        double min = Double.MAX_VALUE;
+        for (QueueLane lane : lanes.values()) {
+            if (lane.size > 0 && lane.config.getPriority() == priority) {
+                min = Math.min(min, lane.pass);
+            }
+        }
+        return min == Double.MAX_VALUE ? 0 : min;
+    }
+
+    private QueueLane lane(String queueUrl) {
+        QueueLane lane = lanes.get(queueUrl);
+        if (lane == null) {
+            throw new IllegalStateException("Unknown queue: " + queueUrl);
+        }
+        return lane;
+    }
+
+    @Override
+    public String statsName() {
+        return "queues";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long now = System.currentTimeMillis();
+
+        lock.lock();
+        try {
+            stats.put("buffered", size);
+            stats.put("capacity", capacity);
+            stats.put("overflowed", overflowed);
+            stats.put("expired", expired);
+            for (QueueLane lane : lanes.values()) {
+                Map<String, Object> queueStats = new LinkedHashMap<>();
+                queueStats.put("priority", lane.config.getPriority());
+                queueStats.put("weight", lane.config.getWeight());
+                queueStats.put("minShare", lane.config.getMinShare());
+                queueStats.put("buffered", lane.size);
+                queueStats.put("bufferedFunctions", lane.functions.size());
+                queueStats.put("lastReceived", lane.lastReceived);
+                queueStats.put("received", lane.received);
+                queueStats.put("dispatched", lane.dispatched);
+                queueStats.put("avgWaitMillis", lane.dispatched == 0 ? 0.0 : (double) lane.totalWaitMillis / lane.dispatched);
+                queueStats.put("maxWaitMillis", lane.maxWaitMillis);
+                queueStats.put("dispatchedPerSecond", lane.ratePerSecond(now));
+                stats.put(lane.config.getName(), queueStats);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return stats;
+    }
+
+    /**
+     * 큐 하나의 버퍼 및 스케줄링 상태 (lock 보유 상태에서만 접근)
+     */
+    private static final class QueueLane {
+
+        private final AgentProperties.QueueConfig config;
+        // 함수별 대기 작업 + Deficit Round Robin 순서
+        private final Map<String, FunctionQueue> functions = new HashMap<>();
+        private final Deque<FunctionQueue> ring = new ArrayDeque<>();
+
+        private int size;
+        private int reserved;
+        private double pass;
+        private double recentDispatches;
+        // 직전 ReceiveMessage로 받은 메시지 수
+        private int lastReceived;
+
+        // 통계
+        private long received;
+        private long dispatched;
+        private long totalWaitMillis;
+        private long maxWaitMillis;
+        private final long[] dispatchBuckets = new long[RATE_WINDOW_SECONDS];
+        private final long[] bucketSeconds = new long[RATE_WINDOW_SECONDS];
+
+        private QueueLane(AgentProperties.QueueConfig config) {
+            this.config = config;
+        }
+
+        private void add(PrefetchedTask task, int quantum) {
+            String functionId = String.valueOf(task.taskMessage().getFunctionId());
+            FunctionQueue queue = functions.get(functionId);
+            if (queue == null) {
+                queue = new FunctionQueue(functionId, quantum);
+                functions.put(functionId, queue);
+                ring.addLast(queue);
+            }
+            queue.tasks.addLast(task);
+        }
+
+        /**
+         * 함수별 제한에 걸리지 않아 빈 슬롯만 있으면 실행할 수 있는 메시지 수
+         */
+        private int dispatchableCount(FunctionQuotaManager functionQuotaManager) {
+            int count = 0;
+            for (FunctionQueue queue : ring) {
+                if (functionQuotaManager.canDispatch(queue.tasks.peekFirst().taskMessage().getFunctionId())) {
+                    count += queue.tasks.size();
+                }
+            }
+            return count;
+        }
+
+        /**
+         * 지금 실행할 수 있는 작업이 있는지 (함수별 FIFO의 맨 앞만 확인)
+         */
+        private boolean hasRunnable(Predicate<FunctionQueue> runnable) {
+            for (FunctionQueue queue : ring) {
+                if (runnable.test(queue)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Deficit Round Robin으로 다음 작업을 꺼낸다.
+         * 차례가 된 함수는 quantum만큼 deficit을 받고, 작업 하나당 1씩 소비한다.
+         * 실행할 수 없는 함수(슬롯/제한)는 deficit을 유지한 채 건너뛴다.
+         */
+        private PrefetchedTask pollNext(Predicate<FunctionQueue> runnable) {
+            int visits = ring.size();
+            for (int i = 0; i < visits; i++) {
+                FunctionQueue queue = ring.peekFirst();
+                PrefetchedTask head = queue.tasks.peekFirst();
+                if (!runnable.test(queue)) {
+                    ring.addLast(ring.pollFirst());
+                    continue;
+                }
+
+                if (queue.deficit < 1) {
+                    queue.deficit += queue.quantum;
+                }
+                queue.tasks.pollFirst();
+                queue.deficit -= 1;
+
+                if (queue.tasks.isEmpty()) {
+                    // 대기 작업이 없는 함수는 deficit을 쌓아 두지 않음
+                    ring.pollFirst();
+                    functions.remove(queue.functionId);
+                } else if (queue.deficit < 1) {
+                    ring.addLast(ring.pollFirst());
+                }
+                return head;
+            }
+            return null;
+        }
+
+        private void recordDispatch(long nowMillis) {
+            long second = nowMillis / 1000;
+            int index = (int) (second % RATE_WINDOW_SECONDS);
+            if (bucketSeconds[index] != second) {
+                bucketSeconds[index] = second;
+                dispatchBuckets[index] = 0;
+            }
+            dispatchBuckets[index]++;
+        }
+
+        /**
+         * 최근 60초 평균 초당 실행 수
+         */
+        private double ratePerSecond(long nowMillis) {
+            long second = nowMillis / 1000;
+            long count = 0;
+            for (int i = 0; i < RATE_WINDOW_SECONDS; i++) {
+                if (second - bucketSeconds[i] < RATE_WINDOW_SECONDS) {
+                    count += dispatchBuckets[i];
+                }
+            }
+            return (double) count / RATE_WINDOW_SECONDS;
+        }
+    }
+
+    /**
+     * 한 큐 안의 함수 하나에 대한 대기 작업
+     */
+    private static final class FunctionQueue {
+
+        private final String functionId;
+        private final int quantum;
+        private final Deque<PrefetchedTask> tasks = new ArrayDeque<>();
+        private int deficit;
+        // 함수별 제한으로 이미 집계한 맨 앞 작업
+        private PrefetchedTask throttledHead;
+
+        private FunctionQueue(String functionId, int quantum) {
+            this.functionId = functionId;
+            this.quantum = quantum;
+        }
+    }
+}
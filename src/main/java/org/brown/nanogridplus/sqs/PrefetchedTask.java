@@ -0,0 +1,35 @@
+package org.brown.nanogridplus.sqs;
+
+import org.brown.nanogridplus.docker.WarmPoolManager.RuntimeType;
+import org.brown.nanogridplus.model.TaskMessage;
+import software.amazon.awssdk.services.sqs.model.Message;
+
+/**
+ * SQS에서 수신하여 실행을 기다리는 작업
+ *
+ * @param queueUrl 메시지를 수신한 큐 URL
+ * @param message 원본 SQS 메시지 (receiptHandle 포함)
+ * @param taskMessage 파싱된 작업 메시지
+ * @param runtimeType 실행할 런타임
+ * @param receivedAtMillis 수신 시각
+ * @param expiresAtMillis Visibility Timeout 만료 시각
+ */
+public record PrefetchedTask(
+        String queueUrl,
+        Message message,
+        TaskMessage taskMessage,
+        RuntimeType runtimeType,
+        long receivedAtMillis,
+        long expiresAtMillis
+) {
+
+    /**
+     * Visibility Timeout 만료가 임박했는지 확인
+     *
+     * @param nowMillis 현재 시각
+     * @param marginMillis 만료 전 여유 시간
+     */
+    public boolean isExpired(long nowMillis, long marginMillis) {
+        return nowMillis >= expiresAtMillis - marginMillis;
+    }
+}
@@ -0,0 +1,320 @@
+package org.brown.nanogridplus.sqs;
+
+import lombok.extern.slf4j.Slf4j;
+import org.brown.nanogridplus.config.AgentProperties;
+import org.brown.nanogridplus.metrics.StatsProvider;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.BatchResultErrorEntry;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchResponse;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchResultEntry;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageRequest;
+
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SQS 메시지 삭제(ACK) 배치 전송기
+ *
+ * 메시지마다 DeleteMessage를 호출하는 대신 receiptHandle을 모아
+ * DeleteMessageBatch(최대 10개)로 한 번에 삭제한다.
+ *
+ * - 큐별로 대기 중인 ACK가 maxBatchSize에 도달하면 즉시 전송
+ * - 그렇지 않으면 lingerMillis 후 모인 만큼 전송
+ * - 항목별 실패(senderFault=false)는 maxRetries까지 재시도
+ * - 호출 스레드는 SQS 응답을 기다리지 않음
+ */
+@Slf4j
+@Component
+public class SqsAckBatcher implements StatsProvider {
+
+    private static final int SQS_MAX_BATCH_SIZE = 10;
+
+    private final SqsClient sqsClient;
+    private final AgentProperties.AckConfig ackConfig;
+    private final int maxBatchSize;
+
+    private final Map<String, QueueBatch> batches = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService sender;
+
+    // 통계
+    private final AtomicLong batchesSent = new AtomicLong();
+    private final AtomicLong entriesSent = new AtomicLong();
+    private final AtomicLong entriesAcked = new AtomicLong();
+    private final AtomicLong entriesFailed = new AtomicLong();
+    private final AtomicLong entriesRetried = new AtomicLong();
+    private final AtomicLong totalAckLatencyMillis = new AtomicLong();
+    private final AtomicLong maxAckLatencyMillis = new AtomicLong();
+
+    public SqsAckBatcher(SqsClient sqsClient, AgentProperties agentProperties) {
+        this.sqsClient = sqsClient;
+        this.ackConfig = agentProperties.getSqs().getAck();
+        this.maxBatchSize = Math.max(1, Math.min(SQS_MAX_BATCH_SIZE, ackConfig.getMaxBatchSize()));
+
+        AtomicInteger counter = new AtomicInteger();
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(2, runnable -> {
+            Thread thread = new Thread(runnable, "sqs-ack-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        this.sender = executor;
+    }
+
+    /**
+     * 메시지 삭제 요청을 배치에 추가한다.
+     *
+     * @param queueUrl 큐 URL
+     * @param receiptHandle 삭제할 메시지의 receiptHandle
+     * @return 삭제 완료(또는 최종 실패) 시 완료되는 Future
+     */
+    public CompletableFuture<Void> acknowledge(String queueUrl, String receiptHandle) {
+        PendingAck ack = new PendingAck(receiptHandle, System.nanoTime());
+
+        if (!ackConfig.isBatchEnabled()) {
+            deleteSingle(queueUrl, ack);
+            return ack.future;
+        }
+
+        batches.computeIfAbsent(queueUrl, QueueBatch::new).add(ack);
+        return ack.future;
+    }
+
+    /**
+     * 배치 기능을 끈 경우: 메시지마다 DeleteMessage 호출
+     */
+    private void deleteSingle(String queueUrl, PendingAck ack) {
+        try {
+            sqsClient.deleteMessage(DeleteMessageRequest.builder()
+                    .queueUrl(queueUrl)
+                    .receiptHandle(ack.receiptHandle)
+                    .build());
+            batchesSent.incrementAndGet();
+            entriesSent.incrementAndGet();
+            complete(ack);
+        } catch (Exception e) {
+            log.warn("메시지 삭제 실패 (재처리 가능성 있음)", e);
+            entriesFailed.incrementAndGet();
+            ack.future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * DeleteMessageBatch 전송 및 결과 처리
+     */
+    private void sendBatch(String queueUrl, List<PendingAck> entries) {
+        Map<String, PendingAck> byId = new LinkedHashMap<>();
+        List<DeleteMessageBatchRequestEntry> requestEntries = new ArrayList<>(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            String id = Integer.toString(i);
+            byId.put(id, entries.get(i));
+            requestEntries.add(DeleteMessageBatchRequestEntry.builder()
+                    .id(id)
+                    .receiptHandle(entries.get(i).receiptHandle)
+                    .build());
+        }
+
+        batchesSent.incrementAndGet();
+        entriesSent.addAndGet(entries.size());
+
+        DeleteMessageBatchResponse response;
+        try {
+            response = sqsClient.deleteMessageBatch(DeleteMessageBatchRequest.builder()
+                    .queueUrl(queueUrl)
+                    .entries(requestEntries)
+                    .build());
+        } catch (Exception e) {
+            log.warn("DeleteMessageBatch 호출 실패: queueUrl={}, entries={}", queueUrl, entries.size(), e);
+            for (PendingAck ack : entries) {
+                retryOrFail(queueUrl, ack, e.getMessage());
+            }
+            return;
+        }
+
+        for (DeleteMessageBatchResultEntry success : response.successful()) {
+            PendingAck ack = byId.remove(success.id());
+            if (ack != null) {
+                complete(ack);
+            }
+        }
+
+        for (BatchResultErrorEntry failure : response.failed()) {
+            PendingAck ack = byId.remove(failure.id());
+            if (ack == null) {
+                continue;
+            }
+            if (Boolean.TRUE.equals(failure.senderFault())) {
+                // 만료된 receiptHandle 등 재시도해도 성공할 수 없는 오류
+                log.warn("메시지 삭제 실패 (재처리 가능성 있음): code={}, message={}",
+                        failure.code(), failure.message());
+                fail(ack, failure.code());
+            } else {
+                retryOrFail(queueUrl, ack, failure.code());
+            }
+        }
+    }
+
+    private void retryOrFail(String queueUrl, PendingAck ack, String reason) {
+        if (ack.attempts.incrementAndGet() <= ackConfig.getMaxRetries()) {
+            entriesRetried.incrementAndGet();
+            batches.computeIfAbsent(queueUrl, QueueBatch::new).add(ack);
+        } else {
+            log.warn("메시지 삭제 재시도 초과 (재처리 가능성 있음): queueUrl={}, reason={}", queueUrl, reason);
+            fail(ack, reason);
+        }
+    }
+
+    private void complete(PendingAck ack) {
+        long latencyMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - ack.enqueuedAtNanos);
+        totalAckLatencyMillis.addAndGet(latencyMillis);
+        maxAckLatencyMillis.accumulateAndGet(latencyMillis, Math::max);
+        entriesAcked.incrementAndGet();
+        ack.future.complete(null);
+    }
+
+    private void fail(PendingAck ack, String reason) {
+        entriesFailed.incrementAndGet();
+        ack.future.completeExceptionally(new IllegalStateException("SQS ack failed: " + reason));
+    }
+
+    @Override
+    public String statsName() {
+        return "sqsAck";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        long batches = batchesSent.get();
+        long sent = entriesSent.get();
+        long acked = entriesAcked.get();
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("batchEnabled", ackConfig.isBatchEnabled());
+        stats.put("batchesSent", batches);
+        stats.put("entriesAcked", acked);
+        stats.put("entriesFailed", entriesFailed.get());
+        stats.put("entriesRetried", entriesRetried.get());
+        stats.put("batchFillRatio", batches == 0 ? 0.0 : (double) sent / (batches * maxBatchSize));
+        stats.put("avgAckLatencyMillis", acked == 0 ? 0.0 : (double) totalAckLatencyMillis.get() / acked);
+        stats.put("maxAckLatencyMillis", maxAckLatencyMillis.get());
+        stats.put("pending", this.batches.values().stream().mapToInt(QueueBatch::size).sum());
+        return stats;
+    }
+
+    /**
+     * 애플리케이션 종료 시 남은 ACK 전송
+     */
+    @PreDestroy
+    public void shutdown() {
+        log.info("Flushing pending SQS acknowledgements...");
+        for (QueueBatch batch : batches.values()) {
+            batch.flushAll();
+        }
+        sender.shutdown();
+        try {
+            if (!sender.awaitTermination(5, TimeUnit.SECONDS)) {
+                sender.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            sender.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 큐 하나에 대해 대기 중인 ACK 모음
+     */
+    private final class QueueBatch {
+
+        private final String queueUrl;
+        private final Deque<PendingAck> pending = new ArrayDeque<>();
+        private boolean flushScheduled;
+
+        private QueueBatch(String queueUrl) {
+            this.queueUrl = queueUrl;
+        }
+
+        private synchronized void add(PendingAck ack) {
+            pending.addLast(ack);
+
+            if (pending.size() >= maxBatchSize) {
+                // 배치가 가득 참 → 즉시 전송
+                List<PendingAck> entries = drain();
+                sender.execute(() -> sendBatch(queueUrl, entries));
+            } else if (!flushScheduled) {
+                flushScheduled = true;
+                sender.schedule(this::flushLinger, ackConfig.getLingerMillis(), TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void flushLinger() {
+            List<PendingAck> entries;
+            synchronized (this) {
+                flushScheduled = false;
+                entries = drain();
+                if (!pending.isEmpty()) {
+                    flushScheduled = true;
+                    sender.schedule(this::flushLinger, ackConfig.getLingerMillis(), TimeUnit.MILLISECONDS);
+                }
+            }
+            if (!entries.isEmpty()) {
+                sendBatch(queueUrl, entries);
+            }
+        }
+
+        private void flushAll() {
+            while (true) {
+                List<PendingAck> entries;
+                synchronized (this) {
+                    entries = drain();
+                }
+                if (entries.isEmpty()) {
+                    return;
+                }
+                sendBatch(queueUrl, entries);
+            }
+        }
+
+        private List<PendingAck> drain() {
+            List<PendingAck> entries = new ArrayList<>(maxBatchSize);
+            while (entries.size() < maxBatchSize && !pending.isEmpty()) {
+                entries.add(pending.pollFirst());
+            }
+            return entries;
+        }
+
+        private synchronized int size() {
+            return pending.size();
+        }
+    }
+
+    /**
+     * 전송 대기 중인 ACK 항목
+     */
+    private static final class PendingAck {
+
+        private final String receiptHandle;
+        private final long enqueuedAtNanos;
+        private final AtomicInteger attempts = new AtomicInteger();
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private PendingAck(String receiptHandle, long enqueuedAtNanos) {
+            this.receiptHandle = receiptHandle;
+            this.enqueuedAtNanos = enqueuedAtNanos;
+        }
+    }
+}
@@ -4,23 +4,28 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.brown.nanogridplus.config.AgentProperties;
-import org.brown.nanogridplus.docker.DockerService;
-import org.brown.nanogridplus.model.ExecutionResult;
+import org.brown.nanogridplus.docker.HostAdmissionController;
+import org.brown.nanogridplus.docker.UnsupportedRuntimeException;
+import org.brown.nanogridplus.docker.WarmPoolManager;
 import org.brown.nanogridplus.model.TaskMessage;
-import org.brown.nanogridplus.redis.RedisResultPublisher;
-import org.brown.nanogridplus.s3.CodeStorageService;
-import org.slf4j.MDC;
+import org.brown.nanogridplus.s3.CodePrefetcher;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 import software.amazon.awssdk.services.sqs.SqsClient;
-import software.amazon.awssdk.services.sqs.model.DeleteMessageRequest;
 import software.amazon.awssdk.services.sqs.model.Message;
 import software.amazon.awssdk.services.sqs.model.ReceiveMessageRequest;
 import software.amazon.awssdk.services.sqs.model.ReceiveMessageResponse;
 
-import java.nio.file.Path;
+import jakarta.annotation.PreDestroy;
+import java.util.Comparator;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
 /**
  * SQS Long Polling 기반 작업 수신 및 처리
@@ -28,8 +33,22 @@ import java.util.List;
  * 7~8단계 안정화:
  * - MDC 기반 requestId 로그 트레이싱
  * - 예외 처리 정책 통일 (실패 시 메시지 재시도)
+ * - 실패 유형별 재시도: 일시적 오류는 지수 백오프, poison 메시지는 빠르게 DLQ로
  * - 한 요청 실패가 전체 Agent를 다운시키지 않음
  * - 상세한 로깅 (FAIL 태그 포함)
+ *
+ * 동시 실행:
+ * - 수신한 메시지는 TaskPipeline(fetch → exec → harvest → publish)에서 단계별로 병렬 처리
+ * - 느린 작업 하나가 같은 배치의 다른 메시지를 막지 않음
+ *
+ * 수신 모드 (agent.polling.mode):
+ * - scheduled: fixedDelayMillis 간격으로 한 번씩 수신
+ * - continuous: receiverThreads 개의 전용 스레드가 쉬지 않고 Long Polling
+ * - 두 모드 모두 빈 실행 슬롯 수만큼만 수신하여 PrefetchBuffer에 넣고,
+ *   디스패치 루프가 버퍼에서 꺼내 파이프라인으로 전달한다
+ *
+ * 여러 큐 (agent.sqs.queues):
+ * - 큐마다 수신 스레드를 두고, 실행 순서는 PrefetchBuffer가 우선순위/비율에 따라 결정한다
  */
 @Slf4j
 @Component
@@ -37,36 +56,164 @@ import java.util.List;
 @ConditionalOnProperty(name = "agent.polling.enabled", havingValue = "true", matchIfMissing = true)
 public class SqsPoller {
 
+    private static final long CREDIT_WAIT_MILLIS = 1000;
+    private static final long RECEIVE_ERROR_BACKOFF_MILLIS = 1000;
+
     private final SqsClient sqsClient;
     private final ObjectMapper objectMapper;
     private final AgentProperties agentProperties;
-    private final CodeStorageService codeStorageService;
-    private final DockerService dockerService;
-    private final RedisResultPublisher redisResultPublisher;
+    private final TaskPipeline taskPipeline;
+    private final PrefetchBuffer prefetchBuffer;
+    private final SqsAckBatcher sqsAckBatcher;
+    private final NegativeAckHandler negativeAckHandler;
+    private final HostAdmissionController hostAdmissionController;
+    private final FunctionQuotaManager functionQuotaManager;
+    private final CodePrefetcher codePrefetcher;
+
+    private final List<Thread> workers = new CopyOnWriteArrayList<>();
+    private volatile boolean running;
+
+    /**
+     * 애플리케이션 준비 완료 후 디스패치 루프(및 continuous 모드의 수신 루프) 시작
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        running = true;
+        taskPipeline.addSlotReleaseListener(prefetchBuffer::signalChange);
+
+        startWorker("sqs-dispatch", this::dispatchLoop);
+
+        AgentProperties.PollingConfig polling = agentProperties.getPolling();
+        List<AgentProperties.QueueConfig> queues = agentProperties.getSqs().resolveQueues();
+        if (polling.getMode() == AgentProperties.PollingMode.CONTINUOUS) {
+            int receivers = Math.max(1, polling.getReceiverThreads());
+            for (AgentProperties.QueueConfig queue : queues) {
+                for (int i = 0; i < receivers; i++) {
+                    startWorker("sqs-receiver-" + queue.getName() + "-" + (i + 1), () -> receiveLoop(queue));
+                }
+            }
+        }
+
+        log.info("SQS Poller started: mode={}, queues={}, receiverThreads={}, prefetchCapacity={}",
+                polling.getMode(), queues.size(), polling.getReceiverThreads(), prefetchBuffer.capacity());
+    }
 
     /**
-     * 주기적으로 SQS 큐를 폴링
+     * 애플리케이션 종료 시 수신/디스패치 루프 정지
+     */
+    @PreDestroy
+    public void stop() {
+        running = false;
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+        for (Thread worker : workers) {
+            try {
+                worker.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        log.info("SQS Poller stopped");
+    }
+
+    /**
+     * 주기적으로 SQS 큐를 폴링 (scheduled 모드)
      */
     @Scheduled(fixedDelayString = "${agent.polling.fixedDelayMillis:1000}")
     public void pollQueue() {
+        if (agentProperties.getPolling().getMode() != AgentProperties.PollingMode.SCHEDULED) {
+            return;
+        }
+
         try {
-            String queueUrl = agentProperties.getSqs().getQueueUrl();
+            // 우선순위가 높은 큐부터 수신
+            List<AgentProperties.QueueConfig> queues = agentProperties.getSqs().resolveQueues().stream()
+                    .sorted(Comparator.comparingInt(AgentProperties.QueueConfig::getPriority).reversed())
+                    .toList();
+            for (AgentProperties.QueueConfig queue : queues) {
+                receiveBatch(queue, false);
+            }
 
-            if (queueUrl == null || queueUrl.isEmpty()) {
-                log.warn("SQS Queue URL이 설정되지 않았습니다");
-                return;
+        } catch (InterruptedException e) {
+            log.warn("SQS 폴링 중 인터럽트 발생");
+            Thread.currentThread().interrupt();
+
+        } catch (Exception e) {
+            log.error("[FAIL][POLLING] SQS 폴링 중 오류 발생 (Agent는 계속 동작)", e);
+            // Agent 전체가 죽지 않도록 예외를 삼킴
+        }
+    }
+
+    /**
+     * 전용 스레드에서 쉬지 않고 Long Polling (continuous 모드)
+     * 빈 실행 슬롯이 없거나 버퍼가 가득 차면 수신을 멈추고 대기한다.
+     */
+    private void receiveLoop(AgentProperties.QueueConfig queue) {
+        while (running && !Thread.currentThread().isInterrupted()) {
+            try {
+                receiveBatch(queue, true);
+
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+
+            } catch (Exception e) {
+                log.error("[FAIL][POLLING] SQS 폴링 중 오류 발생 (Agent는 계속 동작)", e);
+                sleepQuietly(RECEIVE_ERROR_BACKOFF_MILLIS);
             }
+        }
+    }
 
-            log.debug("SQS 메시지 폴링 시작: {}", queueUrl);
+    /**
+     * 빈 실행 슬롯 수만큼 메시지를 수신하여 버퍼에 넣는다.
+     *
+     * @param queue 수신할 큐
+     * @param waitForCredits 수신 가능 개수가 0이면 버퍼 상태가 바뀔 때까지 대기할지 여부
+     */
+    private void receiveBatch(AgentProperties.QueueConfig queue, boolean waitForCredits) throws InterruptedException {
+        String queueUrl = queue.getUrl();
 
-            // SQS Long Polling 요청
+        if (queueUrl == null || queueUrl.isEmpty()) {
+            log.warn("SQS Queue URL이 설정되지 않았습니다: queue={}", queue.getName());
+            if (waitForCredits) {
+                Thread.sleep(RECEIVE_ERROR_BACKOFF_MILLIS);
+            }
+            return;
+        }
+
+        AgentProperties.SqsConfig sqsConfig = agentProperties.getSqs();
+        // 런타임별 빈 실행 슬롯과 호스트 자원 예산 안에서만 수신
+        Map<WarmPoolManager.RuntimeType, Integer> freeSlots = new EnumMap<>(WarmPoolManager.RuntimeType.class);
+        for (WarmPoolManager.RuntimeType runtimeType : WarmPoolManager.RuntimeType.values()) {
+            freeSlots.put(runtimeType, taskPipeline.availableSlots(runtimeType));
+        }
+        int credits = prefetchBuffer.reserve(queueUrl, sqsConfig.getMaxNumberOfMessages(), freeSlots,
+                hostAdmissionController.admittableTasks());
+        if (credits == 0) {
+            log.debug("빈 실행 슬롯 또는 호스트 자원이 없어 수신을 보류합니다 (queue={}, buffered={})",
+                    queue.getName(), prefetchBuffer.size());
+            if (waitForCredits) {
+                prefetchBuffer.awaitChange(CREDIT_WAIT_MILLIS);
+            }
+            return;
+        }
+
+        int received = 0;
+        try {
+            log.debug("SQS 메시지 폴링 시작: {} (maxNumberOfMessages={})", queueUrl, credits);
+
+            // SQS Long Polling 요청 (빈 슬롯 수만큼만 수신)
             ReceiveMessageRequest receiveRequest = ReceiveMessageRequest.builder()
                     .queueUrl(queueUrl)
-                    .maxNumberOfMessages(agentProperties.getSqs().getMaxNumberOfMessages())
-                    .waitTimeSeconds(agentProperties.getSqs().getWaitTimeSeconds())
+                    .maxNumberOfMessages(credits)
+                    .waitTimeSeconds(sqsConfig.getWaitTimeSeconds())
+                    .visibilityTimeout(sqsConfig.getVisibilityTimeoutSeconds())
+                    .attributeNamesWithStrings(NegativeAckHandler.RECEIVE_COUNT_ATTRIBUTE)
                     .build();
 
             ReceiveMessageResponse receiveResponse = sqsClient.receiveMessage(receiveRequest);
+            long receivedAt = System.currentTimeMillis();
             List<Message> messages = receiveResponse.messages();
 
             if (messages == null || messages.isEmpty()) {
@@ -74,137 +221,147 @@ public class SqsPoller {
                 return;
             }
 
-            log.info("SQS 메시지 {} 개 수신", messages.size());
+            log.info("SQS 메시지 {} 개 수신 (queue={})", messages.size(), queue.getName());
+            received = messages.size();
 
-            // 각 메시지 처리
             for (Message message : messages) {
-                processMessage(queueUrl, message);
+                bufferMessage(queueUrl, message, receivedAt);
             }
 
-        } catch (Exception e) {
-            log.error("[FAIL][POLLING] SQS 폴링 중 오류 발생 (Agent는 계속 동작)", e);
-            // Agent 전체가 죽지 않도록 예외를 삼킴
+        } finally {
+            prefetchBuffer.releaseReservation(queueUrl, credits, received);
         }
     }
 
     /**
-     * 개별 SQS 메시지 처리
+     * 메시지를 파싱하여 실행 대기 버퍼에 넣는다.
      */
-    private void processMessage(String queueUrl, Message message) {
+    private void bufferMessage(String queueUrl, Message message, long receivedAt) {
         String messageBody = message.body();
-        String receiptHandle = message.receiptHandle();
-        TaskMessage taskMessage = null;
+        TaskMessage taskMessage;
 
         try {
             // JSON → TaskMessage 파싱
             taskMessage = objectMapper.readValue(messageBody, TaskMessage.class);
-            
-            if (taskMessage == null || taskMessage.getRequestId() == null) {
-                log.error("[FAIL][PARSE] TaskMessage가 null이거나 requestId가 없습니다");
-                deleteMessage(queueUrl, receiptHandle); // 잘못된 메시지는 삭제
-                return;
-            }
+        } catch (com.fasterxml.jackson.core.JsonProcessingException e) {
+            log.error("[FAIL][JSON_PARSE] 메시지 파싱 실패: {}", messageBody, e);
+            // 파싱 불가능한 메시지는 삭제 (재시도 불필요)
+            deleteMessage(queueUrl, message.receiptHandle());
+            return;
+        }
 
-            // MDC에 requestId 설정
-            MDC.put("requestId", taskMessage.getRequestId());
-            MDC.put("functionId", taskMessage.getFunctionId());
-            MDC.put("runtime", taskMessage.getRuntime());
-
-            long startTime = System.currentTimeMillis();
-
-            log.info("===== 작업 메시지 수신 =====");
-            log.info("Received task: {}", taskMessage);
-            log.info("  - Request ID: {}", taskMessage.getRequestId());
-            log.info("  - Function ID: {}", taskMessage.getFunctionId());
-            log.info("  - Runtime: {}", taskMessage.getRuntime());
-            log.info("  - S3 Location: s3://{}/{}", taskMessage.getS3Bucket(), taskMessage.getS3Key());
-            log.info("============================");
-
-            // S3에서 코드 다운로드
-            Path workDir = codeStorageService.prepareWorkingDirectory(taskMessage);
-            log.info("Prepared working directory at: {}", workDir);
-
-            // Docker 컨테이너 실행
-            ExecutionResult result = dockerService.runTask(taskMessage, workDir);
-
-            long totalTime = System.currentTimeMillis() - startTime;
-
-            // 실행 결과 로그
-            log.info("===== 실행 결과 =====");
-            log.info("Request: {} finished in {}ms", taskMessage.getRequestId(), totalTime);
-            log.info("  - Exit Code: {}", result.getExitCode());
-            log.info("  - Duration: {}ms", result.getDurationMillis());
-            log.info("  - Peak Memory: {} bytes", result.getPeakMemoryBytes());
-            log.info("  - Success: {}", result.isSuccess());
-            
-            if (result.getOptimizationTip() != null) {
-                log.info("  - Optimization Tip: {}", result.getOptimizationTip());
-            }
-            
-            log.info("============================");
-            log.debug("Stdout:\n{}", result.getStdout());
-            log.debug("Stderr:\n{}", result.getStderr());
+        if (taskMessage == null || taskMessage.getRequestId() == null) {
+            log.error("[FAIL][PARSE] TaskMessage가 null이거나 requestId가 없습니다");
+            deleteMessage(queueUrl, message.receiptHandle()); // 잘못된 메시지는 삭제
+            return;
+        }
 
-            // Redis Publish - B팀 Controller에게 결과 전송
-            try {
-                redisResultPublisher.publishResult(result);
-                log.info("✅ [REDIS] 실행 결과 전송 완료: requestId={}", taskMessage.getRequestId());
-            } catch (Exception redisEx) {
-                log.error("❌ [REDIS][FAIL] 결과 전송 실패 (메시지는 삭제됨): requestId={}",
-                         taskMessage.getRequestId(), redisEx);
-                // Redis 전송 실패해도 SQS 메시지는 삭제 (실행은 성공했으므로)
-            }
+        WarmPoolManager.RuntimeType runtimeType;
+        try {
+            runtimeType = WarmPoolManager.RuntimeType.fromRuntime(taskMessage.getRuntime());
+        } catch (UnsupportedRuntimeException e) {
+            log.error("[FAIL][RUNTIME_NOT_SUPPORTED] 지원하지 않는 런타임: requestId={}, runtime={}",
+                    taskMessage.getRequestId(), taskMessage.getRuntime(), e);
+            // 잘못된 런타임 - 삭제하지 않고 빠르게 DLQ로 이동
+            negativeAckHandler.nack(queueUrl, message, FailureCategory.RUNTIME_NOT_SUPPORTED, e.getMessage());
+            return;
+        }
 
-            // 정상 처리 완료 - 메시지 삭제
-            deleteMessage(queueUrl, receiptHandle);
-            log.info("[DONE][OK] requestId={}", taskMessage.getRequestId());
+        long visibilityMillis = TimeUnit.SECONDS.toMillis(agentProperties.getSqs().getVisibilityTimeoutSeconds());
+        boolean buffered = prefetchBuffer.put(new PrefetchedTask(
+                queueUrl, message, taskMessage, runtimeType, receivedAt, receivedAt + visibilityMillis));
+        if (!buffered) {
+            // 함수별 버퍼 한도 초과 (제한에 걸린 함수가 버퍼를 독차지하지 않도록 큐로 반환)
+            log.info("[SHED][FUNCTION_QUOTA] 함수별 대기 한도 초과, 메시지를 큐로 반환: requestId={}, functionId={}",
+                    taskMessage.getRequestId(), taskMessage.getFunctionId());
+            negativeAckHandler.returnToQueue(queueUrl, message, functionQuotaManager.getOverflowVisibilitySeconds());
+            return;
+        }
 
-        } catch (com.fasterxml.jackson.core.JsonProcessingException e) {
-            log.error("[FAIL][JSON_PARSE] 메시지 파싱 실패: {}", messageBody, e);
-            // 파싱 불가능한 메시지는 삭제 (재시도 불필요)
-            deleteMessage(queueUrl, receiptHandle);
+        // 컨테이너 슬롯을 기다리는 동안 코드를 미리 캐시에 받아 둠
+        codePrefetcher.prefetch(taskMessage);
+    }
 
-        } catch (IllegalArgumentException e) {
-            log.error("[FAIL][RUNTIME_NOT_SUPPORTED] 지원하지 않는 런타임: {}", 
-                    taskMessage != null ? taskMessage.getRuntime() : "unknown", e);
-            // 잘못된 런타임 - 메시지 삭제하지 않음 (DLQ로 이동)
+    /**
+     * 버퍼에서 실행 가능한 메시지를 꺼내 작업 파이프라인으로 전달
+     * Visibility Timeout 만료가 임박한 메시지는 버퍼가 제거하며, 실행하지 않고 즉시 큐로 돌려보낸다.
+     */
+    private void dispatchLoop() {
+        while (running && !Thread.currentThread().isInterrupted()) {
+            try {
+                PrefetchedTask task = prefetchBuffer.takeDispatchable(
+                        candidate -> taskPipeline.availableSlots(candidate.runtimeType()) > 0
+                                && hostAdmissionController.canAdmit(candidate.taskMessage()),
+                        expired -> {
+                            log.warn("[SKIP][VISIBILITY_EXPIRED] 버퍼 대기 중 Visibility Timeout 임박, 큐로 반환: requestId={}",
+                                    expired.taskMessage().getRequestId());
+                            negativeAckHandler.returnToQueue(expired.queueUrl(), expired.message(), 0);
+                        },
+                        CREDIT_WAIT_MILLIS);
+                if (task == null) {
+                    continue;
+                }
 
-        } catch (Exception e) {
-            // S3, Docker 등 모든 오류 처리
-            String errorType = "UNKNOWN";
-            if (e.getMessage() != null) {
-                if (e.getMessage().contains("NoSuchKey") || e.getMessage().contains("Not Found")) {
-                    errorType = "S3";
-                } else if (e.getMessage().contains("docker") || e.getMessage().contains("container")) {
-                    errorType = "DOCKER";
+                TaskMessage taskMessage = task.taskMessage();
+
+                // 호스트 자원 예약 - 수락 가능한 작업만 꺼내므로 실패는 드묾 (그 사이 부하 상승 등)
+                // 실패하면 짧은 Visibility로 큐에 반환 (반환 횟수는 poison 판단에서 제외됨)
+                HostAdmissionController.Reservation reservation = hostAdmissionController.tryReserve(taskMessage);
+                if (reservation == null) {
+                    log.warn("[SHED][ADMISSION] 호스트 자원 부족, 메시지를 큐로 반환: requestId={}, memoryMb={}",
+                            taskMessage.getRequestId(), taskMessage.getMemoryMb());
+                    negativeAckHandler.returnToQueue(task.queueUrl(), task.message(),
+                            hostAdmissionController.getShedVisibilitySeconds());
+                    continue;
                 }
-            }
-            log.error("[FAIL][{}] 실행 중 오류 발생: requestId={}",
-                    errorType, taskMessage != null ? taskMessage.getRequestId() : "unknown", e);
-            // 메시지 삭제하지 않음 (재시도 가능)
 
-        } finally {
-            // MDC 정리
-            MDC.clear();
+                log.debug("Dispatching request {} to {} pipeline (waited {}ms)",
+                        taskMessage.getRequestId(), task.runtimeType(),
+                        System.currentTimeMillis() - task.receivedAtMillis());
+
+                boolean submitted = false;
+                try {
+                    submitted = taskPipeline.submit(task, reservation);
+                } finally {
+                    if (!submitted) {
+                        reservation.release();
+                    }
+                }
+                if (!submitted) {
+                    // 디스패치 루프는 하나뿐이므로 드물지만, 슬롯이 없으면 큐로 반환
+                    negativeAckHandler.returnToQueue(task.queueUrl(), task.message(),
+                            hostAdmissionController.getShedVisibilitySeconds());
+                }
+
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+
+            } catch (Exception e) {
+                log.error("[FAIL][DISPATCH] 메시지 디스패치 중 오류 발생 (Agent는 계속 동작)", e);
+            }
         }
     }
 
     /**
-     * SQS 메시지 삭제
+     * SQS 메시지 삭제 (SqsAckBatcher를 통해 DeleteMessageBatch로 모아서 전송)
      */
     private void deleteMessage(String queueUrl, String receiptHandle) {
-        try {
-            DeleteMessageRequest deleteRequest = DeleteMessageRequest.builder()
-                    .queueUrl(queueUrl)
-                    .receiptHandle(receiptHandle)
-                    .build();
+        sqsAckBatcher.acknowledge(queueUrl, receiptHandle);
+        log.debug("메시지 삭제 요청 완료 (배치 전송 대기)");
+    }
 
-            sqsClient.deleteMessage(deleteRequest);
-            log.debug("메시지 삭제 완료");
+    private void startWorker(String name, Runnable loop) {
+        Thread worker = new Thread(loop, name);
+        worker.setDaemon(true);
+        worker.start();
+        workers.add(worker);
+    }
 
-        } catch (Exception e) {
-            log.warn("메시지 삭제 실패 (재처리 가능성 있음)", e);
+    private void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 }
-
@@ -0,0 +1,173 @@
+package org.brown.nanogridplus.sqs;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.brown.nanogridplus.config.AgentProperties;
+import org.brown.nanogridplus.docker.WarmPoolManager.RuntimeType;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 런타임별 동시 실행 제한을 가진 실행 단계(exec stage) 디스패처
+ *
+ * 코드 준비가 끝난 작업을 런타임(RuntimeType)별 실행기에 넘겨
+ * Warm Pool의 컨테이너를 동시에 모두 사용할 수 있도록 한다.
+ *
+ * - 런타임마다 별도의 고정 크기 스레드 풀 (스레드 수 = 동시 실행 수)
+ * - 동시 실행 수는 agent.dispatcher.* 설정, 없으면 Warm Pool 크기를 따른다
+ * - 실행 스레드가 모두 사용 중이면 작업은 레인 큐에서 대기
+ *   (큐 길이는 TaskPipeline의 런타임별 수락 제한으로 묶인다)
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TaskDispatcher {
+
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+
+    private final AgentProperties agentProperties;
+
+    private final Map<RuntimeType, Lane> lanes = new EnumMap<>(RuntimeType.class);
+
+    /**
+     * 런타임별 실행 레인 초기화
+     */
+    @PostConstruct
+    public void initialize() {
+        for (RuntimeType runtimeType : RuntimeType.values()) {
+            int limit = resolveConcurrency(runtimeType);
+            lanes.put(runtimeType, new Lane(runtimeType, limit));
+            log.info("Dispatcher lane initialized: runtime={}, concurrency={}", runtimeType, limit);
+        }
+    }
+
+    /**
+     * 작업을 런타임별 실행기에 넘긴다. (대기하지 않음)
+     * 실행 스레드가 모두 사용 중이면 레인 큐에서 순서대로 대기한다.
+     *
+     * @param runtimeType 런타임 타입
+     * @param task 실행할 작업
+     */
+    public void execute(RuntimeType runtimeType, Runnable task) {
+        lane(runtimeType).executor.execute(task);
+    }
+
+    /**
+     * 특정 런타임의 동시 실행 제한
+     */
+    public int concurrencyLimit(RuntimeType runtimeType) {
+        return lane(runtimeType).limit;
+    }
+
+    /**
+     * 특정 런타임에서 실행 중인 작업 수
+     */
+    public int activeCount(RuntimeType runtimeType) {
+        return lane(runtimeType).executor.getActiveCount();
+    }
+
+    /**
+     * 특정 런타임에서 실행을 기다리는 작업 수
+     */
+    public int queuedCount(RuntimeType runtimeType) {
+        return lane(runtimeType).executor.getQueue().size();
+    }
+
+    /**
+     * 애플리케이션 종료 시 실행 중인 작업이 끝날 때까지 대기
+     */
+    @PreDestroy
+    public void shutdown() {
+        log.info("Shutting down task dispatcher...");
+
+        for (Lane lane : lanes.values()) {
+            lane.executor.shutdown();
+        }
+
+        for (Lane lane : lanes.values()) {
+            try {
+                if (!lane.executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    log.warn("Dispatcher lane {} did not terminate in {}s, forcing shutdown",
+                            lane.runtimeType, SHUTDOWN_TIMEOUT_SECONDS);
+                    lane.executor.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                lane.executor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        log.info("Task dispatcher shutdown completed");
+    }
+
+    /**
+     * 런타임별 동시 실행 수 결정
+     * 우선순위 1: agent.dispatcher.{runtime}Concurrency
+     * 우선순위 2: agent.warmPool.{runtime}Size
+     */
+    private int resolveConcurrency(RuntimeType runtimeType) {
+        AgentProperties.DispatcherConfig dispatcherConfig = agentProperties.getDispatcher();
+        AgentProperties.WarmPoolConfig warmPoolConfig = agentProperties.getWarmPool();
+
+        int configured = switch (runtimeType) {
+            case PYTHON -> dispatcherConfig.getPythonConcurrency();
+            case CPP -> dispatcherConfig.getCppConcurrency();
+        };
+        if (configured > 0) {
+            return configured;
+        }
+
+        int poolSize = switch (runtimeType) {
+            case PYTHON -> warmPoolConfig.getPythonSize();
+            case CPP -> warmPoolConfig.getCppSize();
+        };
+        return Math.max(1, poolSize);
+    }
+
+    private Lane lane(RuntimeType runtimeType) {
+        Lane lane = lanes.get(runtimeType);
+        if (lane == null) {
+            throw new IllegalStateException("Dispatcher lane not initialized for runtime: " + runtimeType);
+        }
+        return lane;
+    }
+
+    /**
+     * 런타임 하나에 대한 실행 레인 (고정 크기 스레드 풀)
+     */
+    private static final class Lane {
+
+        private final RuntimeType runtimeType;
+        private final int limit;
+        private final ThreadPoolExecutor executor;
+
+        private Lane(RuntimeType runtimeType, int limit) {
+            this.runtimeType = runtimeType;
+            this.limit = limit;
+            this.executor = new ThreadPoolExecutor(
+                    limit, limit,
+                    60L, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(),
+                    namedThreadFactory("dispatch-" + runtimeType.name().toLowerCase()));
+            this.executor.allowCoreThreadTimeOut(true);
+        }
+    }
+
+    private static ThreadFactory namedThreadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(false);
+            return thread;
+        };
+    }
+}
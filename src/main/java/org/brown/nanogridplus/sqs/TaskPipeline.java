@@ -0,0 +1,544 @@
+package org.brown.nanogridplus.sqs;
+
+import lombok.extern.slf4j.Slf4j;
+import org.brown.nanogridplus.config.AgentProperties;
+import org.brown.nanogridplus.docker.DependencyLayerManager;
+import org.brown.nanogridplus.docker.DockerService;
+import org.brown.nanogridplus.docker.HostAdmissionController;
+import org.brown.nanogridplus.docker.WarmPoolManager.RuntimeType;
+import org.brown.nanogridplus.metrics.StatsProvider;
+import org.brown.nanogridplus.model.ExecutionResult;
+import org.brown.nanogridplus.model.TaskMessage;
+import org.brown.nanogridplus.redis.RedisResultPublisher;
+import org.brown.nanogridplus.s3.CodeStorageService;
+import org.brown.nanogridplus.s3.OutputFileUploader;
+import org.brown.nanogridplus.workspace.WorkspaceAllocator;
+import org.brown.nanogridplus.workspace.WorkspaceReaper;
+import org.slf4j.MDC;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 작업 처리 파이프라인
+ *
+ * 한 요청을 네 단계로 나누고 단계마다 별도의 스레드 풀에서 실행하여
+ * 한 요청의 N+1 단계와 다음 요청의 N 단계가 겹치도록 한다.
+ * (S3 다운로드 중에도 컨테이너가 쉬지 않고, 실행 중에도 S3 링크가 쉬지 않음)
+ *
+ * 1. fetch   : 중복 실행 확인 + S3 코드 다운로드 + 작업 디렉터리 준비 (fetch 스레드 풀)
+ * 2. exec    : 컨테이너 획득 + 실행 (TaskDispatcher 런타임별 레인)
+ * 3. harvest : Output 파일 업로드 (harvest 스레드 풀, 컨테이너 반환 후)
+ * 4. publish : Redis 결과 전송 + SQS ACK (publish 스레드 풀)
+ *
+ * 런타임별 수락 제한 = 동시 실행 수 + fetchAheadPerRuntime
+ * 실행 단계가 끝나면 수락 슬롯과 호스트 자원 예약을 반환한다.
+ * 요청이 끝나면(성공/실패) 작업 디렉터리 삭제를 WorkspaceReaper에 맡긴다.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "agent.polling.enabled", havingValue = "true", matchIfMissing = true)
+public class TaskPipeline implements StatsProvider {
+
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+
+    private final CodeStorageService codeStorageService;
+    private final DockerService dockerService;
+    private final OutputFileUploader outputFileUploader;
+    private final RedisResultPublisher redisResultPublisher;
+    private final TaskDispatcher taskDispatcher;
+    private final SqsAckBatcher sqsAckBatcher;
+    private final VisibilityHeartbeat visibilityHeartbeat;
+    private final FailureClassifier failureClassifier;
+    private final NegativeAckHandler negativeAckHandler;
+    private final DuplicateGuard duplicateGuard;
+    private final FunctionQuotaManager functionQuotaManager;
+    private final WorkspaceReaper workspaceReaper;
+    private final WorkspaceAllocator workspaceAllocator;
+    private final DependencyLayerManager dependencyLayerManager;
+
+    private final Map<RuntimeType, Semaphore> admission = new EnumMap<>(RuntimeType.class);
+    private final Map<RuntimeType, Integer> admissionLimits = new EnumMap<>(RuntimeType.class);
+    private final List<Runnable> slotReleaseListeners = new CopyOnWriteArrayList<>();
+
+    private final Stage fetchStage;
+    private final StageStats execStats = new StageStats();
+    private final Stage harvestStage;
+    private final Stage publishStage;
+
+    public TaskPipeline(CodeStorageService codeStorageService,
+                        DockerService dockerService,
+                        OutputFileUploader outputFileUploader,
+                        RedisResultPublisher redisResultPublisher,
+                        TaskDispatcher taskDispatcher,
+                        SqsAckBatcher sqsAckBatcher,
+                        VisibilityHeartbeat visibilityHeartbeat,
+                        FailureClassifier failureClassifier,
+                        NegativeAckHandler negativeAckHandler,
+                        DuplicateGuard duplicateGuard,
+                        FunctionQuotaManager functionQuotaManager,
+                        WorkspaceReaper workspaceReaper,
+                        WorkspaceAllocator workspaceAllocator,
+                        DependencyLayerManager dependencyLayerManager,
+                        AgentProperties agentProperties) {
+        this.codeStorageService = codeStorageService;
+        this.dockerService = dockerService;
+        this.outputFileUploader = outputFileUploader;
+        this.redisResultPublisher = redisResultPublisher;
+        this.taskDispatcher = taskDispatcher;
+        this.sqsAckBatcher = sqsAckBatcher;
+        this.visibilityHeartbeat = visibilityHeartbeat;
+        this.failureClassifier = failureClassifier;
+        this.negativeAckHandler = negativeAckHandler;
+        this.duplicateGuard = duplicateGuard;
+        this.functionQuotaManager = functionQuotaManager;
+        this.workspaceReaper = workspaceReaper;
+        this.workspaceAllocator = workspaceAllocator;
+        this.dependencyLayerManager = dependencyLayerManager;
+
+        AgentProperties.PipelineConfig pipelineConfig = agentProperties.getPipeline();
+        int queueCapacity = Math.max(1, pipelineConfig.getStageQueueCapacity());
+        this.fetchStage = new Stage("fetch", pipelineConfig.getFetchThreads(), queueCapacity);
+        this.harvestStage = new Stage("harvest", pipelineConfig.getHarvestThreads(), queueCapacity);
+        this.publishStage = new Stage("publish", pipelineConfig.getPublishThreads(), queueCapacity);
+
+        for (RuntimeType runtimeType : RuntimeType.values()) {
+            int concurrency = taskDispatcher.concurrencyLimit(runtimeType);
+            int fetchAhead = pipelineConfig.getFetchAheadPerRuntime() > 0
+                    ? pipelineConfig.getFetchAheadPerRuntime()
+                    : concurrency;
+            int limit = concurrency + fetchAhead;
+            admission.put(runtimeType, new Semaphore(limit));
+            admissionLimits.put(runtimeType, limit);
+            log.info("Pipeline admission: runtime={}, concurrency={}, fetchAhead={}",
+                    runtimeType, concurrency, fetchAhead);
+        }
+    }
+
+    /**
+     * 작업을 파이프라인에 넣는다. (대기하지 않음)
+     *
+     * @param task 수신한 작업
+     * @param reservation 호스트 자원 예약 (실행 단계 종료 시 반환)
+     * @return 런타임 수락 슬롯이 없어 넣지 못했으면 false
+     */
+    public boolean submit(PrefetchedTask task, HostAdmissionController.Reservation reservation) {
+        if (!admission.get(task.runtimeType()).tryAcquire()) {
+            return false;
+        }
+
+        functionQuotaManager.acquire(task.taskMessage().getFunctionId());
+
+        PipelineTask context = new PipelineTask(task, reservation);
+        visibilityHeartbeat.track(task);
+        fetchStage.submit(context, this::fetch);
+        return true;
+    }
+
+    /**
+     * 수락 슬롯이 반환될 때마다 호출될 리스너 등록
+     */
+    public void addSlotReleaseListener(Runnable listener) {
+        slotReleaseListeners.add(listener);
+    }
+
+    /**
+     * 전체 런타임의 남은 수락 슬롯 수
+     */
+    public int availableSlots() {
+        int total = 0;
+        for (Semaphore permits : admission.values()) {
+            total += permits.availablePermits();
+        }
+        return total;
+    }
+
+    /**
+     * 특정 런타임의 남은 수락 슬롯 수
+     */
+    public int availableSlots(RuntimeType runtimeType) {
+        return admission.get(runtimeType).availablePermits();
+    }
+
+    /**
+     * 1단계: 중복 실행 확인 + S3 코드 다운로드 + 작업 디렉터리 준비
+     */
+    private void fetch(PipelineTask context) {
+        TaskMessage taskMessage = context.taskMessage();
+
+        // 재전달된 메시지는 사용자 코드를 다시 실행하지 않음
+        DuplicateGuard.Claim claim = duplicateGuard.claim(taskMessage);
+        if (claim != DuplicateGuard.Claim.ACQUIRED) {
+            skipDuplicate(context, claim);
+            return;
+        }
+        context.claimed = true;
+        workspaceReaper.markActive(taskMessage.getRequestId());
+
+        log.info("===== 작업 메시지 수신 =====");
+        log.info("Received task: {}", taskMessage);
+        log.info("  - Request ID: {}", taskMessage.getRequestId());
+        log.info("  - Function ID: {}", taskMessage.getFunctionId());
+        log.info("  - Runtime: {}", taskMessage.getRuntime());
+        log.info("  - S3 Location: s3://{}/{}", taskMessage.getS3Bucket(), taskMessage.getS3Key());
+        log.info("============================");
+
+        // S3에서 코드 다운로드
+        context.workDir = codeStorageService.prepareWorkingDirectory(taskMessage);
+        workspaceAllocator.account(taskMessage.getRequestId(), context.workDir);
+        log.info("Prepared working directory at: {}", context.workDir);
+
+        // Python requirements.txt → 공유 의존성 레이어 (처음 보는 해시면 설치 스레드에서 설치)
+        if (context.task.runtimeType() == RuntimeType.PYTHON) {
+            CompletableFuture<Void> dependencies;
+            try {
+                dependencies = dependencyLayerManager.prepare(taskMessage.getRequestId(), context.workDir);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (!dependencies.isDone()) {
+                // fetch 스레드는 반환하고, 설치가 끝나면 fetch 단계에서 이어서 진행
+                dependencies.whenComplete((ignored, error) ->
+                        fetchStage.submit(context, resumed -> submitExec(resumed, error)));
+                return;
+            }
+            submitExec(context, dependencies.handle((ignored, error) -> error).join());
+            return;
+        }
+
+        submitExec(context, null);
+    }
+
+    /**
+     * 실행 단계로 넘김 (의존성 설치가 실패했으면 예외를 던져 재시도/DLQ 처리)
+     */
+    private void submitExec(PipelineTask context, Throwable dependencyError) {
+        if (dependencyError != null) {
+            throw dependencyError instanceof CompletionException completion
+                    ? completion
+                    : new CompletionException(dependencyError);
+        }
+        context.stageEnteredNanos = System.nanoTime();
+        taskDispatcher.execute(context.task.runtimeType(), () -> runStage(context, execStats, this::exec));
+    }
+
+    /**
+     * 2단계: Docker 컨테이너 실행 (런타임별 레인)
+     */
+    private void exec(PipelineTask context) {
+        try {
+            context.result = dockerService.runTask(context.taskMessage(), context.workDir);
+        } finally {
+            // 컨테이너 사용 종료 → 다음 작업이 바로 실행될 수 있도록 슬롯 반환
+            releaseExecution(context);
+        }
+        harvestStage.submit(context, this::harvest);
+    }
+
+    /**
+     * 3단계: Output Binding - 생성된 파일을 S3에 업로드
+     */
+    private void harvest(PipelineTask context) {
+        String requestId = context.taskMessage().getRequestId();
+        // 실행 중 생성된 파일까지 포함한 tmpfs 사용량 갱신
+        workspaceAllocator.account(requestId, context.workDir);
+        try {
+            log.debug("Uploading output files for request: {}", requestId);
+            List<String> outputFiles = outputFileUploader.uploadOutputFiles(requestId, context.workDir);
+            context.result.setOutputFiles(outputFiles);
+            if (!outputFiles.isEmpty()) {
+                log.info("📦 [OUTPUT] Uploaded {} file(s) for requestId={}", outputFiles.size(), requestId);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to upload output files for request: {}, continuing", requestId, e);
+        }
+        publishStage.submit(context, this::publish);
+    }
+
+    /**
+     * 4단계: Redis 결과 전송 + SQS ACK
+     */
+    private void publish(PipelineTask context) {
+        TaskMessage taskMessage = context.taskMessage();
+        ExecutionResult result = context.result;
+        long totalTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - context.startedNanos);
+
+        // 실행 결과 로그
+        log.info("===== 실행 결과 =====");
+        log.info("Request: {} finished in {}ms", taskMessage.getRequestId(), totalTime);
+        log.info("  - Exit Code: {}", result.getExitCode());
+        log.info("  - Duration: {}ms", result.getDurationMillis());
+        log.info("  - Peak Memory: {} bytes", result.getPeakMemoryBytes());
+        log.info("  - Success: {}", result.isSuccess());
+
+        if (result.getOptimizationTip() != null) {
+            log.info("  - Optimization Tip: {}", result.getOptimizationTip());
+        }
+
+        log.info("============================");
+        log.debug("Stdout:\n{}", result.getStdout());
+        log.debug("Stderr:\n{}", result.getStderr());
+
+        // Redis Publish - B팀 Controller에게 결과 전송
+        try {
+            redisResultPublisher.publishResult(result);
+            log.info("✅ [REDIS] 실행 결과 전송 완료: requestId={}", taskMessage.getRequestId());
+        } catch (Exception redisEx) {
+            log.error("❌ [REDIS][FAIL] 결과 전송 실패 (메시지는 삭제됨): requestId={}",
+                    taskMessage.getRequestId(), redisEx);
+            // Redis 전송 실패해도 SQS 메시지는 삭제 (실행은 성공했으므로)
+        }
+
+        // 완료 표시 후 메시지 삭제 (이후 재전달되면 바로 삭제됨)
+        duplicateGuard.complete(taskMessage.getRequestId());
+        String receiptHandle = context.task.message().receiptHandle();
+        visibilityHeartbeat.untrack(receiptHandle);
+        sqsAckBatcher.acknowledge(context.task.queueUrl(), receiptHandle);
+        codeStorageService.releaseWorkingDirectory(taskMessage.getRequestId());
+        workspaceReaper.release(taskMessage.getRequestId());
+        log.info("[DONE][OK] requestId={}", taskMessage.getRequestId());
+    }
+
+    /**
+     * 단계 실행 공통 처리: MDC 설정, 소요 시간 기록, 실패 시 재시도/DLQ 처리
+     */
+    private void runStage(PipelineTask context, StageStats stats, Consumer<PipelineTask> work) {
+        TaskMessage taskMessage = context.taskMessage();
+        MDC.put("requestId", taskMessage.getRequestId());
+        MDC.put("functionId", taskMessage.getFunctionId());
+        MDC.put("runtime", taskMessage.getRuntime());
+
+        stats.active.incrementAndGet();
+        long queuedNanos = System.nanoTime() - context.stageEnteredNanos;
+        long started = System.nanoTime();
+        try {
+            work.accept(context);
+            stats.completed.incrementAndGet();
+        } catch (Exception e) {
+            stats.failed.incrementAndGet();
+            fail(context, e);
+        } finally {
+            stats.active.decrementAndGet();
+            stats.totalQueueNanos.addAndGet(queuedNanos);
+            stats.totalRunNanos.addAndGet(System.nanoTime() - started);
+            MDC.clear();
+        }
+    }
+
+    /**
+     * 처리 실패: 예외 타입으로 분류하여 재시도 예약 또는 DLQ 이동
+     */
+    private void fail(PipelineTask context, Exception e) {
+        FailureCategory category = failureClassifier.classify(e);
+        log.error("[FAIL][{}] 실행 중 오류 발생: requestId={}",
+                category.tag(), context.taskMessage().getRequestId(), e);
+
+        // Heartbeat가 백오프 설정을 덮어쓰지 않도록 먼저 추적 중단
+        visibilityHeartbeat.untrack(context.task.message().receiptHandle());
+        releaseExecution(context);
+        if (context.claimed) {
+            duplicateGuard.release(context.taskMessage().getRequestId());
+            codeStorageService.releaseWorkingDirectory(context.taskMessage().getRequestId());
+            workspaceReaper.release(context.taskMessage().getRequestId());
+        }
+        negativeAckHandler.nack(context.task.queueUrl(), context.task.message(), category, e.getMessage());
+    }
+
+    /**
+     * 중복 메시지 처리: 완료된 요청이면 삭제, 실행 중이면 잠시 숨겨 나중에 다시 확인
+     */
+    private void skipDuplicate(PipelineTask context, DuplicateGuard.Claim claim) {
+        String requestId = context.taskMessage().getRequestId();
+        String receiptHandle = context.task.message().receiptHandle();
+
+        visibilityHeartbeat.untrack(receiptHandle);
+        releaseExecution(context);
+
+        if (claim == DuplicateGuard.Claim.COMPLETED) {
+            log.info("[SKIP][DUPLICATE_DONE] 이미 완료된 요청, 메시지 삭제: requestId={}", requestId);
+            sqsAckBatcher.acknowledge(context.task.queueUrl(), receiptHandle);
+        } else {
+            log.info("[SKIP][DUPLICATE_RUNNING] 실행 중인 요청, {}초 후 재확인: requestId={}",
+                    duplicateGuard.getSuppressVisibilitySeconds(), requestId);
+            negativeAckHandler.returnToQueue(context.task.queueUrl(), context.task.message(),
+                    duplicateGuard.getSuppressVisibilitySeconds());
+        }
+    }
+
+    /**
+     * 런타임 수락 슬롯, 호스트 자원 예약, 함수별 실행 수 반환 (한 번만)
+     */
+    private void releaseExecution(PipelineTask context) {
+        if (!context.released.compareAndSet(false, true)) {
+            return;
+        }
+        admission.get(context.task.runtimeType()).release();
+        context.reservation.release();
+        functionQuotaManager.release(context.taskMessage().getFunctionId());
+        dependencyLayerManager.release(context.taskMessage().getRequestId());
+
+        for (Runnable listener : slotReleaseListeners) {
+            try {
+                listener.run();
+            } catch (Exception e) {
+                log.warn("Slot release listener failed", e);
+            }
+        }
+    }
+
+    @Override
+    public String statsName() {
+        return "pipeline";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("fetch", fetchStage.snapshot());
+
+        Map<String, Object> exec = execStats.snapshot();
+        for (RuntimeType runtimeType : RuntimeType.values()) {
+            Map<String, Object> lane = new LinkedHashMap<>();
+            lane.put("concurrency", taskDispatcher.concurrencyLimit(runtimeType));
+            lane.put("active", taskDispatcher.activeCount(runtimeType));
+            lane.put("queued", taskDispatcher.queuedCount(runtimeType));
+            lane.put("admissionLimit", admissionLimits.get(runtimeType));
+            lane.put("admissionAvailable", availableSlots(runtimeType));
+            exec.put(runtimeType.name().toLowerCase(), lane);
+        }
+        stats.put("exec", exec);
+
+        stats.put("harvest", harvestStage.snapshot());
+        stats.put("publish", publishStage.snapshot());
+        return stats;
+    }
+
+    /**
+     * 애플리케이션 종료 시 단계별 스레드 풀 정리
+     * (종료 후 제출된 작업은 제출한 스레드에서 직접 실행되어 ACK까지 완료된다)
+     */
+    @PreDestroy
+    public void shutdown() {
+        log.info("Shutting down task pipeline...");
+        for (Stage stage : List.of(fetchStage, harvestStage, publishStage)) {
+            stage.executor.shutdown();
+            try {
+                if (!stage.executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    log.warn("Pipeline stage {} did not terminate in {}s", stage.name, SHUTDOWN_TIMEOUT_SECONDS);
+                    stage.executor.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                stage.executor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+        log.info("Task pipeline shutdown completed");
+    }
+
+    /**
+     * 파이프라인을 따라 이동하는 요청 하나의 처리 상태
+     */
+    private static final class PipelineTask {
+
+        private final PrefetchedTask task;
+        private final HostAdmissionController.Reservation reservation;
+        private final long startedNanos = System.nanoTime();
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private volatile long stageEnteredNanos = startedNanos;
+        private volatile boolean claimed;
+        private volatile Path workDir;
+        private volatile ExecutionResult result;
+
+        private PipelineTask(PrefetchedTask task, HostAdmissionController.Reservation reservation) {
+            this.task = task;
+            this.reservation = reservation;
+        }
+
+        private TaskMessage taskMessage() {
+            return task.taskMessage();
+        }
+    }
+
+    /**
+     * 단계별 처리 통계
+     */
+    private static final class StageStats {
+
+        private final AtomicInteger active = new AtomicInteger();
+        private final AtomicLong completed = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong totalQueueNanos = new AtomicLong();
+        private final AtomicLong totalRunNanos = new AtomicLong();
+
+        private Map<String, Object> snapshot() {
+            long finished = completed.get() + failed.get();
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("active", active.get());
+            stats.put("completed", completed.get());
+            stats.put("failed", failed.get());
+            stats.put("avgQueueMillis", finished == 0 ? 0.0 : totalQueueNanos.get() / 1_000_000.0 / finished);
+            stats.put("avgRunMillis", finished == 0 ? 0.0 : totalRunNanos.get() / 1_000_000.0 / finished);
+            return stats;
+        }
+    }
+
+    /**
+     * 스레드 풀 + 제한된 대기 큐를 가진 단계
+     * 큐가 가득 차면(또는 종료 후에는) 제출한 스레드가 직접 실행하여 이전 단계를 늦춘다 (백프레셔).
+     */
+    private final class Stage {
+
+        private final String name;
+        private final ThreadPoolExecutor executor;
+        private final StageStats stats = new StageStats();
+
+        private Stage(String name, int threads, int queueCapacity) {
+            this.name = name;
+            int size = Math.max(1, threads);
+            AtomicInteger counter = new AtomicInteger();
+            this.executor = new ThreadPoolExecutor(
+                    size, size,
+                    60L, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(queueCapacity),
+                    runnable -> {
+                        Thread thread = new Thread(runnable, "pipeline-" + name + "-" + counter.incrementAndGet());
+                        thread.setDaemon(false);
+                        return thread;
+                    },
+                    (runnable, pool) -> runnable.run());
+            this.executor.allowCoreThreadTimeOut(true);
+        }
+
+        private void submit(PipelineTask context, Consumer<PipelineTask> work) {
+            context.stageEnteredNanos = System.nanoTime();
+            executor.execute(() -> runStage(context, stats, work));
+        }
+
+        private Map<String, Object> snapshot() {
+            Map<String, Object> snapshot = stats.snapshot();
+            snapshot.put("threads", executor.getMaximumPoolSize());
+            snapshot.put("queued", executor.getQueue().size());
+            return snapshot;
+        }
+    }
+}
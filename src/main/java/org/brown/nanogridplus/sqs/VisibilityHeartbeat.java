@@ -0,0 +1,233 @@
+package org.brown.nanogridplus.sqs;
+
+import lombok.extern.slf4j.Slf4j;
+import org.brown.nanogridplus.config.AgentProperties;
+import org.brown.nanogridplus.metrics.StatsProvider;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.BatchResultErrorEntry;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityBatchResponse;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityBatchResultEntry;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 실행 중인 메시지의 Visibility Timeout 연장 (Heartbeat)
+ *
+ * 작업이 큐의 Visibility Timeout보다 오래 실행되면 SQS가 메시지를 재전송하여
+ * 다른 컨테이너에서 같은 작업이 중복 실행된다.
+ * 이를 막기 위해 실행 중인 receiptHandle을 추적하고
+ * 만료가 가까워지면 ChangeMessageVisibilityBatch로 한꺼번에 연장한다.
+ *
+ * - 연장은 작업의 timeoutMs(없으면 docker.defaultTimeoutMs) + graceMillis 까지만
+ * - untrack() 호출 즉시 연장 대상에서 제외
+ */
+@Slf4j
+@Component
+public class VisibilityHeartbeat implements StatsProvider {
+
+    private static final int SQS_MAX_BATCH_SIZE = 10;
+
+    private final SqsClient sqsClient;
+    private final AgentProperties agentProperties;
+    private final AgentProperties.HeartbeatConfig heartbeatConfig;
+
+    private final Map<String, InFlight> inFlight = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "sqs-heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // 통계
+    private final AtomicLong extensionsSent = new AtomicLong();
+    private final AtomicLong extensionsFailed = new AtomicLong();
+    private final AtomicLong budgetExhausted = new AtomicLong();
+
+    public VisibilityHeartbeat(SqsClient sqsClient, AgentProperties agentProperties) {
+        this.sqsClient = sqsClient;
+        this.agentProperties = agentProperties;
+        this.heartbeatConfig = agentProperties.getSqs().getHeartbeat();
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!heartbeatConfig.isEnabled()) {
+            log.info("Visibility heartbeat disabled");
+            return;
+        }
+        long interval = Math.max(100, heartbeatConfig.getIntervalMillis());
+        scheduler.scheduleWithFixedDelay(this::beat, interval, interval, TimeUnit.MILLISECONDS);
+        log.info("Visibility heartbeat started: interval={}ms, extension={}s",
+                interval, heartbeatConfig.getExtensionSeconds());
+    }
+
+    /**
+     * 실행을 시작한 메시지를 연장 대상으로 등록
+     */
+    public void track(PrefetchedTask task) {
+        if (!heartbeatConfig.isEnabled()) {
+            return;
+        }
+        int timeoutMs = task.taskMessage().getTimeoutMs();
+        long taskTimeoutMillis = timeoutMs > 0 ? timeoutMs : agentProperties.getDocker().getDefaultTimeoutMs();
+        long deadline = System.currentTimeMillis() + taskTimeoutMillis + heartbeatConfig.getGraceMillis();
+
+        inFlight.put(task.message().receiptHandle(), new InFlight(
+                task.queueUrl(),
+                task.message().receiptHandle(),
+                task.taskMessage().getRequestId(),
+                task.expiresAtMillis(),
+                deadline));
+    }
+
+    /**
+     * 실행이 끝난 메시지를 연장 대상에서 제외
+     */
+    public void untrack(String receiptHandle) {
+        inFlight.remove(receiptHandle);
+    }
+
+    /**
+     * 만료가 가까운 메시지를 큐별로 모아 연장
+     */
+    private void beat() {
+        try {
+            long now = System.currentTimeMillis();
+            // 다음 점검 전에 만료될 수 있는 메시지를 연장 (네트워크 지연 여유 포함)
+            long horizon = now + 2 * heartbeatConfig.getIntervalMillis();
+
+            Map<String, List<InFlight>> dueByQueue = new HashMap<>();
+            for (InFlight entry : inFlight.values()) {
+                if (entry.visibleUntilMillis > horizon) {
+                    continue;
+                }
+                if (now >= entry.deadlineMillis) {
+                    // 허용된 실행 시간을 넘김 → 더 연장하지 않고 SQS 재전송에 맡김
+                    log.warn("[HEARTBEAT] 실행 시간 예산 초과, 연장 중단: requestId={}", entry.requestId);
+                    budgetExhausted.incrementAndGet();
+                    inFlight.remove(entry.receiptHandle);
+                    continue;
+                }
+                dueByQueue.computeIfAbsent(entry.queueUrl, k -> new ArrayList<>()).add(entry);
+            }
+
+            for (Map.Entry<String, List<InFlight>> queue : dueByQueue.entrySet()) {
+                List<InFlight> due = queue.getValue();
+                for (int from = 0; from < due.size(); from += SQS_MAX_BATCH_SIZE) {
+                    extend(queue.getKey(), due.subList(from, Math.min(due.size(), from + SQS_MAX_BATCH_SIZE)), now);
+                }
+            }
+        } catch (Exception e) {
+            log.error("[FAIL][HEARTBEAT] Visibility 연장 중 오류 발생", e);
+        }
+    }
+
+    private void extend(String queueUrl, List<InFlight> entries, long now) {
+        Map<String, InFlight> byId = new HashMap<>();
+        Map<String, Integer> timeoutById = new HashMap<>();
+        List<ChangeMessageVisibilityBatchRequestEntry> requestEntries = new ArrayList<>(entries.size());
+
+        for (int i = 0; i < entries.size(); i++) {
+            InFlight entry = entries.get(i);
+            String id = Integer.toString(i);
+            long remainingBudgetSeconds = TimeUnit.MILLISECONDS.toSeconds(entry.deadlineMillis - now) + 1;
+            int timeoutSeconds = (int) Math.min(heartbeatConfig.getExtensionSeconds(), remainingBudgetSeconds);
+
+            byId.put(id, entry);
+            timeoutById.put(id, timeoutSeconds);
+            requestEntries.add(ChangeMessageVisibilityBatchRequestEntry.builder()
+                    .id(id)
+                    .receiptHandle(entry.receiptHandle)
+                    .visibilityTimeout(timeoutSeconds)
+                    .build());
+        }
+
+        ChangeMessageVisibilityBatchResponse response;
+        try {
+            response = sqsClient.changeMessageVisibilityBatch(ChangeMessageVisibilityBatchRequest.builder()
+                    .queueUrl(queueUrl)
+                    .entries(requestEntries)
+                    .build());
+        } catch (Exception e) {
+            // 다음 주기에 다시 시도
+            log.warn("ChangeMessageVisibilityBatch 호출 실패: queueUrl={}, entries={}", queueUrl, entries.size(), e);
+            extensionsFailed.addAndGet(entries.size());
+            return;
+        }
+
+        for (ChangeMessageVisibilityBatchResultEntry success : response.successful()) {
+            InFlight entry = byId.get(success.id());
+            entry.visibleUntilMillis = now + TimeUnit.SECONDS.toMillis(timeoutById.get(success.id()));
+            extensionsSent.incrementAndGet();
+            log.debug("[HEARTBEAT] Visibility 연장: requestId={}, timeout={}s",
+                    entry.requestId, timeoutById.get(success.id()));
+        }
+
+        for (BatchResultErrorEntry failure : response.failed()) {
+            InFlight entry = byId.get(failure.id());
+            extensionsFailed.incrementAndGet();
+            if (Boolean.TRUE.equals(failure.senderFault())) {
+                // receiptHandle 만료/삭제 등 → 더 이상 연장 불가
+                log.warn("[HEARTBEAT] Visibility 연장 불가, 추적 중단: requestId={}, code={}",
+                        entry.requestId, failure.code());
+                inFlight.remove(entry.receiptHandle);
+            }
+        }
+    }
+
+    @Override
+    public String statsName() {
+        return "visibilityHeartbeat";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", heartbeatConfig.isEnabled());
+        stats.put("inFlight", inFlight.size());
+        stats.put("extensionsSent", extensionsSent.get());
+        stats.put("extensionsFailed", extensionsFailed.get());
+        stats.put("budgetExhausted", budgetExhausted.get());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 실행 중인 메시지 하나의 연장 상태
+     */
+    private static final class InFlight {
+
+        private final String queueUrl;
+        private final String receiptHandle;
+        private final String requestId;
+        private final long deadlineMillis;
+        private volatile long visibleUntilMillis;
+
+        private InFlight(String queueUrl, String receiptHandle, String requestId,
+                         long visibleUntilMillis, long deadlineMillis) {
+            this.queueUrl = queueUrl;
+            this.receiptHandle = receiptHandle;
+            this.requestId = requestId;
+            this.visibleUntilMillis = visibleUntilMillis;
+            this.deadlineMillis = deadlineMillis;
+        }
+    }
+}
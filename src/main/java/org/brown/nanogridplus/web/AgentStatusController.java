@@ -5,10 +5,13 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.brown.nanogridplus.config.AgentProperties;
 import org.brown.nanogridplus.docker.WarmPoolManager;
+import org.brown.nanogridplus.metrics.StatsProvider;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
@@ -24,6 +27,7 @@ import java.util.Map;
 public class AgentStatusController {
 
     private final AgentProperties agentProperties;
+    private final ObjectProvider<StatsProvider> statsProviders;
 
     /**
      * 간단한 헬스체크
@@ -58,7 +62,11 @@ public class AgentStatusController {
         // SQS 정보
         Map<String, Object> sqs = new HashMap<>();
         sqs.put("enabled", agentProperties.getPolling().isEnabled());
+        sqs.put("mode", agentProperties.getPolling().getMode());
         sqs.put("queueUrl", maskSensitiveUrl(agentProperties.getSqs().getQueueUrl()));
+        sqs.put("queues", agentProperties.getSqs().resolveQueues().stream()
+                .map(queue -> queue.getName() + " -> " + maskSensitiveUrl(queue.getUrl()))
+                .toList());
         status.put("sqs", sqs);
         
         // Docker 정보
@@ -66,6 +74,12 @@ public class AgentStatusController {
         docker.put("pythonImage", agentProperties.getDocker().getPythonImage());
         docker.put("cppImage", agentProperties.getDocker().getCppImage());
         status.put("docker", docker);
+
+        // 컴포넌트별 실시간 통계
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        statsProviders.orderedStream()
+                .forEach(provider -> metrics.put(provider.statsName(), provider.stats()));
+        status.put("metrics", metrics);
         
         log.info("Status check requested");
         return status;
@@ -0,0 +1,221 @@
+package org.brown.nanogridplus.workspace;
+
+import lombok.extern.slf4j.Slf4j;
+import org.brown.nanogridplus.config.AgentProperties;
+import org.brown.nanogridplus.metrics.StatsProvider;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 요청별 작업 디렉터리 위치 결정 (tmpfs 또는 디스크)
+ *
+ * tmpfs가 켜져 있으면 작업 디렉터리를 {tmpfs.directory}/{requestId}에 만들어
+ * 사용자 코드의 작은 파일 I/O가 EBS 지연 없이 메모리에서 처리되도록 한다.
+ * 컨테이너에는 tmpfs.directory가 tmpfs.containerPath로 추가 마운트된다. (DockerWarmPoolManager)
+ *
+ * - 요청별 사용량: 크기를 재기 전에는 reserveBytesPerRequest로 예약, account()에서 실제 크기로 갱신
+ * - 사용량 + 예약량이 maxBytes를 넘거나 호스트 MemAvailable이 minAvailableMemoryBytes 미만이면 디스크 사용
+ * - release(): 디렉터리가 삭제되면 사용량에서 제외 (WorkspaceReaper)
+ */
+@Slf4j
+@Component
+public class WorkspaceAllocator implements StatsProvider {
+
+    private static final Path MEMINFO = Paths.get("/proc/meminfo");
+
+    private final AgentProperties agentProperties;
+    private final AgentProperties.TmpfsConfig tmpfsConfig;
+    private final Path tmpfsDir;
+
+    // tmpfs에 있는 요청 → 사용량(바이트), lock 보유 상태에서만 변경
+    private final Map<String, Long> tmpfsUsage = new HashMap<>();
+    private long tmpfsBytes;
+    private long peakTmpfsBytes;
+
+    // 통계
+    private final AtomicLong tmpfsAllocations = new AtomicLong();
+    private final AtomicLong diskAllocations = new AtomicLong();
+    private final AtomicLong fallbackQuota = new AtomicLong();
+    private final AtomicLong fallbackMemory = new AtomicLong();
+
+    public WorkspaceAllocator(AgentProperties agentProperties) {
+        this.agentProperties = agentProperties;
+        this.tmpfsConfig = agentProperties.getWorkspace().getTmpfs();
+        this.tmpfsDir = Paths.get(tmpfsConfig.getDirectory());
+    }
+
+    @PostConstruct
+    public void initialize() throws IOException {
+        if (!tmpfsConfig.isEnabled()) {
+            return;
+        }
+        Files.createDirectories(tmpfsDir);
+        String type = Files.getFileStore(tmpfsDir).type();
+        if (!"tmpfs".equals(type)) {
+            log.warn("Workspace tmpfs directory {} is on '{}', not tmpfs - I/O will not be served from memory",
+                    tmpfsDir, type);
+        }
+        log.info("Tmpfs workspaces enabled: dir={} -> {}, maxBytes={}, minAvailableMemory={}",
+                tmpfsDir, tmpfsConfig.getContainerPath(), tmpfsConfig.getMaxBytes(),
+                tmpfsConfig.getMinAvailableMemoryBytes());
+    }
+
+    public boolean isTmpfsEnabled() {
+        return tmpfsConfig.isEnabled();
+    }
+
+    /**
+     * 작업 디렉터리가 생길 수 있는 호스트 경로 (디스크, tmpfs)
+     */
+    public List<Path> roots() {
+        Path diskDir = Paths.get(agentProperties.getTaskBaseDir());
+        return tmpfsConfig.isEnabled() ? List.of(diskDir, tmpfsDir) : List.of(diskDir);
+    }
+
+    /**
+     * 요청의 작업 디렉터리 위치 결정 (디렉터리는 호출한 쪽에서 생성)
+     */
+    public Path allocate(String requestId) {
+        if (tmpfsConfig.isEnabled()) {
+            synchronized (this) {
+                // 재전달된 요청은 이전 예약을 먼저 반환
+                release(requestId);
+
+                long reserve = tmpfsConfig.getReserveBytesPerRequest();
+                if (tmpfsBytes + reserve > tmpfsConfig.getMaxBytes()) {
+                    fallbackQuota.incrementAndGet();
+                } else if (availableMemoryBytes() < tmpfsConfig.getMinAvailableMemoryBytes()) {
+                    fallbackMemory.incrementAndGet();
+                } else {
+                    tmpfsUsage.put(requestId, reserve);
+                    tmpfsBytes += reserve;
+                    peakTmpfsBytes = Math.max(peakTmpfsBytes, tmpfsBytes);
+                    tmpfsAllocations.incrementAndGet();
+                    return tmpfsDir.resolve(requestId);
+                }
+            }
+            log.info("[WORKSPACE] tmpfs 여유 없음, 디스크 사용: requestId={}", requestId);
+        }
+
+        diskAllocations.incrementAndGet();
+        return Paths.get(agentProperties.getTaskBaseDir(), requestId);
+    }
+
+    /**
+     * tmpfs 작업 디렉터리의 실제 사용량으로 갱신 (디스크에 있으면 무시)
+     * 예약량보다 작아도 예약량은 유지한다. (실행 중에 다시 커질 수 있음)
+     */
+    public void account(String requestId, Path workDir) {
+        if (workDir == null || !workDir.startsWith(tmpfsDir)) {
+            return;
+        }
+        long measured = directorySize(workDir);
+
+        long total;
+        synchronized (this) {
+            Long previous = tmpfsUsage.get(requestId);
+            if (previous == null || measured <= previous) {
+                return;
+            }
+            tmpfsUsage.put(requestId, measured);
+            tmpfsBytes += measured - previous;
+            peakTmpfsBytes = Math.max(peakTmpfsBytes, tmpfsBytes);
+            total = tmpfsBytes;
+        }
+
+        if (total > tmpfsConfig.getMaxBytes()) {
+            log.warn("[WORKSPACE] tmpfs 사용량이 한도를 넘음: {} bytes (limit {}), requestId={} uses {} bytes",
+                    total, tmpfsConfig.getMaxBytes(), requestId, measured);
+        }
+    }
+
+    /**
+     * 작업 디렉터리 삭제 후 사용량에서 제외
+     */
+    public synchronized void release(String requestId) {
+        Long bytes = tmpfsUsage.remove(requestId);
+        if (bytes != null) {
+            tmpfsBytes -= bytes;
+        }
+    }
+
+    /**
+     * 호스트 작업 디렉터리 → 컨테이너 내부 경로
+     */
+    public String containerWorkDir(Path workDir) {
+        String root = tmpfsConfig.isEnabled() && workDir.startsWith(tmpfsDir)
+                ? tmpfsConfig.getContainerPath()
+                : agentProperties.getDocker().getWorkDirRoot();
+        return root + "/" + workDir.getFileName();
+    }
+
+    /**
+     * /proc/meminfo의 MemAvailable (읽을 수 없으면 제한 없음으로 간주)
+     */
+    private static long availableMemoryBytes() {
+        try (var lines = Files.lines(MEMINFO)) {
+            return lines.filter(line -> line.startsWith("MemAvailable:"))
+                    .findFirst()
+                    .map(line -> Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024)
+                    .orElse(Long.MAX_VALUE);
+        } catch (IOException | RuntimeException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private static long directorySize(Path dir) {
+        long[] bytes = {0};
+        try {
+            Files.walkFileTree(dir, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    bytes[0] += attrs.size();
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            log.debug("Failed to measure workspace: {}", dir, e);
+        }
+        return bytes[0];
+    }
+
+    @Override
+    public String statsName() {
+        return "workspaceTmpfs";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", tmpfsConfig.isEnabled());
+        synchronized (this) {
+            stats.put("activeRequests", tmpfsUsage.size());
+            stats.put("bytes", tmpfsBytes);
+            stats.put("peakBytes", peakTmpfsBytes);
+        }
+        stats.put("maxBytes", tmpfsConfig.getMaxBytes());
+        stats.put("tmpfsAllocations", tmpfsAllocations.get());
+        stats.put("diskAllocations", diskAllocations.get());
+        stats.put("fallbackQuota", fallbackQuota.get());
+        stats.put("fallbackMemory", fallbackMemory.get());
+        return stats;
+    }
+}
@@ -0,0 +1,301 @@
+package org.brown.nanogridplus.workspace;
+
+import lombok.extern.slf4j.Slf4j;
+import org.brown.nanogridplus.config.AgentProperties;
+import org.brown.nanogridplus.metrics.StatsProvider;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileStore;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 작업 디렉터리 정리 (workspace reaper)
+ *
+ * {taskBaseDir}/{requestId}(tmpfs 사용 시 {tmpfs.directory}/{requestId})와 {output.baseDir}/{requestId}는
+ * 같은 requestId가 다시 올 때만 지워지므로 그대로 두면 루트 볼륨이 가득 찬다. 요청이 끝나면 요청 스레드가 아닌 백그라운드 스레드에서 삭제하고,
+ * 주기적으로 전체 사용량을 점검하여 한도를 넘으면 오래된 디렉터리부터 삭제한다.
+ *
+ * - markActive(): fetch 단계 시작 시 등록 (실행 중인 디렉터리는 삭제하지 않음)
+ * - release(): 요청 종료(성공/실패) 시 retainSeconds 후 삭제 예약
+ * - 점검: orphanTtlSeconds 동안 변경 없는 비실행 디렉터리 삭제 → quotaBytes 초과분을 오래된 것부터 삭제
+ */
+@Slf4j
+@Component
+public class WorkspaceReaper implements StatsProvider {
+
+    private final AgentProperties.WorkspaceConfig workspaceConfig;
+    private final WorkspaceAllocator workspaceAllocator;
+    private final List<Path> roots;
+    private final Set<String> active = ConcurrentHashMap.newKeySet();
+    private final ScheduledThreadPoolExecutor scheduler;
+
+    // 통계
+    private final AtomicLong pendingDeletes = new AtomicLong();
+    private final AtomicLong reaped = new AtomicLong();
+    private final AtomicLong orphansReaped = new AtomicLong();
+    private final AtomicLong quotaEvictions = new AtomicLong();
+    private final AtomicLong reapedBytes = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private volatile long usedBytes;
+    private volatile long lastScanMillis;
+
+    public WorkspaceReaper(AgentProperties agentProperties, WorkspaceAllocator workspaceAllocator) {
+        this.workspaceConfig = agentProperties.getWorkspace();
+        this.workspaceAllocator = workspaceAllocator;
+        List<Path> allRoots = new ArrayList<>(workspaceAllocator.roots());
+        allRoots.add(Paths.get(agentProperties.getOutput().getBaseDir()));
+        this.roots = List.copyOf(allRoots);
+
+        this.scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "workspace-reaper");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        this.scheduler.setRemoveOnCancelPolicy(true);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!workspaceConfig.isReaperEnabled()) {
+            log.info("Workspace reaper disabled");
+            return;
+        }
+        long interval = Math.max(1, workspaceConfig.getScanIntervalSeconds());
+        scheduler.scheduleWithFixedDelay(this::scan, interval, interval, TimeUnit.SECONDS);
+        log.info("Workspace reaper started: roots={}, quotaBytes={}, retain={}s, orphanTtl={}s",
+                roots, workspaceConfig.getQuotaBytes(), workspaceConfig.getRetainSeconds(),
+                workspaceConfig.getOrphanTtlSeconds());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 실행 중인 요청으로 등록 (점검 시 삭제 대상에서 제외)
+     */
+    public void markActive(String requestId) {
+        active.add(requestId);
+    }
+
+    /**
+     * 요청 종료: 작업/output 디렉터리 삭제 예약 (블로킹 없음)
+     */
+    public void release(String requestId) {
+        active.remove(requestId);
+        if (!workspaceConfig.isReaperEnabled()) {
+            return;
+        }
+
+        pendingDeletes.incrementAndGet();
+        scheduler.schedule(() -> {
+            pendingDeletes.decrementAndGet();
+            // 보관 중에 같은 requestId가 다시 실행되면 삭제하지 않음
+            if (active.contains(requestId)) {
+                return;
+            }
+            if (reap(requestId)) {
+                reaped.incrementAndGet();
+            }
+        }, Math.max(0, workspaceConfig.getRetainSeconds()), TimeUnit.SECONDS);
+    }
+
+    /**
+     * 전체 사용량 점검: 고아 디렉터리 삭제 후 한도 초과분을 오래된 것부터 삭제
+     */
+    void scan() {
+        try {
+            List<Workspace> workspaces = new ArrayList<>();
+            long total = 0;
+            for (Path root : roots) {
+                if (!Files.isDirectory(root)) {
+                    continue;
+                }
+                // 숨김 디렉터리(.forkserver 등)는 요청 작업 디렉터리가 아님
+                try (DirectoryStream<Path> children = Files.newDirectoryStream(root,
+                        dir -> Files.isDirectory(dir) && !dir.getFileName().toString().startsWith("."))) {
+                    for (Path child : children) {
+                        Workspace workspace = new Workspace(child, directorySize(child),
+                                Files.getLastModifiedTime(child).toMillis());
+                        workspaces.add(workspace);
+                        total += workspace.sizeBytes;
+                    }
+                }
+            }
+
+            long now = System.currentTimeMillis();
+            long orphanTtlMillis = TimeUnit.SECONDS.toMillis(workspaceConfig.getOrphanTtlSeconds());
+            workspaces.sort(Comparator.comparingLong(workspace -> workspace.modifiedMillis));
+
+            List<Workspace> remaining = new ArrayList<>();
+            for (Workspace workspace : workspaces) {
+                if (!isActive(workspace) && now - workspace.modifiedMillis > orphanTtlMillis) {
+                    total -= delete(workspace);
+                    orphansReaped.incrementAndGet();
+                } else {
+                    remaining.add(workspace);
+                }
+            }
+
+            // 한도 초과: 오래된 것부터 삭제 (실행 중인 디렉터리 제외)
+            for (Workspace workspace : remaining) {
+                if (total <= workspaceConfig.getQuotaBytes()) {
+                    break;
+                }
+                if (isActive(workspace)) {
+                    continue;
+                }
+                total -= delete(workspace);
+                quotaEvictions.incrementAndGet();
+            }
+
+            if (total > workspaceConfig.getQuotaBytes()) {
+                log.warn("[WORKSPACE] 실행 중인 작업만으로 디스크 한도 초과: used={} bytes, quota={} bytes",
+                        total, workspaceConfig.getQuotaBytes());
+            }
+            usedBytes = total;
+            lastScanMillis = now;
+
+        } catch (Exception e) {
+            failures.incrementAndGet();
+            log.warn("Workspace scan failed", e);
+        }
+    }
+
+    private boolean isActive(Workspace workspace) {
+        return active.contains(workspace.requestId());
+    }
+
+    private long delete(Workspace workspace) {
+        long bytes = delete(workspace.path);
+        workspaceAllocator.release(workspace.requestId());
+        return bytes;
+    }
+
+    private boolean reap(String requestId) {
+        boolean deleted = false;
+        for (Path root : roots) {
+            Path dir = root.resolve(requestId);
+            if (Files.exists(dir)) {
+                delete(dir);
+                deleted = true;
+            }
+        }
+        workspaceAllocator.release(requestId);
+        return deleted;
+    }
+
+    /**
+     * 디렉터리 재귀 삭제, 삭제한 바이트 수 반환 (실패는 로그만 남김)
+     */
+    private long delete(Path dir) {
+        long[] bytes = {0};
+        try {
+            Files.walkFileTree(dir, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    Files.deleteIfExists(file);
+                    bytes[0] += attrs.size();
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path directory, IOException e) throws IOException {
+                    Files.deleteIfExists(directory);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            log.debug("Reaped workspace: {} ({} bytes)", dir, bytes[0]);
+        } catch (NoSuchFileException e) {
+            // 이미 삭제됨
+        } catch (IOException e) {
+            failures.incrementAndGet();
+            log.warn("Failed to delete workspace: {}", dir, e);
+        }
+        reapedBytes.addAndGet(bytes[0]);
+        return bytes[0];
+    }
+
+    private static long directorySize(Path dir) throws IOException {
+        long[] bytes = {0};
+        Files.walkFileTree(dir, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                bytes[0] += attrs.size();
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return bytes[0];
+    }
+
+    @Override
+    public String statsName() {
+        return "workspace";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("reaperEnabled", workspaceConfig.isReaperEnabled());
+        stats.put("active", active.size());
+        stats.put("pendingDeletes", pendingDeletes.get());
+        stats.put("usedBytes", usedBytes);
+        stats.put("quotaBytes", workspaceConfig.getQuotaBytes());
+        stats.put("lastScanMillis", lastScanMillis);
+        stats.put("reaped", reaped.get());
+        stats.put("orphansReaped", orphansReaped.get());
+        stats.put("quotaEvictions", quotaEvictions.get());
+        stats.put("reapedBytes", reapedBytes.get());
+        stats.put("failures", failures.get());
+
+        // 작업 디렉터리가 있는 파일 시스템의 여유 공간
+        try {
+            FileStore store = Files.getFileStore(roots.get(0));
+            stats.put("diskTotalBytes", store.getTotalSpace());
+            stats.put("diskUsableBytes", store.getUsableSpace());
+        } catch (IOException e) {
+            stats.put("diskTotalBytes", -1L);
+            stats.put("diskUsableBytes", -1L);
+        }
+        return stats;
+    }
+
+    private record Workspace(Path path, long sizeBytes, long modifiedMillis) {
+
+        private String requestId() {
+            return path.getFileName().toString();
+        }
+    }
+}
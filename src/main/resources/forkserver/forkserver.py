@@ -0,0 +1,201 @@
+"""NanoGrid Python fork server
+
+Warm Python 컨테이너 안에서 상주하며, 미리 import한 모듈을 그대로 물려받은 자식 프로세스로 main.py를 실행한다.
+(docker exec 생성 + 인터프리터 시작 + 모듈 import 비용 제거)
+
+    NANOGRID_FORKSERVER_TOKEN=<token> NANOGRID_FORKSERVER_OWNER=<agent uid> python forkserver.py <socket path> <keep pid file> [module,module,...]
+
+프로토콜 (요청당 연결 하나):
+  agent -> server: JSON 한 줄 {"token", "workDir", "entry", "env": ["K=V", ...], "pidFile", "user": "uid:gid"}
+  server -> agent: 프레임 [type 1바이트][length 4바이트 big-endian][payload]
+    0 STARTED (payload: 실행 프로세스 pid, int32)
+    1 STDOUT / 2 STDERR (payload: 출력 바이트)
+    3 EXIT (payload: exit code, int32)
+
+연결마다 handler 프로세스를 fork하고, handler가 다시 fork한 자식이 요청 작업 디렉터리에서 코드를 실행한다.
+handler는 자식의 stdout/stderr를 프레임으로 전달하고 종료 코드를 보낸 뒤 끝난다.
+server는 root로 남고, handler는 요청을 읽은 직후 "user" 계정으로 권한을 내린다. (docker exec의 --user와 동일)
+
+소켓 디렉터리는 모든 컨테이너에 마운트되므로 소켓은 agent 전용(owner uid, 0600)으로 만들고,
+시작 시 환경 변수로 받은 토큰과 요청의 token이 다르면 아무것도 실행하지 않고 연결을 닫는다.
+"""
+import importlib
+import grp
+import hmac
+import json
+import os
+import pwd
+import runpy
+import select
+import signal
+import socket
+import struct
+import sys
+import traceback
+
+STARTED, STDOUT, STDERR, EXIT = 0, 1, 2, 3
+CHUNK = 65536
+
+
+def send(conn, kind, payload):
+    conn.sendall(struct.pack(">BI", kind, len(payload)) + payload)
+
+
+def drop_privileges(user):
+    """'uid:gid' 또는 'name:group' 계정으로 전환 (비어 있으면 그대로)"""
+    if not user:
+        return
+    name, _, group = user.partition(":")
+    uid = int(name) if name.isdigit() else pwd.getpwnam(name).pw_uid
+    if not group:
+        gid = uid if name.isdigit() else pwd.getpwnam(name).pw_gid
+    else:
+        gid = int(group) if group.isdigit() else grp.getgrnam(group).gr_gid
+    os.setgroups([])
+    os.setgid(gid)
+    os.setuid(uid)
+
+
+def run(request):
+    """자식 프로세스: 요청 작업 디렉터리에서 entry를 __main__으로 실행 (반환하지 않음)"""
+    code = 0
+    try:
+        work_dir = request["workDir"]
+        entry = request.get("entry", "main.py")
+        os.chdir(work_dir)
+        for item in request.get("env", []):
+            key, _, value = item.partition("=")
+            os.environ[key] = value
+            # 인터프리터는 이미 시작되었으므로 PYTHONPATH는 sys.path에 직접 반영
+            if key == "PYTHONPATH":
+                sys.path[0:0] = [path for path in value.split(":") if path]
+        sys.path.insert(0, work_dir)
+        sys.argv = [entry]
+        runpy.run_path(entry, run_name="__main__")
+    except SystemExit as e:
+        if e.code is None:
+            code = 0
+        elif isinstance(e.code, int):
+            code = e.code
+        else:
+            print(e.code, file=sys.stderr)
+            code = 1
+    except BaseException:
+        traceback.print_exc()
+        code = 1
+    finally:
+        try:
+            sys.stdout.flush()
+            sys.stderr.flush()
+        except BaseException:
+            pass
+    os._exit(code & 0xFF)
+
+
+def handle(conn, token):
+    """handler 프로세스: 요청 수신 → 실행 프로세스 fork → 출력/종료 코드 전달"""
+    signal.signal(signal.SIGCHLD, signal.SIG_DFL)
+    request = json.loads(conn.makefile("rb").readline())
+    if not hmac.compare_digest(str(request.get("token", "")).encode(), token.encode()):
+        print("forkserver: rejected request with invalid token", file=sys.stderr)
+        return
+    drop_privileges(request.get("user"))
+
+    # 제한 시간 초과 시 agent가 이 pid부터 프로세스 트리를 종료한다
+    pid_file = request.get("pidFile")
+    if pid_file:
+        with open(pid_file, "w") as f:
+            f.write(str(os.getpid()))
+
+    out_r, out_w = os.pipe()
+    err_r, err_w = os.pipe()
+    pid = os.fork()
+    if pid == 0:
+        conn.close()
+        os.close(out_r)
+        os.close(err_r)
+        null = os.open(os.devnull, os.O_RDONLY)
+        os.dup2(null, 0)
+        os.dup2(out_w, 1)
+        os.dup2(err_w, 2)
+        for fd in (null, out_w, err_w):
+            os.close(fd)
+        run(request)
+
+    os.close(out_w)
+    os.close(err_w)
+    send(conn, STARTED, struct.pack(">i", pid))
+
+    streams = {out_r: STDOUT, err_r: STDERR}
+    while streams:
+        readable, _, _ = select.select(list(streams), [], [])
+        for fd in readable:
+            data = os.read(fd, CHUNK)
+            if data:
+                send(conn, streams[fd], data)
+            else:
+                os.close(fd)
+                del streams[fd]
+
+    _, status = os.waitpid(pid, 0)
+    if os.WIFEXITED(status):
+        code = os.WEXITSTATUS(status)
+    else:
+        code = 128 + os.WTERMSIG(status)
+    send(conn, EXIT, struct.pack(">i", code))
+
+
+def main():
+    socket_path, keep_file = sys.argv[1], sys.argv[2]
+    # 실행하는 코드가 물려받지 않도록 환경에서 제거
+    token = os.environ.pop("NANOGRID_FORKSERVER_TOKEN", "")
+    if not token:
+        print("forkserver: NANOGRID_FORKSERVER_TOKEN is required", file=sys.stderr)
+        sys.exit(2)
+    owner = int(os.environ.pop("NANOGRID_FORKSERVER_OWNER", "0"))
+    modules = [name for name in (sys.argv[3] if len(sys.argv) > 3 else "").split(",") if name]
+
+    for name in modules:
+        try:
+            importlib.import_module(name)
+        except BaseException:
+            traceback.print_exc()
+
+    # 컨테이너 정리(ExecTerminator) 시 종료하지 않을 프로세스로 등록
+    with open(keep_file, "w") as f:
+        f.write(str(os.getpid()))
+
+    # handler 프로세스는 자동 회수
+    signal.signal(signal.SIGCHLD, signal.SIG_IGN)
+
+    # listen 후 rename하여 소켓 파일이 보이면 바로 연결할 수 있게 함
+    staging = socket_path + ".tmp"
+    for path in (socket_path, staging):
+        try:
+            os.unlink(path)
+        except FileNotFoundError:
+            pass
+    server = socket.socket(socket.AF_UNIX, socket.SOCK_STREAM)
+    server.bind(staging)
+    os.chown(staging, owner, -1)
+    os.chmod(staging, 0o600)
+    server.listen(64)
+    os.rename(staging, socket_path)
+
+    while True:
+        conn, _ = server.accept()
+        sys.stdout.flush()
+        sys.stderr.flush()
+        if os.fork() == 0:
+            server.close()
+            try:
+                handle(conn, token)
+            except BaseException:
+                traceback.print_exc()
+            finally:
+                os._exit(0)
+        conn.close()
+
+
+if __name__ == "__main__":
+    main()
@@ -0,0 +1,162 @@
+package org.brown.nanogridplus.capture;
+
+import org.brown.nanogridplus.config.AgentProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OutputCaptureTest {
+
+    private AgentProperties agentProperties;
+    private StaticListableBeanFactory beanFactory;
+
+    @BeforeEach
+    void setUp() {
+        agentProperties = new AgentProperties();
+        agentProperties.getCapture().setHeadBytes(8);
+        agentProperties.getCapture().setTailBytes(8);
+        beanFactory = new StaticListableBeanFactory();
+    }
+
+    @Test
+    void keepsShortOutputWithoutMarker() {
+        try (OutputCapture capture = factory().open("req")) {
+            append(capture, OutputSink.Stream.STDOUT, "hello");
+
+            assertThat(capture.text(OutputSink.Stream.STDOUT)).isEqualTo("hello");
+            assertThat(capture.text(OutputSink.Stream.STDERR)).isEmpty();
+            assertThat(capture.truncatedBytes(OutputSink.Stream.STDOUT)).isZero();
+        }
+    }
+
+    @Test
+    void keepsHeadAndTailAndCountsDroppedMiddle() {
+        try (OutputCapture capture = factory().open("req")) {
+            String output = "0123456789ABCDEFGHIJ";
+            // 링 버퍼가 여러 번 돌도록 작은 조각으로 추가
+            for (int i = 0; i < output.length(); i += 3) {
+                append(capture, OutputSink.Stream.STDOUT, output.substring(i, Math.min(output.length(), i + 3)));
+            }
+
+            assertThat(capture.text(OutputSink.Stream.STDOUT))
+                    .isEqualTo("01234567\n... [truncated 4 bytes] ...\nCDEFGHIJ");
+            assertThat(capture.truncatedBytes(OutputSink.Stream.STDOUT)).isEqualTo(4);
+            assertThat(capture.totalBytes(OutputSink.Stream.STDOUT)).isEqualTo(20);
+        }
+    }
+
+    @Test
+    void fillsTailExactlyWithoutMarker() {
+        try (OutputCapture capture = factory().open("req")) {
+            append(capture, OutputSink.Stream.STDERR, "0123456789");
+            append(capture, OutputSink.Stream.STDERR, "ABCDEF");
+
+            assertThat(capture.text(OutputSink.Stream.STDERR)).isEqualTo("0123456789ABCDEF");
+            assertThat(capture.truncatedBytes(OutputSink.Stream.STDERR)).isZero();
+        }
+    }
+
+    @Test
+    void keepsOnlyLastBytesOfChunkLargerThanTail() {
+        try (OutputCapture capture = factory().open("req")) {
+            append(capture, OutputSink.Stream.STDOUT, "0123456789");
+            append(capture, OutputSink.Stream.STDOUT, "abcdefghijklmnopqrstuvwxyz");
+
+            assertThat(capture.text(OutputSink.Stream.STDOUT))
+                    .isEqualTo("01234567\n... [truncated 20 bytes] ...\nstuvwxyz");
+        }
+    }
+
+    @Test
+    void keepsOnlyHeadWhenTailIsDisabled() {
+        agentProperties.getCapture().setTailBytes(0);
+        try (OutputCapture capture = factory().open("req")) {
+            append(capture, OutputSink.Stream.STDOUT, "0123456789");
+
+            assertThat(capture.text(OutputSink.Stream.STDOUT)).isEqualTo("01234567\n... [truncated 2 bytes] ...\n");
+            assertThat(capture.truncatedBytes(OutputSink.Stream.STDOUT)).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void decodesMultiByteCharactersSplitAcrossFrames() {
+        agentProperties.getCapture().setHeadBytes(64);
+        try (OutputCapture capture = factory().open("req")) {
+            byte[] bytes = "실행 결과".getBytes(StandardCharsets.UTF_8);
+            // 프레임 경계가 문자 중간에 걸리도록 1바이트씩 추가
+            for (int i = 0; i < bytes.length; i++) {
+                capture.append(OutputSink.Stream.STDOUT, bytes, i, 1);
+            }
+
+            assertThat(capture.text(OutputSink.Stream.STDOUT)).isEqualTo("실행 결과");
+        }
+    }
+
+    @Test
+    void textSurvivesCloseAndBuffersAreReused() {
+        OutputCaptureFactory factory = factory();
+        OutputCapture first = factory.open("req-1");
+        append(first, OutputSink.Stream.STDOUT, "0123456789ABCDEFGHIJ");
+        first.close();
+
+        assertThat(first.text(OutputSink.Stream.STDOUT)).endsWith("CDEFGHIJ");
+        // close 후 추가는 무시
+        append(first, OutputSink.Stream.STDOUT, "more");
+        assertThat(first.totalBytes(OutputSink.Stream.STDOUT)).isEqualTo(20);
+
+        try (OutputCapture second = factory.open("req-2")) {
+            append(second, OutputSink.Stream.STDOUT, "0123456789ABCDEFGHIJ");
+        }
+        assertThat(factory.stats())
+                .containsEntry("allocatedBuffers", 2L)
+                .containsEntry("reusedBuffers", 2L)
+                .containsEntry("truncatedCaptures", 2L)
+                .containsEntry("truncatedBytes", 8L);
+    }
+
+    @Test
+    void streamsEveryByteToSinksAndDetachesFailingSink() {
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        int[] completed = new int[1];
+        beanFactory.addBean("recording", new OutputSink() {
+            @Override
+            public void onOutput(String requestId, Stream stream, byte[] data, int offset, int length) {
+                received.write(data, offset, length);
+            }
+
+            @Override
+            public void onComplete(String requestId) {
+                completed[0]++;
+            }
+        });
+        int[] failingCalls = new int[1];
+        beanFactory.addBean("failing", (OutputSink) (requestId, stream, data, offset, length) -> {
+            failingCalls[0]++;
+            throw new IllegalStateException("sink down");
+        });
+
+        try (OutputCapture capture = factory().open("req")) {
+            append(capture, OutputSink.Stream.STDOUT, "0123456789");
+            append(capture, OutputSink.Stream.STDOUT, "ABCDEFGHIJ");
+        }
+
+        // 보존 한도와 무관하게 전체 출력 전달
+        assertThat(received.toString(StandardCharsets.UTF_8)).isEqualTo("0123456789ABCDEFGHIJ");
+        assertThat(completed[0]).isEqualTo(1);
+        assertThat(failingCalls[0]).isEqualTo(1);
+    }
+
+    private OutputCaptureFactory factory() {
+        return new OutputCaptureFactory(agentProperties, beanFactory.getBeanProvider(OutputSink.class));
+    }
+
+    private static void append(OutputCapture capture, OutputSink.Stream stream, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        capture.append(stream, bytes, 0, bytes.length);
+    }
+}
@@ -0,0 +1,126 @@
+package org.brown.nanogridplus.s3;
+
+import org.brown.nanogridplus.config.AgentProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HexFormat;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CodeArtifactCacheTest {
+
+    @TempDir
+    Path cacheDir;
+
+    private AgentProperties agentProperties;
+    private S3RangedDownloader rangedDownloader;
+
+    @BeforeEach
+    void setUp() {
+        agentProperties = new AgentProperties();
+        agentProperties.getCodeCache().setDirectory(cacheDir.toString());
+        rangedDownloader = mock(S3RangedDownloader.class);
+    }
+
+    @Test
+    void restartKeepsCachedArtifactsAndRevalidatesThem() throws IOException {
+        Path cached = downloadOnce("\"etag-1\"");
+
+        CodeArtifactCache restarted = newCache();
+        restarted.initialize();
+
+        assertThat(cached).exists();
+        assertThat(restarted.stats()).containsEntry("entries", 1);
+        // 확인 시각을 모르므로 바로 사용하지 않고 ETag로 조건부 요청
+        assertThat(restarted.isWarm("bucket", "fn.zip")).isFalse();
+        when(rangedDownloader.download(eq("bucket"), eq("fn.zip"), eq("\"etag-1\""), any(Path.class), any()))
+                .thenThrow(S3Exception.builder().statusCode(304).build());
+        try (CodeArtifactCache.Lease lease = restarted.acquire("bucket", "fn.zip")) {
+            assertThat(lease.path()).isEqualTo(cached);
+            assertThat(lease.eTag()).isEqualTo("\"etag-1\"");
+        }
+        verify(rangedDownloader).download(eq("bucket"), eq("fn.zip"), eq("\"etag-1\""), any(Path.class), any());
+        assertThat(restarted.stats()).containsEntry("revalidatedHits", 1L);
+    }
+
+    @Test
+    void restartOnlyRemovesFilesTheCacheOwns() throws IOException {
+        Path cached = downloadOnce("\"etag-1\"");
+        Path foreign = Files.writeString(cacheDir.resolve("notes.txt"), "keep me");
+        Path foreignDir = Files.createDirectories(cacheDir.resolve("other"));
+        Path partial = Files.writeString(cacheDir.resolve("0a1b.part"), "partial");
+        Path orphanTree = Files.createDirectories(cacheDir.resolve("trees").resolve("gone.d"));
+        Path cachedTree = Files.createDirectories(
+                cacheDir.resolve("trees").resolve(cached.getFileName().toString().replace(".zip", ".d")));
+
+        CodeArtifactCache restarted = newCache();
+        restarted.initialize();
+
+        assertThat(cached).exists();
+        assertThat(cachedTree).exists();
+        assertThat(foreign).hasContent("keep me");
+        assertThat(foreignDir).exists();
+        assertThat(partial).doesNotExist();
+        assertThat(orphanTree).doesNotExist();
+    }
+
+    @Test
+    void restartKeepsOnlyNewestVersionOfAKey() throws IOException {
+        Path older = downloadOnce("\"etag-1\"");
+        older.toFile().setLastModified(System.currentTimeMillis() - 60_000);
+        Path newer = cacheDir.resolve(older.getFileName().toString()
+                .replaceFirst("-[0-9a-f]*-([0-9a-f]{8})\\.zip$", "-" + hex("\"etag-2\"") + "-00000000.zip"));
+        Files.writeString(newer, "v2");
+
+        CodeArtifactCache restarted = newCache();
+        restarted.initialize();
+
+        assertThat(restarted.stats()).containsEntry("entries", 1);
+        assertThat(older).doesNotExist();
+        assertThat(newer).exists();
+    }
+
+    /**
+     * 캐시 하나로 zip을 한 번 받아 두고 캐시 파일 경로를 반환
+     */
+    private Path downloadOnce(String eTag) throws IOException {
+        when(rangedDownloader.download(anyString(), anyString(), any(), any(Path.class), any()))
+                .thenAnswer(invocation -> {
+                    Path target = invocation.getArgument(3);
+                    Files.writeString(target, "zip");
+                    return new S3RangedDownloader.Download(eTag, 3);
+                });
+        CodeArtifactCache cache = newCache();
+        cache.initialize();
+        try (CodeArtifactCache.Lease lease = cache.acquire("bucket", "fn.zip")) {
+            List<Path> files;
+            try (var paths = Files.list(cacheDir)) {
+                files = paths.filter(path -> path.toString().endsWith(".zip")).toList();
+            }
+            assertThat(files).containsExactly(lease.path());
+            return lease.path();
+        }
+    }
+
+    private CodeArtifactCache newCache() {
+        return new CodeArtifactCache(rangedDownloader, new ZipExtractor(agentProperties), agentProperties);
+    }
+
+    private static String hex(String value) {
+        return HexFormat.of().formatHex(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
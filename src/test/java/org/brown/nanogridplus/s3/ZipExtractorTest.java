@@ -0,0 +1,168 @@
+package org.brown.nanogridplus.s3;
+
+import org.brown.nanogridplus.config.AgentProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 순차(스트리밍) 압축 해제와 병렬 압축 해제 모두 같은 제한/순회 검사를 적용하는지 확인
+ */
+class ZipExtractorTest {
+
+    @TempDir
+    Path tempDir;
+
+    private AgentProperties agentProperties;
+    private ZipExtractor zipExtractor;
+
+    @BeforeEach
+    void setUp() {
+        agentProperties = new AgentProperties();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (zipExtractor != null) {
+            zipExtractor.shutdown();
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void extractsFilesAndDirectories(boolean parallel) throws IOException {
+        Map<String, String> entries = new LinkedHashMap<>();
+        entries.put("lib/", null);
+        entries.put("main.py", "print('hi')");
+        entries.put("lib/util.py", "X = 1");
+        Path target = targetDir();
+
+        int extracted = extract(parallel, zip(entries), target);
+
+        assertThat(extracted).isEqualTo(2);
+        assertThat(target.resolve("main.py")).hasContent("print('hi')");
+        assertThat(target.resolve("lib/util.py")).hasContent("X = 1");
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void skipsEntriesOutsideTargetDirectory(boolean parallel) throws IOException {
+        Map<String, String> entries = new LinkedHashMap<>();
+        entries.put("../escape.py", "bad");
+        entries.put("lib/../../escape2.py", "bad");
+        entries.put("main.py", "ok");
+        Path target = targetDir();
+
+        int extracted = extract(parallel, zip(entries), target);
+
+        assertThat(extracted).isEqualTo(1);
+        assertThat(target.resolve("main.py")).exists();
+        assertThat(tempDir.resolve("escape.py")).doesNotExist();
+        assertThat(tempDir.resolve("escape2.py")).doesNotExist();
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void rejectsTooManyEntries(boolean parallel) throws IOException {
+        agentProperties.getExtract().setMaxEntries(2);
+        Map<String, String> entries = new LinkedHashMap<>();
+        entries.put("a.py", "a");
+        entries.put("b.py", "b");
+        entries.put("c.py", "c");
+        byte[] zip = zip(entries);
+
+        assertThatThrownBy(() -> extract(parallel, zip, targetDir()))
+                .isInstanceOf(ZipException.class)
+                .hasMessageContaining("Too many zip entries");
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void rejectsEntryLargerThanLimit(boolean parallel) throws IOException {
+        agentProperties.getExtract().setMaxEntryBytes(100);
+        byte[] zip = zip(Map.of("big.bin", "x".repeat(101)));
+
+        assertThatThrownBy(() -> extract(parallel, zip, targetDir()))
+                .isInstanceOf(ZipException.class)
+                .hasMessageContaining("Zip entry too large");
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void rejectsTotalSizeLargerThanLimit(boolean parallel) throws IOException {
+        agentProperties.getExtract().setMaxUncompressedBytes(150);
+        Map<String, String> entries = new LinkedHashMap<>();
+        entries.put("a.bin", "x".repeat(100));
+        entries.put("b.bin", "y".repeat(100));
+        byte[] zip = zip(entries);
+
+        assertThatThrownBy(() -> extract(parallel, zip, targetDir()))
+                .isInstanceOf(ZipException.class)
+                .hasMessageContaining("uncompressed size exceeds limit");
+    }
+
+    @Test
+    void extractsFromStream() throws IOException {
+        zipExtractor = new ZipExtractor(agentProperties);
+        Path target = targetDir();
+
+        try (InputStream in = new ByteArrayInputStream(zip(Map.of("main.py", "streamed")))) {
+            assertThat(zipExtractor.extract(in, target, "req")).isEqualTo(1);
+        }
+        assertThat(target.resolve("main.py")).hasContent("streamed");
+    }
+
+    /**
+     * parallel이면 모든 zip 파일을 병렬 경로로, 아니면 순차 경로로 압축 해제
+     */
+    private int extract(boolean parallel, byte[] zip, Path target) throws IOException {
+        agentProperties.getExtract().setParallelEnabled(parallel);
+        agentProperties.getExtract().setParallelMinArchiveBytes(0);
+        agentProperties.getExtract().setParallelism(2);
+        zipExtractor = new ZipExtractor(agentProperties);
+
+        Path zipFile = Files.createTempFile(tempDir, "code", ".zip");
+        Files.write(zipFile, zip);
+        return zipExtractor.extract(zipFile, target, "req");
+    }
+
+    private Path targetDir() throws IOException {
+        return Files.createDirectories(tempDir.resolve("work"));
+    }
+
+    /**
+     * 값이 null인 항목은 디렉터리로 기록
+     */
+    private static byte[] zip(Map<String, String> entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(bytes)) {
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                out.putNextEntry(new ZipEntry(entry.getKey()));
+                if (entry.getValue() != null) {
+                    out.write(entry.getValue().getBytes(StandardCharsets.UTF_8));
+                }
+                out.closeEntry();
+            }
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,226 @@
+package org.brown.nanogridplus.sqs;
+
+import org.brown.nanogridplus.config.AgentProperties;
+import org.brown.nanogridplus.docker.WarmPoolManager.RuntimeType;
+import org.brown.nanogridplus.model.TaskMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.sqs.model.Message;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PrefetchBufferTest {
+
+    private static final String HIGH = "https://sqs/high";
+    private static final String LOW = "https://sqs/low";
+
+    private AgentProperties agentProperties;
+    private FunctionQuotaManager functionQuotaManager;
+    private PrefetchBuffer buffer;
+
+    @BeforeEach
+    void setUp() {
+        agentProperties = new AgentProperties();
+        agentProperties.getPolling().setPrefetchCapacity(20);
+        agentProperties.getFunctionQuota().setMaxBufferedPerFunction(0);
+        agentProperties.getSqs().getQueues().add(queue("high", HIGH, 10, 0.0));
+        agentProperties.getSqs().getQueues().add(queue("low", LOW, 0, 0.25));
+        createBuffer();
+    }
+
+    @Test
+    void reserveLimitsCreditsToFreeSlotsMinusReservations() {
+        assertThat(buffer.reserve(HIGH, 10, slots(3, 0), 100)).isEqualTo(3);
+        // 수신 중인 예약도 빈 슬롯을 차지
+        assertThat(buffer.reserve(HIGH, 10, slots(3, 0), 100)).isZero();
+
+        buffer.releaseReservation(HIGH, 3, 0);
+        assertThat(buffer.reserve(HIGH, 10, slots(3, 0), 100)).isEqualTo(3);
+    }
+
+    @Test
+    void reserveSubtractsDispatchableTasksPerRuntime() {
+        buffer.put(task(HIGH, "f1", RuntimeType.PYTHON));
+        buffer.put(task(HIGH, "f2", RuntimeType.PYTHON));
+
+        // Python 대기 작업은 Python 슬롯만 차지
+        assertThat(buffer.reserve(HIGH, 10, slots(2, 0), 100)).isZero();
+        assertThat(buffer.reserve(HIGH, 10, slots(2, 3), 100)).isEqualTo(3);
+    }
+
+    @Test
+    void reserveDoesNotLetBacklogOfOneRuntimeBorrowOtherRuntimeSlots() {
+        for (int i = 0; i < 4; i++) {
+            buffer.put(task(HIGH, "cpp" + i, RuntimeType.CPP));
+        }
+
+        // C++ 대기 작업이 슬롯보다 많아도 Python 빈 슬롯은 그대로 남음
+        assertThat(buffer.reserve(HIGH, 10, slots(2, 1), 100)).isEqualTo(2);
+    }
+
+    @Test
+    void reserveIsCappedByHostAdmissionAndCapacity() {
+        assertThat(buffer.reserve(HIGH, 10, slots(8, 0), 3)).isEqualTo(3);
+        buffer.releaseReservation(HIGH, 3, 0);
+
+        agentProperties.getPolling().setPrefetchCapacity(2);
+        createBuffer();
+        assertThat(buffer.reserve(HIGH, 10, slots(8, 0), 100)).isEqualTo(2);
+    }
+
+    @Test
+    void quotaBlockedTasksDoNotHoldFreeSlots() {
+        agentProperties.getFunctionQuota().setDefaultMaxConcurrency(1);
+        createBuffer();
+        functionQuotaManager.acquire("busy");
+        buffer.put(task(HIGH, "busy", RuntimeType.PYTHON));
+
+        assertThat(buffer.reserve(HIGH, 10, slots(1, 0), 100)).isEqualTo(1);
+    }
+
+    @Test
+    void lowerPriorityQueueGetsOnlyMinShareWhileHigherPriorityIsReceiving() {
+        int credits = buffer.reserve(HIGH, 10, slots(8, 0), 100);
+        buffer.releaseReservation(HIGH, credits, 5);
+
+        // ceil(8 * 0.25) = 2
+        assertThat(buffer.reserve(LOW, 10, slots(8, 0), 100)).isEqualTo(2);
+        buffer.releaseReservation(LOW, 2, 0);
+
+        // 높은 우선순위 큐가 빈 수신을 하면 제한 해제
+        credits = buffer.reserve(HIGH, 10, slots(8, 0), 100);
+        buffer.releaseReservation(HIGH, credits, 0);
+        assertThat(buffer.reserve(LOW, 10, slots(8, 0), 100)).isEqualTo(8);
+    }
+
+    @Test
+    void putRejectsTasksBeyondPerFunctionLimit() throws InterruptedException {
+        agentProperties.getFunctionQuota().setMaxBufferedPerFunction(2);
+        createBuffer();
+
+        assertThat(buffer.put(task(HIGH, "f", RuntimeType.PYTHON))).isTrue();
+        assertThat(buffer.put(task(LOW, "f", RuntimeType.PYTHON))).isTrue();
+        assertThat(buffer.put(task(HIGH, "f", RuntimeType.PYTHON))).isFalse();
+        assertThat(buffer.put(task(HIGH, "g", RuntimeType.PYTHON))).isTrue();
+
+        // 꺼내면 다시 받을 수 있음
+        take(task -> true);
+        assertThat(buffer.put(task(HIGH, "f", RuntimeType.PYTHON))).isTrue();
+        assertThat(buffer.stats()).containsEntry("overflowed", 1L);
+    }
+
+    @Test
+    void deficitRoundRobinAlternatesBetweenFunctions() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            buffer.put(task(HIGH, "heavy", RuntimeType.PYTHON));
+        }
+        buffer.put(task(HIGH, "light", RuntimeType.PYTHON));
+
+        List<String> order = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            order.add(take(task -> true).taskMessage().getFunctionId());
+        }
+        assertThat(order).containsExactly("heavy", "light", "heavy", "heavy");
+    }
+
+    @Test
+    void deficitRoundRobinGivesWeightedFunctionsLargerTurns() throws InterruptedException {
+        AgentProperties.FunctionLimit limit = new AgentProperties.FunctionLimit();
+        limit.setWeight(2);
+        agentProperties.getFunctionQuota().getFunctions().put("heavy", limit);
+        createBuffer();
+
+        for (int i = 0; i < 3; i++) {
+            buffer.put(task(HIGH, "heavy", RuntimeType.PYTHON));
+            buffer.put(task(HIGH, "light", RuntimeType.PYTHON));
+        }
+
+        List<String> order = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            order.add(take(task -> true).taskMessage().getFunctionId());
+        }
+        assertThat(order).containsExactly("heavy", "heavy", "light", "heavy", "light", "light");
+    }
+
+    @Test
+    void higherPriorityQueueIsDispatchedFirst() throws InterruptedException {
+        buffer.put(task(LOW, "low", RuntimeType.PYTHON));
+        buffer.put(task(HIGH, "high", RuntimeType.PYTHON));
+
+        assertThat(take(task -> true).queueUrl()).isEqualTo(HIGH);
+        assertThat(take(task -> true).queueUrl()).isEqualTo(LOW);
+    }
+
+    @Test
+    void unrunnableFunctionDoesNotBlockOthers() throws InterruptedException {
+        buffer.put(task(HIGH, "cpp", RuntimeType.CPP));
+        buffer.put(task(HIGH, "python", RuntimeType.PYTHON));
+
+        PrefetchedTask task = take(candidate -> candidate.runtimeType() == RuntimeType.PYTHON);
+        assertThat(task.taskMessage().getFunctionId()).isEqualTo("python");
+        assertThat(take(candidate -> candidate.runtimeType() == RuntimeType.PYTHON)).isNull();
+        assertThat(buffer.size()).isEqualTo(1);
+    }
+
+    @Test
+    void expiredTasksAreRemovedEvenWhenTheirRuntimeIsBusy() throws InterruptedException {
+        long now = System.currentTimeMillis();
+        buffer.put(new PrefetchedTask(HIGH, message(), taskMessage("cpp"), RuntimeType.CPP, now, now + 1000));
+        buffer.put(task(HIGH, "cpp", RuntimeType.CPP));
+
+        List<PrefetchedTask> expired = new ArrayList<>();
+        PrefetchedTask task = buffer.takeDispatchable(candidate -> false, expired::add, 0);
+
+        assertThat(task).isNull();
+        assertThat(expired).hasSize(1);
+        assertThat(buffer.size()).isEqualTo(1);
+        assertThat(buffer.stats()).containsEntry("expired", 1L);
+    }
+
+    private PrefetchedTask take(Predicate<PrefetchedTask> runnable) throws InterruptedException {
+        return buffer.takeDispatchable(runnable, expired -> { }, 0);
+    }
+
+    private void createBuffer() {
+        functionQuotaManager = new FunctionQuotaManager(agentProperties);
+        buffer = new PrefetchBuffer(agentProperties, functionQuotaManager);
+    }
+
+    private static Map<RuntimeType, Integer> slots(int python, int cpp) {
+        Map<RuntimeType, Integer> slots = new EnumMap<>(RuntimeType.class);
+        slots.put(RuntimeType.PYTHON, python);
+        slots.put(RuntimeType.CPP, cpp);
+        return slots;
+    }
+
+    private static AgentProperties.QueueConfig queue(String name, String url, int priority, double minShare) {
+        AgentProperties.QueueConfig queue = new AgentProperties.QueueConfig();
+        queue.setName(name);
+        queue.setUrl(url);
+        queue.setPriority(priority);
+        queue.setMinShare(minShare);
+        return queue;
+    }
+
+    private static PrefetchedTask task(String queueUrl, String functionId, RuntimeType runtimeType) {
+        long now = System.currentTimeMillis();
+        return new PrefetchedTask(queueUrl, message(), taskMessage(functionId), runtimeType, now, now + 60_000);
+    }
+
+    private static TaskMessage taskMessage(String functionId) {
+        TaskMessage taskMessage = new TaskMessage();
+        taskMessage.setRequestId(functionId + "-" + System.nanoTime());
+        taskMessage.setFunctionId(functionId);
+        return taskMessage;
+    }
+
+    private static Message message() {
+        return Message.builder().messageId(String.valueOf(System.nanoTime())).receiptHandle("handle").build();
+    }
+}